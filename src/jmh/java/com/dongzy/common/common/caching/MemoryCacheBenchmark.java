@@ -0,0 +1,91 @@
+package com.dongzy.common.common.caching;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较{@link MemoryCache}和{@link ConcurrentMemoryCache}在多线程下的读写性能，
+ * 分别以1、8、64个线程运行（内部类{@link Threads1}、{@link Threads8}、{@link Threads64}），
+ * 运行方式：mvn -Pjmh test-compile exec:exec -Djmh.args="MemoryCacheBenchmark"，
+ * 只运行某个线程数时使用内部类名，例如：-Djmh.args="MemoryCacheBenchmark.Threads64"
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public abstract class MemoryCacheBenchmark {
+
+    private static final int KEY_COUNT = 1 << 14;
+    private static final long EXPIRY_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    @Param({"MemoryCache", "ConcurrentMemoryCache"})
+    private String cacheType;
+
+    private Cache<String> cache;
+    private String[] keys;
+
+    @Setup
+    public void setUp() {
+        cache = "MemoryCache".equals(cacheType) ? new MemoryCache<>() : new ConcurrentMemoryCache<>();
+        keys = new String[KEY_COUNT];
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keys[i] = "key-" + i;
+            cache.set(keys[i], "value-" + i);
+        }
+    }
+
+    @Benchmark
+    public String get() {
+        return cache.get(keys[ThreadLocalRandom.current().nextInt(KEY_COUNT)]);
+    }
+
+    @Benchmark
+    public void set() {
+        int index = ThreadLocalRandom.current().nextInt(KEY_COUNT);
+        cache.set(keys[index], keys[index]);
+    }
+
+    //写入带过期时间的缓存项，会同时调整时间轮
+    @Benchmark
+    public void setExpiring() {
+        int index = ThreadLocalRandom.current().nextInt(KEY_COUNT);
+        cache.set(keys[index], keys[index], new Date(System.currentTimeMillis() + EXPIRY_MILLIS));
+    }
+
+    //90%读、10%写的混合负载
+    @Benchmark
+    public String readMostly() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int index = random.nextInt(KEY_COUNT);
+        if (random.nextInt(10) == 0) {
+            cache.set(keys[index], keys[index]);
+            return null;
+        }
+        return cache.get(keys[index]);
+    }
+
+    @Threads(1)
+    public static class Threads1 extends MemoryCacheBenchmark {
+    }
+
+    @Threads(8)
+    public static class Threads8 extends MemoryCacheBenchmark {
+    }
+
+    @Threads(64)
+    public static class Threads64 extends MemoryCacheBenchmark {
+    }
+}
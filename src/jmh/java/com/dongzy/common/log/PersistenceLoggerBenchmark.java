@@ -0,0 +1,56 @@
+package com.dongzy.common.log;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.slf4j.Logger;
+import org.slf4j.event.Level;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较{@link PersistenceLogger}在日志级别未开启和已开启时每次调用的耗时，
+ * 运行方式：mvn -Pjmh test-compile exec:exec -Djmh.args="PersistenceLoggerBenchmark"
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PersistenceLoggerBenchmark {
+
+    private static final String LOGGER_NAME = "PersistenceLoggerBenchmark";
+
+    private TextLoggerFactory factory;
+    private Logger logger;
+    private long sequence;
+
+    @Setup
+    public void setUp() {
+        factory = new TextLoggerFactory("benchmark", Level.INFO, "target/jmh-logs");
+        logger = factory.getLogger(LOGGER_NAME);
+    }
+
+    @TearDown
+    public void tearDown() {
+        factory.releaseLogger(LOGGER_NAME);
+    }
+
+    //debug级别未开启，只有级别判断的开销
+    @Benchmark
+    public void disabledLevel() {
+        logger.debug("订单{}处理完毕，耗时{}毫秒", sequence++, 5);
+    }
+
+    //info级别已开启，包含格式化和写入日志文件的开销
+    @Benchmark
+    public void enabledLevel() {
+        logger.info("订单{}处理完毕，耗时{}毫秒", sequence++, 5);
+    }
+}
@@ -0,0 +1,171 @@
+package com.dongzy.common.mq;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 比较不同等待策略下{@link QueueSetListener}的唤醒延迟：每次放入一个对象，等待监听线程处理完成后返回，
+ * 测得的时间为对象从放入队列集到被处理的往返时间。
+ * 运行方式：mvn -Pjmh test-compile exec:exec -Djmh.args="WaitStrategyBenchmark"
+ * <p>
+ * 唤醒延迟低的策略在空闲时会持续占用CPU，通过{@link #main}方法可以同时测量两者：先运行唤醒延迟的基准测试，
+ * 再让每种策略的监听线程空闲{@value #IDLE_WINDOW_MILLIS}毫秒，用ThreadMXBean统计监听线程消耗的CPU时间，最后输出对照表。
+ * 运行方式：mvn -Pjmh test-compile exec:exec -Djmh.main=com.dongzy.common.mq.WaitStrategyBenchmark -Djmh.args="-f 1 -wi 3 -i 5"
+ * <p>
+ * 注意：BusySpin和Yielding策略需要空闲的CPU核心，在核心数少于线程数的机器上结果没有参考意义
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WaitStrategyBenchmark {
+
+    private static final String[] STRATEGIES = {"Blocking", "Parking", "Yielding", "BusySpin"};
+    private static final long IDLE_WINDOW_MILLIS = 5000;     //测量空闲CPU时间的窗口
+    private static final long IDLE_SETTLE_MILLIS = 500;      //监听线程启动后进入空闲状态的等待时间
+
+    @Param({"Blocking", "Parking", "Yielding", "BusySpin"})
+    private String strategy;
+
+    private final AtomicLong processed = new AtomicLong();
+    private QueueSet<Long> queueSet;
+    private QueueSetListener<Long> listener;
+    private long sequence;
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        queueSet = new QueueSet<>(new RingBufferQueue<Long>(1024));
+        listener = createListener(queueSet, strategy, processed);
+        listener.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        listener.stop();
+    }
+
+    @Benchmark
+    public long handoff() {
+        long target = ++sequence;
+        queueSet.put(target);
+        while (processed.get() < target) {
+            Thread.yield();
+        }
+        return target;
+    }
+
+    /**
+     * 先运行唤醒延迟的基准测试，再测量每种策略空闲时监听线程的CPU时间，输出对照表；参数为JMH的命令行参数
+     *
+     * @param args JMH的命令行参数
+     * @throws Exception 运行基准测试时发生的异常
+     */
+    public static void main(String[] args) throws Exception {
+        Collection<RunResult> results = new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(WaitStrategyBenchmark.class.getName() + ".handoff")
+                .build()).run();
+        Map<String, RunResult> latencyMap = new LinkedHashMap<>();
+        for (RunResult result : results) {
+            latencyMap.put(result.getParams().getParam("strategy"), result);
+        }
+
+        Map<String, Long> idleCpuMap = new LinkedHashMap<>();
+        for (String strategy : STRATEGIES) {
+            idleCpuMap.put(strategy, measureIdleCpu(strategy));
+        }
+
+        System.out.println();
+        System.out.printf("%-10s %22s %22s %10s%n", "Strategy", "handoff(us/op)", "idle CPU(ms/" + IDLE_WINDOW_MILLIS + "ms)", "idle CPU%");
+        for (String strategy : STRATEGIES) {
+            RunResult result = latencyMap.get(strategy);
+            String latency = (result == null) ? "-" : String.format("%.3f ± %.3f",
+                    result.getPrimaryResult().getScore(), result.getPrimaryResult().getScoreError());
+            long cpuNanos = idleCpuMap.get(strategy);
+            System.out.printf("%-10s %22s %22.1f %9.1f%%%n", strategy, latency,
+                    cpuNanos / 1e6, cpuNanos * 100.0 / TimeUnit.MILLISECONDS.toNanos(IDLE_WINDOW_MILLIS));
+        }
+    }
+
+    //启动监听器后让其空闲一个固定的窗口，返回窗口内监听器新建的线程消耗的CPU时间（纳秒）
+    private static long measureIdleCpu(String strategy) throws InterruptedException {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        Set<Long> existingThreads = new HashSet<>();
+        for (long threadId : threadMXBean.getAllThreadIds()) {
+            existingThreads.add(threadId);
+        }
+
+        QueueSetListener<Long> listener = createListener(new QueueSet<>(new RingBufferQueue<Long>(1024)), strategy, new AtomicLong());
+        listener.start();
+        try {
+            Thread.sleep(IDLE_SETTLE_MILLIS);
+            Map<Long, Long> startCpuMap = new LinkedHashMap<>();
+            for (long threadId : threadMXBean.getAllThreadIds()) {
+                if (!existingThreads.contains(threadId)) {
+                    startCpuMap.put(threadId, threadMXBean.getThreadCpuTime(threadId));
+                }
+            }
+            Thread.sleep(IDLE_WINDOW_MILLIS);
+            long cpuNanos = 0;
+            for (Map.Entry<Long, Long> entry : startCpuMap.entrySet()) {
+                long endCpu = threadMXBean.getThreadCpuTime(entry.getKey());
+                if (endCpu >= 0 && entry.getValue() >= 0) {         //线程已经结束或者不支持统计时返回-1
+                    cpuNanos += endCpu - entry.getValue();
+                }
+            }
+            return cpuNanos;
+        } finally {
+            listener.stop();
+        }
+    }
+
+    //创建单个监听线程、每次处理一个对象的监听器
+    private static QueueSetListener<Long> createListener(QueueSet<Long> queueSet, String strategy, AtomicLong processed) {
+        QueueSetListener<Long> listener = new QueueSetListener<>();
+        listener.setQueueSet(queueSet);
+        listener.setQueueReceiver(objects -> {
+            processed.addAndGet(objects.size());
+            return objects.size();
+        });
+        listener.setGroupSize(1);
+        listener.setThreadTotal(1);
+        listener.setWaitStrategy(createStrategy(strategy));
+        return listener;
+    }
+
+    private static IWaitStrategy createStrategy(String strategy) {
+        switch (strategy) {
+            case "Blocking":
+                return new BlockingWaitStrategy();
+            case "Yielding":
+                return new YieldingWaitStrategy();
+            case "BusySpin":
+                return new BusySpinWaitStrategy();
+            default:
+                return new ParkingWaitStrategy();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.dongzy.common.common;
+
+import com.dongzy.common.log.TextLoggerFactory;
+import org.slf4j.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * JMX的辅助工具类，用于将组件的运行指标注册到平台MBeanServer中，以便通过JConsole等工具查看
+ * 注册或注销失败时只记录日志，不会影响业务代码的执行
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public final class JmxUtils {
+
+    private final static Logger LOGGER = TextLoggerFactory.getInstance().getLogger(JmxUtils.class);
+
+    private JmxUtils() {
+    }
+
+    /**
+     * 创建MBean的名称，名称中的特殊字符会被转义
+     *
+     * @param domain 域名，如com.dongzy.common.caching
+     * @param type   类型
+     * @param name   名称
+     * @return MBean的名称
+     */
+    public static ObjectName objectName(String domain, String type, String name) {
+        try {
+            return new ObjectName(domain + ":type=" + type + ",name=" + ObjectName.quote(name));
+        } catch (Exception e) {
+            throw new IllegalArgumentException("无效的MBean名称：" + name, e);
+        }
+    }
+
+    /**
+     * 注册MBean，如果同名的MBean已经存在，那么先注销原有的MBean
+     *
+     * @param objectName MBean的名称
+     * @param mbean      MBean对象
+     */
+    public static void register(ObjectName objectName, Object mbean) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(mbean, objectName);
+        } catch (Exception e) {
+            LOGGER.warn("注册MBean时发生异常：" + objectName, e);
+        }
+    }
+
+    /**
+     * 注销MBean，如果MBean不存在，那么不做任何处理
+     *
+     * @param objectName MBean的名称
+     */
+    public static void unregister(ObjectName objectName) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("注销MBean时发生异常：" + objectName, e);
+        }
+    }
+}
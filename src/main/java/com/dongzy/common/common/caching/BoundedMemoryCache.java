@@ -0,0 +1,432 @@
+package com.dongzy.common.common.caching;
+
+import com.dongzy.common.common.Validate;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * 有界的内存缓存实现类，主要包含以下功能：
+ * 1、可以限制缓存项的最大数量，也可以通过{@link IWeigher}限制缓存项的最大权重（如占用的字节数）
+ * 2、超过容量限制时，采用W-TinyLFU策略淘汰缓存项：
+ * 新写入的缓存项先进入一个很小的LRU窗口区，离开窗口区后只有当其访问频率高于主缓存区中最久未被访问的缓存项时才会被接纳，
+ * 主缓存区又分为试用区和保护区，试用区中再次被访问的缓存项会晋升到保护区
+ * 3、缓存项的过期规则与{@link MemoryCache}一致，过期的缓存项在访问时被移除，也可以调用cleanUp方法主动清理
+ * <p>
+ * 注意：
+ * 1、本类的所有读写方法都是同步的，读操作也会调整缓存项的访问顺序
+ * 2、权重大于最大权重的缓存项不会被保存
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public final class BoundedMemoryCache<T> extends Cache<T> {
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private static final double PERCENT_WINDOW = 0.01d;        //窗口区占总容量的比例
+    private static final double PERCENT_PROTECTED = 0.80d;     //保护区占主缓存区容量的比例
+
+    private final Map<String, Node<T>> cacheMap = new HashMap<>();
+    private final AccessOrderDeque<T> windowDeque = new AccessOrderDeque<>();
+    private final AccessOrderDeque<T> probationDeque = new AccessOrderDeque<>();
+    private final AccessOrderDeque<T> protectedDeque = new AccessOrderDeque<>();
+    private final FrequencySketch sketch;
+    private final IWeigher<? super T> weigher;
+    private final long maximumSize;             //缓存项的最大数量
+    private final long maximumWeight;           //缓存项的最大权重
+    private final long windowMaximum;
+    private final long protectedMaximum;
+
+    private long windowWeight;
+    private long protectedWeight;
+    private long totalWeight;
+    private long sketchCapacity = 16;           //频率统计表当前可以容纳的缓存项数量
+
+    /**
+     * 定义缓存项节点，节点同时是所在访问顺序队列的链表元素
+     */
+    private static final class Node<T> {
+        private final String key;
+        private T value;
+        private long absExpiry;         //绝对过期时间，Long.MAX_VALUE表示永不过期
+        private int weight;
+        private int queueType;
+        private Node<T> prev;
+        private Node<T> next;
+
+        private Node(String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * 按访问顺序排列的双向链表，表头为最久未被访问的节点
+     */
+    private static final class AccessOrderDeque<T> {
+        private Node<T> first;
+        private Node<T> last;
+
+        private void addLast(Node<T> node) {
+            node.prev = last;
+            node.next = null;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+        }
+
+        private void remove(Node<T> node) {
+            if (node.prev == null) {
+                first = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                last = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        private void moveToLast(Node<T> node) {
+            if (node != last) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        private void clear() {
+            first = null;
+            last = null;
+        }
+    }
+
+    /**
+     * 根据缓存项的最大数量构造函数
+     *
+     * @param maximumSize 缓存项的最大数量
+     */
+    public BoundedMemoryCache(long maximumSize) {
+        this(maximumSize, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * 根据缓存项的最大权重构造函数
+     *
+     * @param maximumWeight 缓存项的最大权重
+     * @param weigher       缓存项权重的计算方法
+     */
+    public BoundedMemoryCache(long maximumWeight, IWeigher<? super T> weigher) {
+        this(Long.MAX_VALUE, maximumWeight, weigher);
+    }
+
+    /**
+     * 根据缓存项的最大数量和最大权重构造函数，任意一项超过限制都会触发淘汰
+     *
+     * @param maximumSize   缓存项的最大数量
+     * @param maximumWeight 缓存项的最大权重
+     * @param weigher       缓存项权重的计算方法，为null时每个缓存项的权重为1
+     */
+    public BoundedMemoryCache(long maximumSize, long maximumWeight, IWeigher<? super T> weigher) {
+        Validate.isTrue(maximumSize > 0, "缓存项的最大数量必须大于0！");
+        Validate.isTrue(maximumWeight > 0, "缓存项的最大权重必须大于0！");
+
+        this.maximumSize = maximumSize;
+        this.maximumWeight = (weigher == null) ? Math.min(maximumSize, maximumWeight) : maximumWeight;
+        this.weigher = weigher;
+        this.windowMaximum = Math.max(1, (long) (this.maximumWeight * PERCENT_WINDOW));
+        this.protectedMaximum = (long) ((this.maximumWeight - windowMaximum) * PERCENT_PROTECTED);
+        this.sketch = new FrequencySketch(sketchCapacity);
+    }
+
+    /**
+     * 获取缓存项的最大数量
+     *
+     * @return 缓存项的最大数量
+     */
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * 获取缓存项的最大权重
+     *
+     * @return 缓存项的最大权重
+     */
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    /**
+     * 获取当前缓存项的数量（可能包含已经过期但尚未清理的缓存项）
+     *
+     * @return 缓存项的数量
+     */
+    @Override
+    synchronized public long size() {
+        return cacheMap.size();
+    }
+
+    /**
+     * 获取当前所有缓存项的权重之和
+     *
+     * @return 权重之和
+     */
+    synchronized public long weightedSize() {
+        return totalWeight;
+    }
+
+    @Override
+    synchronized public void set(String key, T value) {
+        set(key, value, null);
+    }
+
+    @Override
+    synchronized public void set(String key, T value, Date date) {
+        Validate.notNull(key, "缓存的key不能为空！");
+
+        int weight = (weigher == null) ? 1 : weigher.weigh(key, value);
+        Validate.isTrue(weight >= 0, "缓存项的权重不能小于0！");
+
+        Node<T> node = cacheMap.get(key);
+        if (weight > maximumWeight) {       //权重超过上限的缓存项不保存
+            if (node != null) {
+                removeNode(node);
+            }
+            return;
+        }
+
+        if (node == null) {
+            node = new Node<>(key);
+            node.queueType = WINDOW;
+            cacheMap.put(key, node);
+            windowDeque.addLast(node);
+            if (cacheMap.size() > sketchCapacity) {
+                growSketch();
+            }
+        } else {
+            onAccess(node);
+        }
+
+        int weightDiff = weight - node.weight;
+        node.value = value;
+        node.absExpiry = (date == null) ? Long.MAX_VALUE : date.getTime();
+        node.weight = weight;
+        totalWeight += weightDiff;
+        if (node.queueType == WINDOW) {
+            windowWeight += weightDiff;
+        } else if (node.queueType == PROTECTED) {
+            protectedWeight += weightDiff;
+        }
+
+        sketch.increment(key);
+        evict();
+    }
+
+    @Override
+    synchronized public T get(String key) {
+        Validate.notNull(key, "缓存的key不能为空！");
+
+        Node<T> node = cacheMap.get(key);
+        if (node == null) {
+            statsCounter.recordMisses(1);
+            return null;
+        }
+        if (isExpiry(node)) {
+            evictNode(node);            // 移除过期的缓存对象
+            statsCounter.recordMisses(1);
+            return null;
+        }
+        statsCounter.recordHits(1);
+        sketch.increment(key);
+        onAccess(node);
+        return node.value;
+    }
+
+    @Override
+    synchronized public void remove(String key) {
+        Validate.notNull(key, "缓存的key不能为空！");
+        Node<T> node = cacheMap.get(key);
+        if (node != null) {
+            removeNode(node);
+        }
+    }
+
+    @Override
+    synchronized public void remove(Collection<String> keys) {
+        for (String key : keys) {
+            remove(key);
+        }
+    }
+
+    @Override
+    synchronized public void clear() {
+        cacheMap.clear();
+        windowDeque.clear();
+        probationDeque.clear();
+        protectedDeque.clear();
+        windowWeight = 0;
+        protectedWeight = 0;
+        totalWeight = 0;
+    }
+
+    @Override
+    synchronized public boolean containsKey(String key) {
+        Node<T> node = cacheMap.get(key);
+        if (node != null) {
+            if (isExpiry(node)) {
+                evictNode(node);        // 移除过期的缓存对象
+                return false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 主动清理所有已经过期的缓存项
+     */
+    synchronized public void cleanUp() {
+        long now = System.currentTimeMillis();
+        Iterator<Node<T>> iterator = cacheMap.values().iterator();
+        while (iterator.hasNext()) {
+            Node<T> node = iterator.next();
+            if (node.absExpiry < now) {
+                iterator.remove();
+                unlink(node);
+                statsCounter.recordEviction();
+            }
+        }
+    }
+
+    //缓存项数量超过频率统计表的容量时，扩大统计表以保证统计的准确性
+    private void growSketch() {
+        sketchCapacity = Math.min(maximumSize, cacheMap.size() * 2L);
+        sketch.ensureCapacity(sketchCapacity);
+    }
+
+    //缓存项被访问后调整其所在的队列
+    private void onAccess(Node<T> node) {
+        switch (node.queueType) {
+            case WINDOW:
+                windowDeque.moveToLast(node);
+                break;
+            case PROBATION:             //试用区的缓存项再次被访问，晋升到保护区
+                probationDeque.remove(node);
+                node.queueType = PROTECTED;
+                protectedDeque.addLast(node);
+                protectedWeight += node.weight;
+                demoteFromProtected();
+                break;
+            default:
+                protectedDeque.moveToLast(node);
+                break;
+        }
+    }
+
+    //保护区超过容量时，将最久未被访问的缓存项降级到试用区
+    private void demoteFromProtected() {
+        while (protectedWeight > protectedMaximum && protectedDeque.first != null) {
+            Node<T> demoted = protectedDeque.first;
+            protectedDeque.remove(demoted);
+            protectedWeight -= demoted.weight;
+            demoted.queueType = PROBATION;
+            probationDeque.addLast(demoted);
+        }
+    }
+
+    //淘汰超过容量限制的缓存项
+    private void evict() {
+        //窗口区超过容量的缓存项进入试用区，成为候选者
+        Node<T> candidate = null;
+        while (windowWeight > windowMaximum && windowDeque.first != null) {
+            Node<T> node = windowDeque.first;
+            windowDeque.remove(node);
+            windowWeight -= node.weight;
+            node.queueType = PROBATION;
+            probationDeque.addLast(node);
+            if (candidate == null) {
+                candidate = node;
+            }
+        }
+
+        while (totalWeight > maximumWeight || cacheMap.size() > maximumSize) {
+            Node<T> victim = probationDeque.first;
+            if (victim == null) {
+                victim = (protectedDeque.first != null) ? protectedDeque.first : windowDeque.first;
+                if (victim == null) {
+                    return;
+                }
+                evictNode(victim);
+                continue;
+            }
+
+            if (candidate == null || candidate == victim || candidate.queueType != PROBATION) {
+                evictNode(victim);
+                candidate = null;
+                continue;
+            }
+
+            //由候选者和受害者中访问频率较低的一方被淘汰，过期的缓存项优先淘汰
+            Node<T> evicted = admit(candidate, victim) ? victim : candidate;
+            Node<T> next = (evicted == candidate) ? candidate.next : candidate;
+            evictNode(evicted);
+            candidate = next;
+        }
+    }
+
+    //判断候选者是否可以替代受害者进入主缓存区
+    private boolean admit(Node<T> candidate, Node<T> victim) {
+        long now = System.currentTimeMillis();
+        if (victim.absExpiry < now) {
+            return true;
+        }
+        if (candidate.absExpiry < now) {
+            return false;
+        }
+        return sketch.frequency(candidate.key) > sketch.frequency(victim.key);
+    }
+
+    //因过期或超过容量而淘汰缓存项
+    private void evictNode(Node<T> node) {
+        removeNode(node);
+        statsCounter.recordEviction();
+    }
+
+    private void removeNode(Node<T> node) {
+        cacheMap.remove(node.key);
+        unlink(node);
+    }
+
+    private void unlink(Node<T> node) {
+        switch (node.queueType) {
+            case WINDOW:
+                windowDeque.remove(node);
+                windowWeight -= node.weight;
+                break;
+            case PROBATION:
+                probationDeque.remove(node);
+                break;
+            default:
+                protectedDeque.remove(node);
+                protectedWeight -= node.weight;
+                break;
+        }
+        totalWeight -= node.weight;
+    }
+
+    //判断缓存是否已经过期
+    private boolean isExpiry(Node<T> node) {
+        return node.absExpiry < System.currentTimeMillis();
+    }
+}
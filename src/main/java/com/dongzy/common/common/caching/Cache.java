@@ -12,6 +12,7 @@ import java.util.Map;
  * 1、一级缓存的统一实现
  * 2、获取数据的统一底层接口的实现
  * 3、一些缓存需要的公共基础方法
+ * 4、缓存命中、加载、淘汰等统计信息的记录，缓存命名后统计信息会发布到JMX并定期记录到日志中
  * <p>
  * 注意：
  * 1、一级缓存的默认有效期为60秒，用户可以通过setL1CacheTimeout方法更改。
@@ -22,6 +23,51 @@ import java.util.Map;
  */
 public abstract class Cache<T> implements ICache<T> {
 
+    protected final StatsCounter statsCounter = new StatsCounter();     //缓存的统计信息
+    private volatile String name;
+
+    /**
+     * 获取缓存的名称
+     *
+     * @return 缓存的名称，未命名时为null
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 设置缓存的名称，命名后缓存的统计信息会注册到{@link CacheStatsRegistry}中，名称为null时注销
+     *
+     * @param name 缓存的名称
+     */
+    public void setName(String name) {
+        if (this.name != null) {
+            CacheStatsRegistry.unregister(this.name, this);
+        }
+        this.name = name;
+        if (name != null) {
+            CacheStatsRegistry.register(this);
+        }
+    }
+
+    /**
+     * 获取缓存当前的统计信息
+     *
+     * @return 统计信息的快照
+     */
+    public CacheStats getStats() {
+        return statsCounter.snapshot(size());
+    }
+
+    /**
+     * 获取当前缓存项的数量，不支持统计的缓存返回-1
+     *
+     * @return 缓存项的数量
+     */
+    public long size() {
+        return -1;
+    }
+
     @Override
     synchronized public void setMap(Map<String, T> map) {
         setMap(map, null);
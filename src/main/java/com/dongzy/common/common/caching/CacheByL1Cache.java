@@ -1,32 +1,127 @@
 package com.dongzy.common.common.caching;
 
 import com.dongzy.common.common.Validate;
+import com.dongzy.common.log.TextLoggerFactory;
+import org.slf4j.Logger;
 
 import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * 实现缓存基础接口的抽象类，主要包含以下的功能
  * 1、一级缓存的统一实现
  * 2、获取数据的统一底层接口的实现
  * 3、一些缓存需要的公共基础方法
+ * 4、一级缓存未命中时，同一个key的并发加载只会调用一次getReal方法，批量获取时未命中的key合并为一次getRealMap调用；
+ * 加载线程在getReal方法中再次读取同一个key时直接调用getReal方法，不等待自己的加载结果
+ * 5、支持一级缓存的提前刷新：缓存项存在的时间超过有效期的指定比例后，会在后台线程中异步重新加载，
+ * 刷新完成前仍然返回旧值，避免热点数据在一级缓存过期的瞬间由调用线程同步加载
+ * 6、支持近端缓存模式：多个节点共享同一个缓存源时，任意节点移除或清空一级缓存都会通过失效消息通道（{@link IInvalidationTransport}）
+ * 通知其他节点移除对应的一级缓存项；每个key都有一个失效版本号，加载开始后发生过失效的key，其加载结果不会写入一级缓存，
+ * 避免在失效消息之前开始的加载把旧值重新写回一级缓存；失效消息带有发布节点的递增序号，重复投递的消息会被丢弃
  * <p>
  * 注意：
  * 1、一级缓存的默认有效期为60秒，用户可以通过setL1CacheTimeout方法更改。
  * 2、默认不启用一级缓存，用户可以通过setEnableL1Cache方法来启用一级缓存
+ * 3、默认不启用提前刷新，用户可以通过setL1RefreshRatio方法来启用提前刷新
+ * 4、默认不启用近端缓存模式，用户可以通过enableNearCache方法来启用
  *
  * @author zouyong
  * @since JDK1.6
  */
 public abstract class CacheByL1Cache<T> extends Cache<T> {
 
-    private final Lock lock = new ReentrantLock();
-    protected final MemoryCache<SoftReference<T>> memoryL1Cache = new MemoryCache();        //一级缓存
+    private final static Logger LOGGER = TextLoggerFactory.getInstance().getLogger(CacheByL1Cache.class);
+
+    //默认的一级缓存刷新线程池，线程数和等待队列都是有界的，超出的刷新请求会被丢弃，下次访问时再尝试刷新
+    private final static Executor DEFAULT_REFRESH_EXECUTOR = newRefreshExecutor();
+    private final static int VERSION_STRIPES = 1024;            //失效版本号的分段数量，必须是2的幂
+    private final static int MAX_SOURCE_COUNT = 1024;           //记录已接收消息序号的最大节点数量，超过后全部清除
+
+    protected final Cache<SoftReference<T>> memoryL1Cache = new ConcurrentMemoryCache<>();        //一级缓存
     protected long l1Timeout = 60 * 1000;          //一级缓存默认缓存时间为60秒
     protected boolean enableL1Cache;
+    private final ConcurrentHashMap<String, Loading<T>> loadingMap = new ConcurrentHashMap<>();     //正在加载中的key
+    private final Map<String, Boolean> refreshingMap = new ConcurrentHashMap<>();      //正在后台刷新的key
+    private volatile double l1RefreshRatio;        //缓存项存在时间超过有效期的该比例后触发刷新，0表示不刷新
+    private volatile Executor refreshExecutor = DEFAULT_REFRESH_EXECUTOR;
+    private final AtomicLongArray keyVersions = new AtomicLongArray(VERSION_STRIPES);     //按key的哈希值分段的失效版本号
+    private final String nodeId = UUID.randomUUID().toString();                          //近端缓存模式下当前节点的标识
+    private final AtomicLong messageVersion = new AtomicLong();                          //当前节点发布的失效消息序号
+    private final Map<String, ReceiveWindow> receiveWindowMap = new ConcurrentHashMap<>();   //每个节点已接收的失效消息序号
+    private final IInvalidationListener invalidationListener = this::onInvalidation;
+    private volatile IInvalidationTransport invalidationTransport;
+    private volatile String nearCacheName;
+
+    /**
+     * 一级缓存项的引用，记录了缓存项的写入时间，用于判断是否需要提前刷新
+     */
+    private static final class L1Reference<T> extends SoftReference<T> {
+        private final long writeTime;
+
+        private L1Reference(T value, long writeTime) {
+            super(value);
+            this.writeTime = writeTime;
+        }
+    }
+
+    /**
+     * 正在进行的加载，记录了执行加载的线程，同一个线程在加载过程中再次读取该key时直接加载，不等待自己
+     */
+    private static final class Loading<T> extends CompletableFuture<T> {
+        private final Thread owner = Thread.currentThread();
+
+        private boolean isOwnedByCurrentThread() {
+            return owner == Thread.currentThread();
+        }
+    }
+
+    /**
+     * 一个节点已经接收的失效消息序号窗口，记录最大的序号以及其前64个序号是否已经接收，用于丢弃重复投递的消息；
+     * 乱序到达的消息只要没有接收过仍然会处理，比窗口更早的消息无法判断是否重复，也会处理（移除缓存项是幂等的）
+     */
+    private static final class ReceiveWindow {
+        private long maxVersion;
+        private long receivedBits;          //第i位表示序号maxVersion - i是否已经接收
+
+        //记录接收到的序号，返回该序号是否是第一次接收
+        private synchronized boolean markReceived(long version) {
+            if (version > maxVersion) {
+                long shift = version - maxVersion;
+                receivedBits = (shift >= Long.SIZE) ? 1L : (receivedBits << shift) | 1L;
+                maxVersion = version;
+                return true;
+            }
+            long offset = maxVersion - version;
+            if (offset >= Long.SIZE) {
+                return true;
+            }
+            long bit = 1L << offset;
+            if ((receivedBits & bit) != 0) {
+                return false;
+            }
+            receivedBits |= bit;
+            return true;
+        }
+    }
 
     /**
      * 从缓存源实时获取数据
@@ -36,29 +131,260 @@ public abstract class CacheByL1Cache<T> extends Cache<T> {
      */
     protected abstract T getReal(String key);
 
+    /**
+     * 从缓存源实时批量获取数据，默认逐个调用getReal方法，如果缓存源支持批量查询，子类应当重写本方法
+     * 返回的map中不包含的key视为值为null
+     *
+     * @param keys 缓存的key集合
+     * @return 包含指定key集合的HashMap对象
+     */
+    protected Map<String, T> getRealMap(Collection<String> keys) {
+        Map<String, T> map = new HashMap<>();
+        for (String key : keys) {
+            map.put(key, getReal(key));
+        }
+        return map;
+    }
+
+    /**
+     * 获取缓存的对象，如果启用了一级缓存，那么同一个key的并发加载只会调用一次getReal方法，
+     * 其他线程等待并共享该次加载的结果，不同key的加载互不影响
+     *
+     * @param key 缓存KEY
+     * @return 缓存的值
+     */
     @Override
     public T get(String key) {
         Validate.notNull(key, "key不能为空！");
-        T value;
-        if (enableL1Cache) {       //如果启用了一级缓存，那么
-            boolean isContains = memoryL1Cache.containsKey(key);
-            if (!isContains) {
-                lock.lock();
+        if (!enableL1Cache) {
+            statsCounter.recordMisses(1);
+            return loadReal(key);
+        }
+
+        SoftReference<T> reference = memoryL1Cache.get(key);
+        T value = (reference == null) ? null : reference.get();
+        if (value != null) {
+            statsCounter.recordHits(1);
+            if (isRefreshRequired(reference)) {
+                refreshAsync(key);
+            }
+            return value;
+        }
+        statsCounter.recordMisses(1);
+
+        Loading<T> future = new Loading<>();
+        Loading<T> loading = loadingMap.putIfAbsent(key, future);
+        if (loading != null) {      //其他线程正在加载该key，等待其加载结果
+            return join(key, loading);
+        }
+
+        try {
+            long version = versionOf(key);
+            value = getL1Value(key);       //可能在获取加载权之前，其他线程刚刚完成了加载
+            if (value == null) {
+                value = loadReal(key);
+                setL1Value(key, value, version);
+            }
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadingMap.remove(key, future);
+        }
+    }
+
+    /**
+     * 获取指定key集合对应的key和value对的hashMap对象，如果启用了一级缓存，
+     * 那么一级缓存中不存在的key会合并为一次getRealMap调用
+     *
+     * @param keys key集合
+     * @return 包含指定key集合的HashMap对象
+     */
+    @Override
+    public Map<String, T> getMap(Collection<String> keys) {
+        Validate.notNull(keys, "获取缓存的keys不能为空！");
+        if (!enableL1Cache) {
+            return super.getMap(keys);
+        }
+
+        Map<String, T> newMap = new HashMap<>();
+        Map<String, Loading<T>> ownedMap = new HashMap<>();        //由当前线程加载的key
+        Map<String, Loading<T>> waitingMap = new HashMap<>();      //由其他线程加载的key
+        Map<String, Long> versionMap = new HashMap<>();                      //由当前线程加载的key在加载前的失效版本号
+        for (String key : keys) {
+            if (key == null || newMap.containsKey(key) || ownedMap.containsKey(key)) {
+                continue;
+            }
+            T value = getL1Value(key);
+            if (value != null) {
+                newMap.put(key, value);
+                statsCounter.recordHits(1);
+                continue;
+            }
+            statsCounter.recordMisses(1);
+            long version = versionOf(key);
+            Loading<T> future = new Loading<>();
+            Loading<T> loading = loadingMap.putIfAbsent(key, future);
+            if (loading == null) {
+                ownedMap.put(key, future);
+                versionMap.put(key, version);
+            } else {
+                waitingMap.put(key, loading);
+            }
+        }
+
+        if (!ownedMap.isEmpty()) {
+            try {
+                Map<String, T> realMap = loadRealMap(new ArrayList<>(ownedMap.keySet()));
+                for (Map.Entry<String, Loading<T>> entry : ownedMap.entrySet()) {
+                    T value = (realMap == null) ? null : realMap.get(entry.getKey());
+                    setL1Value(entry.getKey(), value, versionMap.get(entry.getKey()));
+                    entry.getValue().complete(value);
+                    newMap.put(entry.getKey(), value);
+                }
+            } catch (RuntimeException | Error e) {
+                for (Loading<T> future : ownedMap.values()) {
+                    future.completeExceptionally(e);
+                }
+                throw e;
+            } finally {
+                for (Map.Entry<String, Loading<T>> entry : ownedMap.entrySet()) {
+                    loadingMap.remove(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        for (Map.Entry<String, Loading<T>> entry : waitingMap.entrySet()) {
+            newMap.put(entry.getKey(), join(entry.getKey(), entry.getValue()));
+        }
+        return newMap;
+    }
+
+    //从缓存源加载数据，并记录加载的耗时
+    private T loadReal(String key) {
+        long startTime = System.nanoTime();
+        try {
+            T value = getReal(key);
+            statsCounter.recordLoadSuccess(System.nanoTime() - startTime);
+            return value;
+        } catch (RuntimeException | Error e) {
+            statsCounter.recordLoadFailure(System.nanoTime() - startTime);
+            throw e;
+        }
+    }
+
+    //从缓存源批量加载数据，并记录加载的耗时
+    private Map<String, T> loadRealMap(Collection<String> keys) {
+        long startTime = System.nanoTime();
+        try {
+            Map<String, T> map = getRealMap(keys);
+            statsCounter.recordLoadSuccess(System.nanoTime() - startTime);
+            return map;
+        } catch (RuntimeException | Error e) {
+            statsCounter.recordLoadFailure(System.nanoTime() - startTime);
+            throw e;
+        }
+    }
+
+    //从一级缓存中获取值，软引用已经被回收的视为不存在
+    private T getL1Value(String key) {
+        SoftReference<T> reference = memoryL1Cache.get(key);
+        return (reference == null) ? null : reference.get();
+    }
+
+    //将加载的结果写入一级缓存，如果加载期间该key已经失效，那么丢弃加载的结果
+    private void setL1Value(String key, T value, long version) {
+        if (value == null || versionOf(key) != version) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        memoryL1Cache.set(key, new L1Reference<>(value, now), new Date(now + l1Timeout));
+        if (versionOf(key) != version) {
+            memoryL1Cache.remove(key);      //写入的同时发生了失效，写入的值可能已经过期
+        }
+    }
+
+    //获取key当前的失效版本号
+    private long versionOf(String key) {
+        return keyVersions.get(key.hashCode() & (VERSION_STRIPES - 1));
+    }
+
+    //使key当前的失效版本号失效，正在进行中的加载结果将不会写入一级缓存
+    private void invalidateVersion(String key) {
+        keyVersions.incrementAndGet(key.hashCode() & (VERSION_STRIPES - 1));
+    }
+
+    //使所有key的失效版本号失效
+    private void invalidateAllVersions() {
+        for (int i = 0; i < VERSION_STRIPES; i++) {
+            keyVersions.incrementAndGet(i);
+        }
+    }
+
+    //判断一级缓存项是否已经到了需要提前刷新的时间，用户通过set方法直接写入的缓存项不刷新
+    private boolean isRefreshRequired(SoftReference<T> reference) {
+        double ratio = l1RefreshRatio;
+        if (ratio <= 0 || !(reference instanceof L1Reference)) {
+            return false;
+        }
+        long age = System.currentTimeMillis() - ((L1Reference<T>) reference).writeTime;
+        return age >= (long) (l1Timeout * ratio);
+    }
+
+    //在后台线程中重新加载缓存项，同一个key同时只有一个刷新任务
+    private void refreshAsync(final String key) {
+        if (refreshingMap.putIfAbsent(key, Boolean.TRUE) != null) {
+            return;
+        }
+        try {
+            final long version = versionOf(key);
+            refreshExecutor.execute(() -> {
                 try {
-                    value = getReal(key);
-                    if (value != null) {
-                        memoryL1Cache.set(key, new SoftReference(value), new Date(System.currentTimeMillis() + l1Timeout));
-                    }
+                    setL1Value(key, loadReal(key), version);
+                } catch (Exception e) {
+                    LOGGER.warn("刷新一级缓存时发生异常，key：" + key, e);
                 } finally {
-                    lock.unlock();
+                    refreshingMap.remove(key);
                 }
-            } else {
-                value = (memoryL1Cache.get(key) == null) ? null : memoryL1Cache.get(key).get();
+            });
+        } catch (RejectedExecutionException e) {
+            refreshingMap.remove(key);       //刷新线程池已满，继续使用旧值，下次访问时再尝试刷新
+        }
+    }
+
+    private static Executor newRefreshExecutor() {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(1000), runnable -> {
+            Thread thread = new Thread(runnable, "CacheByL1Cache-Refresh-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    //等待其他线程的加载结果，加载时发生的异常会原样抛出；
+    //当前线程正在加载该key时（如getReal方法中又读取了同一个key），直接从缓存源加载，避免等待自己造成死锁
+    private T join(String key, Loading<T> future) {
+        if (future.isOwnedByCurrentThread()) {
+            return loadReal(key);
+        }
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
-        } else {
-            value = getReal(key);
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
         }
-        return value;
     }
 
     /**
@@ -71,6 +397,37 @@ public abstract class CacheByL1Cache<T> extends Cache<T> {
         this.l1Timeout = timeUnit.toMillis(timout);
     }
 
+    /**
+     * 获取一级缓存中缓存项的数量
+     *
+     * @return 缓存项的数量
+     */
+    @Override
+    public long size() {
+        return memoryL1Cache.size();
+    }
+
+    /**
+     * 设置一级缓存提前刷新的比例，缓存项存在的时间超过一级缓存有效期的该比例后，访问时会触发后台刷新
+     * 例如一级缓存有效期为60秒，比例为0.8，那么缓存项写入48秒后被访问时开始刷新，刷新完成前仍然返回旧值
+     *
+     * @param l1RefreshRatio 提前刷新的比例，取值范围为(0, 1)，小于等于0表示不启用提前刷新
+     */
+    public void setL1RefreshRatio(double l1RefreshRatio) {
+        Validate.isTrue(l1RefreshRatio < 1, "提前刷新的比例必须小于1！");
+        this.l1RefreshRatio = l1RefreshRatio;
+    }
+
+    /**
+     * 设置执行一级缓存刷新任务的线程池，线程池应当是有界的，被拒绝的刷新任务会在下次访问时重试
+     *
+     * @param refreshExecutor 执行刷新任务的线程池
+     */
+    public void setRefreshExecutor(Executor refreshExecutor) {
+        Validate.notNull(refreshExecutor, "refreshExecutor对象不能为null。");
+        this.refreshExecutor = refreshExecutor;
+    }
+
     /**
      * 设置是否启用一级缓存
      *
@@ -81,11 +438,128 @@ public abstract class CacheByL1Cache<T> extends Cache<T> {
     }
 
     /**
-     * 清除一级缓存
+     * 启用近端缓存模式，当前节点移除或清空一级缓存时会通过传输通道通知其他节点，
+     * 其他节点发布的同名缓存的失效消息也会移除当前节点对应的一级缓存项
+     *
+     * @param cacheName 缓存的名称，各节点中名称相同的缓存之间互相同步失效事件
+     * @param transport 失效消息的传输通道
+     */
+    public synchronized void enableNearCache(String cacheName, IInvalidationTransport transport) {
+        Validate.notEmpty(cacheName, "缓存的名称不能为空！");
+        Validate.notNull(transport, "transport对象不能为null。");
+        disableNearCache();
+        this.nearCacheName = cacheName;
+        this.invalidationTransport = transport;
+        transport.subscribe(invalidationListener);
+    }
+
+    /**
+     * 停用近端缓存模式，取消订阅失效消息，传输通道由调用方负责关闭
+     */
+    public synchronized void disableNearCache() {
+        IInvalidationTransport transport = invalidationTransport;
+        if (transport != null) {
+            transport.unsubscribe(invalidationListener);
+            invalidationTransport = null;
+            nearCacheName = null;
+        }
+    }
+
+    /**
+     * 写入一级缓存，并通知其他节点移除该key对应的一级缓存项
+     *
+     * @param key   缓存的key
+     * @param value 缓存的值
+     * @param date  过期时间，为null表示不过期
+     */
+    protected void setL1Cache(String key, T value, Date date) {
+        invalidateVersion(key);
+        memoryL1Cache.set(key, new SoftReference<>(value), date);
+        publishInvalidation(key);
+    }
+
+    /**
+     * 移除一级缓存中的指定key，并通知其他节点移除该key对应的一级缓存项
+     *
+     * @param key 缓存的key
+     */
+    protected void removeL1Cache(String key) {
+        invalidateVersion(key);
+        memoryL1Cache.remove(key);
+        publishInvalidation(key);
+    }
+
+    /**
+     * 批量移除一级缓存中的key，并将失效消息合并发布给其他节点
+     *
+     * @param keys 缓存的key集合
+     */
+    protected void removeL1Cache(Collection<String> keys) {
+        for (String key : keys) {
+            invalidateVersion(key);
+            memoryL1Cache.remove(key);
+        }
+        publishInvalidations(keys);
+    }
+
+    /**
+     * 清除一级缓存，并通知其他节点清除一级缓存
      */
     protected void clearL1Cache() {
-        if (memoryL1Cache != null) {
+        invalidateAllVersions();
+        memoryL1Cache.clear();
+        publishInvalidation(null);
+    }
+
+    //向其他节点发布失效消息，key为null表示清空整个缓存
+    private void publishInvalidation(String key) {
+        publishInvalidations(Collections.singletonList(key));
+    }
+
+    //向其他节点批量发布失效消息，由传输通道决定是否合并发送
+    private void publishInvalidations(Collection<String> keys) {
+        IInvalidationTransport transport = invalidationTransport;
+        String cacheName = nearCacheName;
+        if (transport == null || cacheName == null || keys.isEmpty()) {
+            return;
+        }
+        List<InvalidationMessage> messages = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            messages.add(new InvalidationMessage(nodeId, cacheName, key, messageVersion.incrementAndGet()));
+        }
+        try {
+            transport.publish(messages);
+        } catch (Exception e) {
+            LOGGER.warn("发布缓存失效消息时发生异常，缓存：" + cacheName + "，key：" + keys, e);
+        }
+    }
+
+    //处理其他节点发布的失效消息，重复投递的消息直接丢弃，避免再次递增失效版本号导致正在进行的加载结果被无谓地丢弃
+    private void onInvalidation(InvalidationMessage message) {
+        if (nodeId.equals(message.getSourceId()) || !message.getCacheName().equals(nearCacheName)) {
+            return;
+        }
+        if (!markReceived(message)) {
+            return;
+        }
+        if (message.isClear()) {
+            invalidateAllVersions();
             memoryL1Cache.clear();
+        } else {
+            invalidateVersion(message.getKey());
+            memoryL1Cache.remove(message.getKey());
+        }
+    }
+
+    //记录接收到的失效消息，返回是否是第一次接收；节点重启后标识会改变，过多的节点记录会被清除
+    private boolean markReceived(InvalidationMessage message) {
+        ReceiveWindow window = receiveWindowMap.get(message.getSourceId());
+        if (window == null) {
+            if (receiveWindowMap.size() >= MAX_SOURCE_COUNT) {
+                receiveWindowMap.clear();
+            }
+            window = receiveWindowMap.computeIfAbsent(message.getSourceId(), sourceId -> new ReceiveWindow());
         }
+        return window.markReceived(message.getVersion());
     }
 }
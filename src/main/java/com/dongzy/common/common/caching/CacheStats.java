@@ -0,0 +1,107 @@
+package com.dongzy.common.common.caching;
+
+/**
+ * 缓存统计信息的快照，对象创建后不会再发生变化
+ * 命中和未命中只统计get和getMap方法，加载只统计从缓存源实时获取数据的次数和耗时，
+ * 淘汰包括因过期和容量限制被移除的缓存项
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public final class CacheStats {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long loadSuccessCount;
+    private final long loadFailureCount;
+    private final long totalLoadTime;       //加载的总耗时，单位纳秒
+    private final long evictionCount;
+    private final long size;
+
+    /**
+     * 根据传入的参数构造函数
+     *
+     * @param hitCount         命中次数
+     * @param missCount        未命中次数
+     * @param loadSuccessCount 加载成功的次数
+     * @param loadFailureCount 加载失败的次数
+     * @param totalLoadTime    加载的总耗时，单位纳秒
+     * @param evictionCount    淘汰的缓存项数量
+     * @param size             当前缓存项的数量，-1表示不支持统计
+     */
+    public CacheStats(long hitCount, long missCount, long loadSuccessCount, long loadFailureCount,
+                      long totalLoadTime, long evictionCount, long size) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadTime = totalLoadTime;
+        this.evictionCount = evictionCount;
+        this.size = size;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * 获取请求的总次数（命中次数 + 未命中次数）
+     *
+     * @return 请求的总次数
+     */
+    public long getRequestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * 获取命中率，没有任何请求时返回1
+     *
+     * @return 命中率
+     */
+    public double getHitRate() {
+        long requestCount = getRequestCount();
+        return (requestCount == 0) ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    public long getLoadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    public long getLoadFailureCount() {
+        return loadFailureCount;
+    }
+
+    public long getTotalLoadTime() {
+        return totalLoadTime;
+    }
+
+    /**
+     * 获取平均每次加载的耗时，单位纳秒
+     *
+     * @return 平均每次加载的耗时
+     */
+    public double getAverageLoadPenalty() {
+        long loadCount = loadSuccessCount + loadFailureCount;
+        return (loadCount == 0) ? 0.0 : (double) totalLoadTime / loadCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "hit:[" + hitCount + "],miss:[" + missCount + "],hitRate:[" + String.format("%.4f", getHitRate())
+                + "],loadSuccess:[" + loadSuccessCount + "],loadFailure:[" + loadFailureCount
+                + "],avgLoadMillis:[" + String.format("%.3f", getAverageLoadPenalty() / 1_000_000)
+                + "],eviction:[" + evictionCount + "],size:[" + size + "]";
+    }
+}
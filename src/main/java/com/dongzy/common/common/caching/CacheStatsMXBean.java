@@ -0,0 +1,36 @@
+package com.dongzy.common.common.caching;
+
+/**
+ * 通过JMX查看缓存统计信息的接口
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public interface CacheStatsMXBean {
+
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRate();
+
+    long getLoadSuccessCount();
+
+    long getLoadFailureCount();
+
+    /**
+     * 获取平均每次加载的耗时，单位毫秒
+     *
+     * @return 平均每次加载的耗时
+     */
+    double getAverageLoadMillis();
+
+    long getEvictionCount();
+
+    long getSize();
+
+    /**
+     * 重置统计信息
+     */
+    void resetStats();
+}
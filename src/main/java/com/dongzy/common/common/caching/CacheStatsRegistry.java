@@ -0,0 +1,188 @@
+package com.dongzy.common.common.caching;
+
+import com.dongzy.common.common.JmxUtils;
+import com.dongzy.common.common.text.StringBuilderExt;
+import com.dongzy.common.log.TextLoggerFactory;
+import org.slf4j.Logger;
+
+import javax.management.ObjectName;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 已命名缓存的统计信息注册中心，主要包含以下功能：
+ * 1、缓存通过{@link Cache#setName(String)}命名后自动注册到本类中
+ * 2、每个注册的缓存都会以MBean的形式发布到JMX中，名称为com.dongzy.common.caching:type=Cache,name=缓存名称
+ * 3、每60秒通过{@link TextLoggerFactory}记录一次所有缓存的统计信息
+ * <p>
+ * 注册中心只持有缓存的弱引用，缓存被垃圾回收后会自动注销
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public final class CacheStatsRegistry {
+
+    private final static Logger LOGGER = TextLoggerFactory.getInstance().getLogger(CacheStatsRegistry.class);
+    private final static String JMX_DOMAIN = "com.dongzy.common.caching";
+    private final static Map<String, WeakReference<Cache<?>>> CACHE_MAP = new ConcurrentHashMap<>();
+    private final static ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "CacheStatsRegistry-Log");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        SCHEDULER.scheduleWithFixedDelay(CacheStatsRegistry::recordWorkLog, 60, 60, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 发布到JMX中的缓存统计信息
+     */
+    private static final class CacheStatsBean implements CacheStatsMXBean {
+
+        private final WeakReference<Cache<?>> cacheReference;
+
+        private CacheStatsBean(Cache<?> cache) {
+            this.cacheReference = new WeakReference<>(cache);
+        }
+
+        private CacheStats stats() {
+            Cache<?> cache = cacheReference.get();
+            return (cache == null) ? new CacheStats(0, 0, 0, 0, 0, 0, 0) : cache.getStats();
+        }
+
+        @Override
+        public long getHitCount() {
+            return stats().getHitCount();
+        }
+
+        @Override
+        public long getMissCount() {
+            return stats().getMissCount();
+        }
+
+        @Override
+        public double getHitRate() {
+            return stats().getHitRate();
+        }
+
+        @Override
+        public long getLoadSuccessCount() {
+            return stats().getLoadSuccessCount();
+        }
+
+        @Override
+        public long getLoadFailureCount() {
+            return stats().getLoadFailureCount();
+        }
+
+        @Override
+        public double getAverageLoadMillis() {
+            return stats().getAverageLoadPenalty() / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        @Override
+        public long getEvictionCount() {
+            return stats().getEvictionCount();
+        }
+
+        @Override
+        public long getSize() {
+            return stats().getSize();
+        }
+
+        @Override
+        public void resetStats() {
+            Cache<?> cache = cacheReference.get();
+            if (cache != null) {
+                cache.statsCounter.reset();
+            }
+        }
+    }
+
+    private CacheStatsRegistry() {
+    }
+
+    /**
+     * 注册缓存，如果同名的缓存已经存在，那么将被替换
+     *
+     * @param cache 已命名的缓存
+     */
+    static synchronized void register(Cache<?> cache) {
+        CACHE_MAP.put(cache.getName(), new WeakReference<>(cache));
+        JmxUtils.register(objectName(cache.getName()), new CacheStatsBean(cache));
+    }
+
+    /**
+     * 注销指定名称的缓存，只有该名称当前注册的是指定的缓存时才注销，避免注销同名的其他缓存
+     *
+     * @param name  缓存的名称
+     * @param cache 要注销的缓存
+     */
+    static synchronized void unregister(String name, Cache<?> cache) {
+        WeakReference<Cache<?>> reference = CACHE_MAP.get(name);
+        if (reference != null && reference.get() == cache) {
+            CACHE_MAP.remove(name);
+            JmxUtils.unregister(objectName(name));
+        }
+    }
+
+    //注销已经被垃圾回收的缓存，该名称已经被其他缓存重新注册时不做任何处理
+    private static synchronized void unregisterCollected(String name, WeakReference<Cache<?>> reference) {
+        if (CACHE_MAP.remove(name, reference)) {
+            JmxUtils.unregister(objectName(name));
+        }
+    }
+
+    /**
+     * 获取所有已注册缓存的统计信息
+     *
+     * @return 缓存名称与统计信息的对应关系
+     */
+    public static Map<String, CacheStats> getAllStats() {
+        Map<String, CacheStats> statsMap = new LinkedHashMap<>();
+        for (Map.Entry<String, WeakReference<Cache<?>>> entry : CACHE_MAP.entrySet()) {
+            Cache<?> cache = entry.getValue().get();
+            if (cache != null) {
+                statsMap.put(entry.getKey(), cache.getStats());
+            }
+        }
+        return statsMap;
+    }
+
+    /**
+     * 获取指定名称缓存的统计信息
+     *
+     * @param name 缓存的名称
+     * @return 统计信息，缓存不存在时返回null
+     */
+    public static CacheStats getStats(String name) {
+        WeakReference<Cache<?>> reference = CACHE_MAP.get(name);
+        Cache<?> cache = (reference == null) ? null : reference.get();
+        return (cache == null) ? null : cache.getStats();
+    }
+
+    //记录所有缓存的统计信息，并清理已经被垃圾回收的缓存
+    private static void recordWorkLog() {
+        for (Map.Entry<String, WeakReference<Cache<?>>> entry : CACHE_MAP.entrySet()) {
+            Cache<?> cache = entry.getValue().get();
+            if (cache == null) {
+                unregisterCollected(entry.getKey(), entry.getValue());
+                continue;
+            }
+            StringBuilderExt stringBuilder = new StringBuilderExt(200);
+            stringBuilder.appendFormat("Cache:[{0}],", entry.getKey());
+            stringBuilder.append(cache.getStats().toString());
+            LOGGER.info(stringBuilder.toString());
+        }
+    }
+
+    private static ObjectName objectName(String name) {
+        return JmxUtils.objectName(JMX_DOMAIN, "Cache", name);
+    }
+}
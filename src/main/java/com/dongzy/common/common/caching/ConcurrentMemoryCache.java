@@ -0,0 +1,333 @@
+package com.dongzy.common.common.caching;
+
+import com.dongzy.common.common.Validate;
+
+import java.lang.ref.WeakReference;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 支持高并发访问的内存缓存实现类，主要包含以下功能：
+ * 1、采用ConcurrentHashMap保存数据，读操作不加锁，写操作只锁定key所在的分段
+ * 2、读取时直接判断缓存项是否过期，过期的缓存项通过条件删除移除，不会误删其他线程刚写入的新值
+ * 3、采用分层时间轮（{@link TimerWheel}）管理缓存项的过期时间，过期的缓存项会在到期后约1秒内被移除，
+ * 而不需要定期遍历所有的缓存项；写操作只把需要调整的缓存项放入无锁的写缓冲区，由获取到时间轮锁（tryLock）的线程统一调整时间轮，
+ * 写线程之间不会因为时间轮锁而互相等待，只有写缓冲区积压超过上限时才等待时间轮锁
+ * 4、每个缓存项除了绝对过期时间以外，还可以设置存活时间（time-to-live）和闲置时间（time-to-idle），
+ * 超过闲置时间没有被访问的缓存项会被移除
+ * <p>
+ * 与{@link MemoryCache}的区别：MemoryCache的写操作需要获取实例锁，读操作与写操作并发时存在线程安全问题，
+ * 对于多线程高并发访问的场景，应当优先使用本类
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public final class ConcurrentMemoryCache<T> extends Cache<T> {
+
+    //所有实例共用的时间轮推进线程
+    private static final ScheduledExecutorService CLEANER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ConcurrentMemoryCache-Cleaner");
+        thread.setDaemon(true);                           //将当前线程设置为守护线程
+        thread.setPriority(Thread.MIN_PRIORITY);          //降低线程的优先级
+        return thread;
+    });
+
+    //写缓冲区中积压的缓存项数量的上限，超过后写线程等待时间轮锁并清空写缓冲区
+    private static final int WRITE_BUFFER_LIMIT = 4096;
+
+    private final ConcurrentHashMap<String, Entry<T>> cacheMap; // 缓存对象map
+    private final ReentrantLock timerLock = new ReentrantLock();  // 时间轮的操作锁
+    //等待调整时间轮的缓存项，调整时根据缓存项是否仍然在缓存中决定调度还是取消调度
+    private final ConcurrentLinkedQueue<Entry<T>> writeBuffer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger writeBufferSize = new AtomicInteger();
+    private final TimerWheel timerWheel;
+    private volatile long defaultTimeToIdle;                        // 默认的闲置时间，0表示不限制
+
+    /**
+     * 定义缓存项，缓存项同时也是时间轮中的定时器
+     */
+    private static final class Entry<T> extends TimerWheel.Timer {
+        private final String key;
+        private final T value;
+        private final long absExpiry;           //绝对过期时间，Long.MAX_VALUE表示永不过期
+        private final long timeToIdle;          //闲置时间，0表示不限制
+        private volatile long accessTime;       //最后访问时间
+
+        private Entry(String key, T value, long absExpiry, long timeToIdle, long now) {
+            this.key = key;
+            this.value = value;
+            this.absExpiry = absExpiry;
+            this.timeToIdle = timeToIdle;
+            this.accessTime = now;
+            this.deadline = expiryTime();
+        }
+
+        //计算缓存项当前的过期时间
+        private long expiryTime() {
+            if (timeToIdle <= 0) {
+                return absExpiry;
+            }
+            return Math.min(absExpiry, accessTime + timeToIdle);
+        }
+
+        private boolean isExpiring() {
+            return absExpiry != Long.MAX_VALUE || timeToIdle > 0;
+        }
+    }
+
+    /**
+     * 定义时间轮推进的任务，任务只持有缓存实例的弱引用，不会阻止缓存实例被垃圾回收
+     */
+    private static final class ClearData implements Runnable {
+
+        private final WeakReference<ConcurrentMemoryCache<?>> cacheReference;
+        private volatile ScheduledFuture<?> future;
+
+        private ClearData(ConcurrentMemoryCache<?> cache) {
+            this.cacheReference = new WeakReference<>(cache);
+        }
+
+        @Override
+        public void run() {
+            ConcurrentMemoryCache<?> cache = cacheReference.get();
+            if (cache == null) {
+                if (future != null) {
+                    future.cancel(false);
+                }
+                return;
+            }
+            cache.cleanUp();
+        }
+    }
+
+    /**
+     * 构造函数，创建一个每秒推进一次时间轮的实例
+     */
+    public ConcurrentMemoryCache() {
+        this(16, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 根据传入的参数构造函数
+     *
+     * @param initialCapacity 缓存的初始容量
+     * @param cleanPeriod     回收过期缓存的周期（即推进时间轮的周期）
+     * @param timeUnit        周期的时间单位
+     */
+    public ConcurrentMemoryCache(int initialCapacity, long cleanPeriod, TimeUnit timeUnit) {
+        Validate.isTrue(cleanPeriod > 0, "回收过期缓存的周期必须大于0！");
+
+        this.cacheMap = new ConcurrentHashMap<>(initialCapacity);
+        this.timerWheel = new TimerWheel(System.currentTimeMillis(), this::expire);
+        ClearData clearData = new ClearData(this);
+        clearData.future = CLEANER.scheduleWithFixedDelay(clearData, cleanPeriod, cleanPeriod, timeUnit);
+    }
+
+    /**
+     * 设置缓存项的默认闲置时间，对之后通过{@link ICache}接口写入的缓存项生效
+     *
+     * @param timeToIdle 闲置时间，小于等于0表示不限制
+     * @param timeUnit   时间单位
+     */
+    public void setTimeToIdle(long timeToIdle, TimeUnit timeUnit) {
+        this.defaultTimeToIdle = Math.max(0, timeUnit.toMillis(timeToIdle));
+    }
+
+    /**
+     * 获取当前缓存项的数量（可能包含已经过期但尚未回收的缓存项）
+     *
+     * @return 缓存项的数量
+     */
+    @Override
+    public long size() {
+        return cacheMap.size();
+    }
+
+    @Override
+    public void set(String key, T value) {
+        set(key, value, null);
+    }
+
+    @Override
+    public void set(String key, T value, Date date) {
+        Validate.notNull(key, "缓存的key不能为空！");
+        long timeToIdle = defaultTimeToIdle;
+        long now = (timeToIdle > 0) ? System.currentTimeMillis() : 0L;   //只有闲置时间需要记录写入时间
+        long absExpiry = (date == null) ? Long.MAX_VALUE : date.getTime();
+        put(new Entry<>(key, value, absExpiry, timeToIdle, now));
+    }
+
+    /**
+     * 更新或新增缓存的对象，并指定缓存项的存活时间和闲置时间
+     *
+     * @param key        缓存的KEY
+     * @param value      缓存的值
+     * @param timeToLive 存活时间，从写入开始计算，小于等于0表示不限制
+     * @param timeToIdle 闲置时间，从最后一次访问开始计算，小于等于0表示不限制
+     * @param timeUnit   时间单位
+     */
+    public void set(String key, T value, long timeToLive, long timeToIdle, TimeUnit timeUnit) {
+        Validate.notNull(key, "缓存的key不能为空！");
+        long now = System.currentTimeMillis();
+        long absExpiry = (timeToLive <= 0) ? Long.MAX_VALUE : now + timeUnit.toMillis(timeToLive);
+        put(new Entry<>(key, value, absExpiry, Math.max(0, timeUnit.toMillis(timeToIdle)), now));
+    }
+
+    @Override
+    public void setMap(Map<String, T> map) {
+        setMap(map, null);
+    }
+
+    @Override
+    public void setMap(Map<String, T> map, Date date) {
+        for (Map.Entry<String, T> entry : map.entrySet()) {
+            if (entry.getKey() != null) {
+                set(entry.getKey(), entry.getValue(), date);
+            }
+        }
+    }
+
+    @Override
+    public T get(String key) {
+        Validate.notNull(key, "缓存的key不能为空！");
+
+        Entry<T> entry = getAlive(key);
+        if (entry == null) {
+            statsCounter.recordMisses(1);
+            return null;
+        }
+        statsCounter.recordHits(1);
+        return entry.value;
+    }
+
+    @Override
+    public void remove(String key) {
+        Validate.notNull(key, "缓存的key不能为空！");
+        Entry<T> entry = cacheMap.remove(key);
+        if (entry != null && entry.isExpiring()) {
+            afterWrite(entry);
+        }
+    }
+
+    @Override
+    public void remove(Collection<String> keys) {
+        for (String key : keys) {
+            remove(key);
+        }
+    }
+
+    @Override
+    public void clear() {
+        timerLock.lock();
+        try {
+            cacheMap.clear();
+            drainWriteBuffer();
+            timerWheel.clear();
+        } finally {
+            timerLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        Validate.notNull(key, "缓存的key不能为空！");
+        return getAlive(key) != null;
+    }
+
+    /**
+     * 调整写缓冲区中的缓存项并推进时间轮，立即回收所有已经到期的缓存项
+     */
+    public void cleanUp() {
+        timerLock.lock();
+        try {
+            drainWriteBuffer();
+            timerWheel.advance(System.currentTimeMillis());
+        } finally {
+            timerLock.unlock();
+        }
+    }
+
+    //写入缓存项，并将会过期的缓存项加入时间轮，被覆盖的缓存项从时间轮中移除
+    private void put(Entry<T> entry) {
+        Entry<T> previous = cacheMap.put(entry.key, entry);
+        if (previous != null && previous.isExpiring()) {
+            afterWrite(previous);
+        }
+        if (entry.isExpiring()) {
+            afterWrite(entry);
+        }
+    }
+
+    //将需要调整时间轮的缓存项放入写缓冲区，获取到时间轮锁时清空写缓冲区，否则由持有锁的线程或者下一次推进时间轮时处理
+    private void afterWrite(Entry<T> entry) {
+        writeBuffer.offer(entry);
+        if (writeBufferSize.incrementAndGet() > WRITE_BUFFER_LIMIT) {
+            timerLock.lock();           //写缓冲区积压过多，等待时间轮锁，避免缓冲区无限增长
+        } else if (!timerLock.tryLock()) {
+            return;
+        }
+        try {
+            drainWriteBuffer();
+        } finally {
+            timerLock.unlock();
+        }
+    }
+
+    //调整写缓冲区中的缓存项：仍然在缓存中的缓存项按照到期时间调度，已经被覆盖或移除的缓存项取消调度，调用方需要持有时间轮锁
+    private void drainWriteBuffer() {
+        Entry<T> entry;
+        while ((entry = writeBuffer.poll()) != null) {
+            writeBufferSize.decrementAndGet();
+            if (cacheMap.get(entry.key) == entry) {
+                if (!entry.isScheduled()) {
+                    timerWheel.schedule(entry);
+                }
+            } else {
+                timerWheel.deschedule(entry);
+            }
+        }
+    }
+
+    //获取未过期的缓存项，并更新其最后访问时间
+    private Entry<T> getAlive(String key) {
+        Entry<T> entry = cacheMap.get(key);
+        if (entry == null || !entry.isExpiring()) {
+            return entry;       //永不过期的缓存项不需要读取时钟
+        }
+        long now = System.currentTimeMillis();
+        if (entry.expiryTime() < now) {
+            if (cacheMap.remove(key, entry)) { // 移除过期的缓存对象，定时器会在到期时被时间轮丢弃
+                statsCounter.recordEviction();
+            }
+            return null;
+        }
+        if (entry.timeToIdle > 0 && entry.accessTime != now) {
+            entry.accessTime = now;
+        }
+        return entry;
+    }
+
+    //时间轮中的定时器到期的处理程序，在持有时间轮锁的情况下被调用
+    @SuppressWarnings("unchecked")
+    private boolean expire(TimerWheel.Timer timer, long now) {
+        Entry<T> entry = (Entry<T>) timer;
+        long expiryTime = entry.expiryTime();
+        if (expiryTime > now && cacheMap.get(entry.key) == entry) {
+            entry.deadline = expiryTime;    //闲置期内被访问过，延后到期时间后重新调度
+            return false;
+        }
+        if (cacheMap.remove(entry.key, entry)) {
+            statsCounter.recordEviction();
+        }
+        return true;
+    }
+}
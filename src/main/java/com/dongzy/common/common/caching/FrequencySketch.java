@@ -0,0 +1,124 @@
+package com.dongzy.common.common.caching;
+
+/**
+ * 缓存项访问频率的估算器（Count-Min Sketch），供W-TinyLFU淘汰策略判断新缓存项是否值得被接纳
+ * 每个计数器只占用4个bit，计数最大为15；当采样次数达到上限时，所有计数器减半，使历史热点逐渐“老化”
+ * <p>
+ * 注意：本类不是线程安全的，需要由调用方保证同步
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+final class FrequencySketch {
+
+    private static final long[] SEED = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    private long[] table;
+    private int tableMask;
+    private int sampleSize;
+    private int size;
+
+    /**
+     * 根据预计的缓存项数量构造函数
+     *
+     * @param expectedSize 预计的缓存项数量
+     */
+    FrequencySketch(long expectedSize) {
+        table = new long[0];
+        ensureCapacity(expectedSize);
+    }
+
+    /**
+     * 确保计数表能够容纳指定数量的缓存项，容量只会增大，增大后原有的统计数据将被丢弃
+     *
+     * @param expectedSize 预计的缓存项数量
+     */
+    void ensureCapacity(long expectedSize) {
+        int capacity = (int) Math.min(Math.max(expectedSize, 16), MAXIMUM_CAPACITY);
+        if (table.length >= capacity) {
+            return;
+        }
+        table = new long[ceilingPowerOfTwo(capacity)];
+        tableMask = table.length - 1;
+        sampleSize = (int) Math.min(10L * capacity, Integer.MAX_VALUE);
+        size = 0;
+    }
+
+    /**
+     * 获取指定对象的估算访问频率
+     *
+     * @param item 需要估算的对象
+     * @return 访问频率，最大为15
+     */
+    int frequency(Object item) {
+        int hash = spread(item.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * 记录一次指定对象的访问
+     *
+     * @param item 被访问的对象
+     */
+    void increment(Object item) {
+        int hash = spread(item.hashCode());
+        int start = (hash & 3) << 2;
+
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+
+        if (added && (++size == sampleSize)) {
+            reset();
+        }
+    }
+
+    //将指定位置的4bit计数器加1，如果已经到达上限，那么返回false
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    //所有的计数器减半
+    private void reset() {
+        int count = 0;
+        for (int i = 0; i < table.length; i++) {
+            count += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size - (count >>> 2)) >>> 1;
+    }
+
+    private int indexOf(int item, int i) {
+        long hash = (item + SEED[i]) * SEED[i];
+        hash += (hash >>> 32);
+        return ((int) hash) & tableMask;
+    }
+
+    //对hashCode进行二次散列，防止较差的hashCode实现导致计数冲突
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+
+    private static int ceilingPowerOfTwo(int x) {
+        return 1 << -Integer.numberOfLeadingZeros(x - 1);
+    }
+}
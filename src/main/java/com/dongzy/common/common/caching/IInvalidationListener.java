@@ -0,0 +1,18 @@
+package com.dongzy.common.common.caching;
+
+/**
+ * 缓存失效消息的监听接口
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+@FunctionalInterface
+public interface IInvalidationListener {
+
+    /**
+     * 处理收到的失效消息，本方法在传输通道的接收线程中调用，不应当执行耗时的操作
+     *
+     * @param message 失效消息
+     */
+    void onInvalidation(InvalidationMessage message);
+}
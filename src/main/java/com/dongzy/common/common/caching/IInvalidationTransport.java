@@ -0,0 +1,53 @@
+package com.dongzy.common.common.caching;
+
+import java.io.Closeable;
+import java.util.Collection;
+
+/**
+ * 缓存失效消息的传输通道接口，用于在多个节点之间广播近端缓存的失效事件
+ * 发布的消息应当被投递给连接到同一通道的所有节点（包括发布者自身，接收方根据消息的节点标识过滤）
+ * 传输通道不需要保证消息的顺序，失效操作是幂等的
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public interface IInvalidationTransport extends Closeable {
+
+    /**
+     * 发布失效消息
+     *
+     * @param message 失效消息
+     */
+    void publish(InvalidationMessage message);
+
+    /**
+     * 批量发布失效消息，默认逐条发布，传输通道可以将多条消息合并发送
+     *
+     * @param messages 失效消息的集合
+     */
+    default void publish(Collection<InvalidationMessage> messages) {
+        for (InvalidationMessage message : messages) {
+            publish(message);
+        }
+    }
+
+    /**
+     * 订阅失效消息
+     *
+     * @param listener 失效消息的监听对象
+     */
+    void subscribe(IInvalidationListener listener);
+
+    /**
+     * 取消订阅失效消息
+     *
+     * @param listener 失效消息的监听对象
+     */
+    void unsubscribe(IInvalidationListener listener);
+
+    /**
+     * 关闭传输通道，释放占用的资源
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,21 @@
+package com.dongzy.common.common.caching;
+
+/**
+ * 缓存项权重的计算接口，用于有界缓存按照权重（如占用的字节数）来限制缓存的容量
+ * 权重只在缓存项写入时计算一次，所以实现类应当保证同一个值的权重计算结果稳定
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+@FunctionalInterface
+public interface IWeigher<T> {
+
+    /**
+     * 计算缓存项的权重，返回值不能小于0
+     *
+     * @param key   缓存的key
+     * @param value 缓存的值
+     * @return 缓存项的权重
+     */
+    int weigh(String key, T value);
+}
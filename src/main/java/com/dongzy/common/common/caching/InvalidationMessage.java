@@ -0,0 +1,64 @@
+package com.dongzy.common.common.caching;
+
+import java.io.Serializable;
+
+/**
+ * 近端缓存的失效消息，由执行写操作的节点发布，其他节点收到后移除本地一级缓存中对应的缓存项
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public final class InvalidationMessage implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String sourceId;
+    private final String cacheName;
+    private final String key;
+    private final long version;
+
+    /**
+     * 根据传入的参数构造函数
+     *
+     * @param sourceId  发布消息的节点标识
+     * @param cacheName 缓存的名称
+     * @param key       失效的缓存key，为null表示清空整个缓存
+     * @param version   发布节点的消息序号，同一个节点发布的消息序号递增
+     */
+    public InvalidationMessage(String sourceId, String cacheName, String key, long version) {
+        this.sourceId = sourceId;
+        this.cacheName = cacheName;
+        this.key = key;
+        this.version = version;
+    }
+
+    public String getSourceId() {
+        return sourceId;
+    }
+
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 判断当前消息是否为清空整个缓存的消息
+     *
+     * @return 是否清空整个缓存
+     */
+    public boolean isClear() {
+        return key == null;
+    }
+
+    @Override
+    public String toString() {
+        return "sourceId:[" + sourceId + "],cacheName:[" + cacheName + "],key:[" + key + "],version:[" + version + "]";
+    }
+}
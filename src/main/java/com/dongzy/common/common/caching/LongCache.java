@@ -0,0 +1,394 @@
+package com.dongzy.common.common.caching;
+
+import com.dongzy.common.common.Validate;
+
+import java.lang.ref.WeakReference;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 以long类型为key的内存缓存，适用于以数字ID（如{@link com.dongzy.common.common.IdWorker}生成的ID）为key的热点数据，主要包含以下功能：
+ * 1、采用开放寻址（线性探测）的原始类型数组保存key、值和过期时间，读写缓存不需要创建String类型的key和缓存项包装对象
+ * 2、删除时采用后移删除法，不使用删除标记，探测链不会因为频繁删除而变长
+ * 3、读操作采用StampedLock的乐观读，没有写操作并发时读操作不加锁；key、值和过期时间数组保存在同一个哈希表对象中，
+ * 扩容和清空时整体替换，乐观读只读取一次哈希表，不会把新的key数组和旧的值数组混在一起使用
+ * 4、缓存项的过期规则与{@link MemoryCache}一致：读取时判断是否过期，过期的缓存项在读取时移除，并每30分钟回收一次
+ * <p>
+ * 注意：缓存的值不能为null，写入null值等同于移除该key
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public final class LongCache<T> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final long NO_EXPIRY = Long.MAX_VALUE;           //永不过期的缓存项的过期时间
+
+    //所有实例共用的过期缓存回收线程
+    private static final ScheduledExecutorService CLEANER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "LongCache-Cleaner");
+        thread.setDaemon(true);                           //将当前线程设置为守护线程
+        thread.setPriority(Thread.MIN_PRIORITY);          //降低线程的优先级
+        return thread;
+    });
+
+    private final StampedLock lock = new StampedLock();
+    private final StatsCounter statsCounter = new StatsCounter();
+    private volatile Table table;
+    private int size;
+
+    /**
+     * 开放寻址的哈希表，数组的长度在创建后不变，扩容时创建新的哈希表
+     */
+    private static final class Table {
+
+        private final long[] keys;
+        private final Object[] values;      //值为null表示空槽
+        private final long[] expiries;      //绝对过期时间
+        private final int mask;
+
+        private Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new Object[capacity];
+            this.expiries = new long[capacity];
+            this.mask = capacity - 1;
+        }
+    }
+
+    /**
+     * 定义过期缓存的回收任务，任务只持有缓存实例的弱引用，不会阻止缓存实例被垃圾回收
+     */
+    private static final class ClearData implements Runnable {
+
+        private final WeakReference<LongCache<?>> cacheReference;
+        private volatile ScheduledFuture<?> future;
+
+        private ClearData(LongCache<?> cache) {
+            this.cacheReference = new WeakReference<>(cache);
+        }
+
+        @Override
+        public void run() {
+            LongCache<?> cache = cacheReference.get();
+            if (cache == null) {
+                if (future != null) {
+                    future.cancel(false);
+                }
+                return;
+            }
+            cache.cleanUp();
+        }
+    }
+
+    /**
+     * 构造函数，创建一个默认初始容量的实例
+     */
+    public LongCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * 根据预计的缓存项数量构造函数
+     *
+     * @param expectedSize 预计的缓存项数量
+     */
+    public LongCache(int expectedSize) {
+        Validate.isTrue(expectedSize >= 0, "预计的缓存项数量不能小于0！");
+        table = new Table(tableSizeFor(expectedSize));
+
+        ClearData clearData = new ClearData(this);
+        //设定每30分钟回收一次内存。
+        clearData.future = CLEANER.scheduleWithFixedDelay(clearData, 30, 30, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 更新或新增缓存的对象，缓存永不过期
+     *
+     * @param key   缓存的KEY
+     * @param value 缓存的值，为null时移除该key
+     */
+    public void set(long key, T value) {
+        set(key, value, null);
+    }
+
+    /**
+     * 更新或新增缓存的对象
+     *
+     * @param key   缓存的KEY
+     * @param value 缓存的值，为null时移除该key
+     * @param date  过期时间，为null表示永不过期
+     */
+    public void set(long key, T value, Date date) {
+        if (value == null) {
+            remove(key);
+            return;
+        }
+        long absExpiry = (date == null) ? NO_EXPIRY : date.getTime();
+        long stamp = lock.writeLock();
+        try {
+            Table table = this.table;
+            int index = find(table, key);
+            if (index < 0) {
+                if ((size + 1) * 4L > table.keys.length * 3L) {       //负载因子超过0.75时扩容
+                    table = resize(table);
+                }
+                index = insertionIndex(table, key);
+                table.keys[index] = key;
+                size++;
+            }
+            table.values[index] = value;
+            table.expiries[index] = absExpiry;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 获取缓存的对象
+     *
+     * @param key 缓存的KEY
+     * @return 缓存的值，不存在或者已经过期时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public T get(long key) {
+        Object value = null;
+        long absExpiry = 0;
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            Table table = this.table;       //只读取一次，数组和掩码一定属于同一个哈希表
+            int mask = table.mask;
+            int index = indexFor(key, mask);
+            for (int i = 0; i <= mask; i++) {
+                Object current = table.values[index];
+                if (current == null) {
+                    break;
+                }
+                if (table.keys[index] == key) {
+                    value = current;
+                    absExpiry = table.expiries[index];
+                    break;
+                }
+                index = (index + 1) & mask;
+            }
+        }
+        if (stamp == 0 || !lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                Table table = this.table;
+                int index = find(table, key);
+                value = (index < 0) ? null : table.values[index];
+                absExpiry = (index < 0) ? 0 : table.expiries[index];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        if (value == null) {
+            statsCounter.recordMisses(1);
+            return null;
+        }
+        if (absExpiry < System.currentTimeMillis()) {
+            removeExpired(key);        // 移除过期的缓存对象
+            statsCounter.recordMisses(1);
+            return null;
+        }
+        statsCounter.recordHits(1);
+        return (T) value;
+    }
+
+    /**
+     * 判断缓存中是否包含指定的key
+     *
+     * @param key 缓存的KEY
+     * @return 是否包含未过期的缓存项
+     */
+    public boolean containsKey(long key) {
+        long stamp = lock.readLock();
+        try {
+            Table table = this.table;
+            int index = find(table, key);
+            return index >= 0 && table.expiries[index] >= System.currentTimeMillis();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 移除指定的缓存项
+     *
+     * @param key 缓存的KEY
+     */
+    public void remove(long key) {
+        long stamp = lock.writeLock();
+        try {
+            Table table = this.table;
+            int index = find(table, key);
+            if (index >= 0) {
+                removeAt(table, index);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 清空所有的缓存项
+     */
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            table = new Table(DEFAULT_CAPACITY);
+            size = 0;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 获取当前缓存项的数量（可能包含已经过期但尚未回收的缓存项）
+     *
+     * @return 缓存项的数量
+     */
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 获取缓存的统计信息快照
+     *
+     * @return 统计信息
+     */
+    public CacheStats getStats() {
+        return statsCounter.snapshot(size());
+    }
+
+    /**
+     * 立即回收所有已经过期的缓存项
+     */
+    public void cleanUp() {
+        long stamp = lock.writeLock();
+        try {
+            Table table = this.table;
+            long now = System.currentTimeMillis();
+            int index = 0;
+            while (index < table.keys.length) {
+                if (table.values[index] != null && table.expiries[index] < now) {
+                    removeAt(table, index);            //后移的缓存项会填充到当前位置，需要重新检查当前位置
+                    statsCounter.recordEviction();
+                } else {
+                    index++;
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    //如果key对应的缓存项仍然是过期的，那么将其移除
+    private void removeExpired(long key) {
+        long stamp = lock.writeLock();
+        try {
+            Table table = this.table;
+            int index = find(table, key);
+            if (index >= 0 && table.expiries[index] < System.currentTimeMillis()) {
+                removeAt(table, index);
+                statsCounter.recordEviction();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    //查找key所在的位置，不存在时返回-1，调用方需要持有锁
+    private static int find(Table table, long key) {
+        int index = indexFor(key, table.mask);
+        while (table.values[index] != null) {
+            if (table.keys[index] == key) {
+                return index;
+            }
+            index = (index + 1) & table.mask;
+        }
+        return -1;
+    }
+
+    //查找key可以插入的空槽位置，调用方需要持有写锁，并保证key不存在
+    private static int insertionIndex(Table table, long key) {
+        int index = indexFor(key, table.mask);
+        while (table.values[index] != null) {
+            index = (index + 1) & table.mask;
+        }
+        return index;
+    }
+
+    //删除指定位置的缓存项，并将其后探测链中的缓存项前移，保证查找时不会遇到空洞
+    private void removeAt(Table table, int index) {
+        final int mask = table.mask;
+        final long[] keys = table.keys;
+        final Object[] values = table.values;
+        final long[] expiries = table.expiries;
+        int hole = index;
+        int next = (hole + 1) & mask;
+        while (values[next] != null) {
+            int ideal = indexFor(keys[next], mask);
+            //如果next的理想位置不在(hole, next]区间内，那么可以将其移动到空洞中
+            boolean movable = (hole <= next) ? (ideal <= hole || ideal > next) : (ideal <= hole && ideal > next);
+            if (movable) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                expiries[hole] = expiries[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = 0;
+        values[hole] = null;
+        expiries[hole] = 0;
+        size--;
+    }
+
+    //扩容为原来的两倍，同时丢弃已经过期的缓存项，新的哈希表填充完成后才发布，返回新的哈希表
+    private Table resize(Table oldTable) {
+        Table newTable = new Table(oldTable.keys.length << 1);
+        int newSize = 0;
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < oldTable.keys.length; i++) {
+            if (oldTable.values[i] == null) {
+                continue;
+            }
+            if (oldTable.expiries[i] < now) {
+                statsCounter.recordEviction();
+                continue;
+            }
+            int index = insertionIndex(newTable, oldTable.keys[i]);
+            newTable.keys[index] = oldTable.keys[i];
+            newTable.values[index] = oldTable.values[i];
+            newTable.expiries[index] = oldTable.expiries[i];
+            newSize++;
+        }
+        size = newSize;
+        table = newTable;
+        return newTable;
+    }
+
+    //计算key的初始探测位置，通过乘法哈希将连续的ID分散开
+    private static int indexFor(long key, int mask) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    //计算能够容纳指定数量缓存项（负载因子不超过0.75）的2的幂的数组大小
+    private static int tableSizeFor(int expectedSize) {
+        long capacity = Math.max(DEFAULT_CAPACITY, (long) Math.ceil(expectedSize / 0.75));
+        Validate.isTrue(capacity <= (1 << 30), "预计的缓存项数量过大！");
+        return (int) Long.highestOneBit(capacity - 1) << 1;
+    }
+}
@@ -0,0 +1,75 @@
+package com.dongzy.common.common.caching;
+
+import com.dongzy.common.common.Validate;
+import com.dongzy.common.log.TextLoggerFactory;
+import org.slf4j.Logger;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 进程内的缓存失效消息传输通道，同一个通道名称的所有实例共享订阅者，用于单元测试或者单进程内模拟多个节点
+ * 消息在发布线程中同步投递给所有订阅者
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public final class LoopbackInvalidationTransport implements IInvalidationTransport {
+
+    private final static Logger LOGGER = TextLoggerFactory.getInstance().getLogger(LoopbackInvalidationTransport.class);
+    private final static Map<String, List<IInvalidationListener>> CHANNEL_MAP = new ConcurrentHashMap<>();
+
+    private final String channel;
+    private final List<IInvalidationListener> localListeners = new CopyOnWriteArrayList<>();      //通过当前实例订阅的监听对象
+
+    /**
+     * 根据通道名称构造函数，通道名称相同的实例之间可以互相传递消息
+     *
+     * @param channel 通道名称
+     */
+    public LoopbackInvalidationTransport(String channel) {
+        Validate.notEmpty(channel, "通道名称不能为空！");
+        this.channel = channel;
+    }
+
+    @Override
+    public void publish(InvalidationMessage message) {
+        Validate.notNull(message, "message对象不能为null。");
+        List<IInvalidationListener> listeners = CHANNEL_MAP.get(channel);
+        if (listeners == null) {
+            return;
+        }
+        for (IInvalidationListener listener : listeners) {
+            try {
+                listener.onInvalidation(message);
+            } catch (Exception e) {
+                LOGGER.warn("处理缓存失效消息时发生异常，" + message, e);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(IInvalidationListener listener) {
+        Validate.notNull(listener, "listener对象不能为null。");
+        CHANNEL_MAP.computeIfAbsent(channel, key -> new CopyOnWriteArrayList<>()).add(listener);
+        localListeners.add(listener);
+    }
+
+    @Override
+    public void unsubscribe(IInvalidationListener listener) {
+        List<IInvalidationListener> listeners = CHANNEL_MAP.get(channel);
+        if (listeners != null) {
+            listeners.remove(listener);
+        }
+        localListeners.remove(listener);
+    }
+
+    @Override
+    public void close() {
+        for (IInvalidationListener listener : localListeners) {
+            unsubscribe(listener);
+        }
+    }
+}
@@ -1,28 +1,76 @@
 package com.dongzy.common.common.caching;
 
 import com.dongzy.common.common.Validate;
+import com.dongzy.common.common.io.ISerializer;
+import com.dongzy.common.common.io.JdkSerializer;
+import com.dongzy.common.log.TextLoggerFactory;
+import org.slf4j.Logger;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 内存缓存的实现类，主要包含以下功能：
  * 1、定义了垃圾回收机制，会定期回收不再使用的缓存内容
  * 2、为满足内存缓存模式，重写了一些基础类的读写缓存方法
+ * 3、支持将缓存内容（包括过期时间）保存为二进制快照文件，并在启动时并行加载快照进行预热，
+ * 快照可以定期保存，也可以在进程退出时保存
+ * <p>
+ * 快照文件格式：文件头（魔数、版本号、缓存项数量），之后每个缓存项依次为key、过期时间（-1表示不过期）、序列化后的值，
+ * 快照先写入临时文件，写入完成后再替换原文件，保存过程中进程退出不会损坏已有的快照
  *
  * @author zouyong
  * @since JDK1.5
  */
 public final class MemoryCache<T> extends Cache<T> {
 
+    private final static Logger LOGGER = TextLoggerFactory.getInstance().getLogger(MemoryCache.class);
+    private final static int SNAPSHOT_MAGIC = 0x4D435350;        //快照文件的魔数
+    private final static int SNAPSHOT_VERSION = 1;                //快照文件格式的版本号
+
     private final Map<String, CacheItem<T>> cacheMap; // 缓存对象map
     private final static MemoryCache memoryCache = new MemoryCache();
     private final ScheduledExecutorService scheduledExecutorService;
+    private ScheduledFuture<?> snapshotFuture;                    //定期保存快照的任务
+    private Thread snapshotHook;                                  //进程退出时保存快照的钩子
+    private final ReentrantLock snapshotLock = new ReentrantLock();   //同一时间只有一个线程保存快照
+
+    /**
+     * 快照文件中读取的缓存项，值尚未反序列化
+     */
+    private static final class SnapshotRecord {
+        private final String key;
+        private final long absExpiry;
+        private final byte[] bytes;
+
+        private SnapshotRecord(String key, long absExpiry, byte[] bytes) {
+            this.key = key;
+            this.absExpiry = absExpiry;
+            this.bytes = bytes;
+        }
+    }
 
     /**
      * 定义内存回收的类
@@ -39,6 +87,7 @@ public final class MemoryCache<T> extends Cache<T> {
             for (CacheItem<T> cacheItem : cacheMap.values()) {
                 if (cacheItem.getAbsExpiry() != null && cacheItem.getAbsExpiry() < System.currentTimeMillis()) {
                     cacheMap.remove(cacheItem.getKey()); // 移除过期的缓存对象
+                    statsCounter.recordEviction();
                 }
                 Thread.yield();
             }
@@ -73,6 +122,11 @@ public final class MemoryCache<T> extends Cache<T> {
         return memoryCache;
     }
 
+    @Override
+    public long size() {
+        return cacheMap.size();
+    }
+
     @Override
     synchronized public void set(String key, T value) {
         set(key, value, null);
@@ -95,10 +149,13 @@ public final class MemoryCache<T> extends Cache<T> {
             // 如果缓存没有失效，那么返回缓存
             if (isExpiry(cacheItem)) {
                 cacheMap.remove(key); // 移除过期的缓存对象
+                statsCounter.recordEviction();
             } else {
+                statsCounter.recordHits(1);
                 return cacheItem.getValue();
             }
         }
+        statsCounter.recordMisses(1);
         return null;
     }
 
@@ -127,6 +184,7 @@ public final class MemoryCache<T> extends Cache<T> {
             // 如果缓存没有失效，那么返回缓存
             if (isExpiry(cacheItem)) {
                 cacheMap.remove(key); // 移除过期的缓存对象
+                statsCounter.recordEviction();
                 return false;
             } else {
                 return true;
@@ -135,6 +193,249 @@ public final class MemoryCache<T> extends Cache<T> {
         return false;
     }
 
+    /**
+     * 将缓存内容保存为快照文件，缓存的值采用{@link JdkSerializer}序列化
+     *
+     * @param file 快照文件
+     * @return 保存的缓存项数量
+     */
+    public int saveSnapshot(File file) {
+        return saveSnapshot(file, new JdkSerializer<>());
+    }
+
+    /**
+     * 将缓存内容保存为快照文件，已经过期或者无法序列化的缓存项不会被保存，
+     * 多个线程同时保存时依次执行，每次保存先写入同一目录下的唯一临时文件，写完后再替换快照文件
+     *
+     * @param file       快照文件
+     * @param serializer 缓存值的序列化类
+     * @return 保存的缓存项数量
+     */
+    public int saveSnapshot(File file, ISerializer<T> serializer) {
+        Validate.notNull(file, "快照文件不能为null。");
+        Validate.notNull(serializer, "serializer对象不能为null。");
+
+        snapshotLock.lock();
+        try {
+            return writeSnapshot(file, serializer);
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    //将缓存内容写入临时文件后替换快照文件，调用方需要持有snapshotLock
+    private int writeSnapshot(File file, ISerializer<T> serializer) {
+        List<CacheItem<T>> cacheItems;
+        synchronized (this) {
+            cacheItems = new ArrayList<>(cacheMap.values());
+        }
+
+        File parentFile = file.getAbsoluteFile().getParentFile();
+        if (parentFile != null && !parentFile.exists() && !parentFile.mkdirs()) {
+            throw new IllegalStateException("无法创建快照文件所在的目录：" + parentFile.getAbsolutePath());
+        }
+        File tempFile;
+        try {
+            tempFile = File.createTempFile(file.getName() + ".", ".tmp", parentFile);
+        } catch (IOException e) {
+            throw new IllegalStateException("创建快照的临时文件失败：" + file.getAbsolutePath(), e);
+        }
+        int count = 0;
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 64 * 1024))) {
+            outputStream.writeInt(SNAPSHOT_MAGIC);
+            outputStream.writeInt(SNAPSHOT_VERSION);
+            outputStream.writeInt(cacheItems.size());        //预计的数量，以文件结束标记为准
+            for (CacheItem<T> cacheItem : cacheItems) {
+                if (isExpiry(cacheItem) || cacheItem.getValue() == null) {
+                    continue;
+                }
+                byte[] bytes;
+                try {
+                    bytes = serializer.serialize(cacheItem.getValue());
+                } catch (RuntimeException e) {
+                    LOGGER.warn("缓存项无法序列化，不保存到快照中，key：" + cacheItem.getKey(), e);
+                    continue;
+                }
+                byte[] keyBytes = cacheItem.getKey().getBytes(StandardCharsets.UTF_8);
+                outputStream.writeBoolean(true);
+                outputStream.writeInt(keyBytes.length);
+                outputStream.write(keyBytes);
+                outputStream.writeLong(cacheItem.getAbsExpiry() == null ? -1 : cacheItem.getAbsExpiry());
+                outputStream.writeInt(bytes.length);
+                outputStream.write(bytes);
+                count++;
+            }
+            outputStream.writeBoolean(false);                 //文件结束标记
+        } catch (IOException e) {
+            tempFile.delete();
+            throw new IllegalStateException("保存缓存快照失败：" + file.getAbsolutePath(), e);
+        }
+
+        try {
+            try {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+            throw new IllegalStateException("保存缓存快照失败：" + file.getAbsolutePath(), e);
+        }
+        return count;
+    }
+
+    /**
+     * 从快照文件中加载缓存内容，缓存的值采用{@link JdkSerializer}反序列化
+     *
+     * @param file 快照文件
+     * @return 加载的缓存项数量，文件不存在时返回0
+     */
+    public int loadSnapshot(File file) {
+        return loadSnapshot(file, new JdkSerializer<>());
+    }
+
+    /**
+     * 从快照文件中加载缓存内容，已经过期的缓存项会被跳过，缓存中已经存在的key不会被覆盖，
+     * 缓存值的反序列化并行执行
+     *
+     * @param file       快照文件
+     * @param serializer 缓存值的序列化类
+     * @return 加载的缓存项数量，文件不存在时返回0
+     */
+    public int loadSnapshot(File file, ISerializer<T> serializer) {
+        Validate.notNull(file, "快照文件不能为null。");
+        Validate.notNull(serializer, "serializer对象不能为null。");
+        if (!file.isFile()) {
+            return 0;
+        }
+
+        List<SnapshotRecord> records = readSnapshot(file);
+        List<CacheItem<T>> cacheItems = new ArrayList<>(records.size());
+        records.parallelStream().map(record -> {
+            try {
+                Date date = (record.absExpiry < 0) ? null : new Date(record.absExpiry);
+                return new CacheItem<>(record.key, serializer.deserialize(record.bytes), date);
+            } catch (RuntimeException e) {
+                LOGGER.warn("快照中的缓存项无法反序列化，key：" + record.key, e);
+                return null;
+            }
+        }).forEachOrdered(cacheItem -> {
+            if (cacheItem != null) {
+                cacheItems.add(cacheItem);
+            }
+        });
+
+        int count = 0;
+        synchronized (this) {
+            for (CacheItem<T> cacheItem : cacheItems) {
+                if (cacheMap.putIfAbsent(cacheItem.getKey(), cacheItem) == null) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 启用快照：立即从快照文件中加载缓存内容，之后按照指定的周期保存快照，并在进程退出时保存一次快照
+     *
+     * @param file     快照文件
+     * @param period   保存快照的周期，小于等于0表示只在进程退出时保存
+     * @param timeUnit 周期的时间单位
+     * @return 加载的缓存项数量
+     */
+    public synchronized int enableSnapshot(File file, long period, TimeUnit timeUnit) {
+        Validate.notNull(file, "快照文件不能为null。");
+        disableSnapshot();
+
+        int count = 0;
+        try {
+            count = loadSnapshot(file);
+        } catch (RuntimeException e) {
+            LOGGER.warn("加载缓存快照失败，忽略已有的快照：" + file.getAbsolutePath(), e);
+        }
+
+        Runnable saveTask = () -> {
+            try {
+                saveSnapshot(file);
+            } catch (Exception e) {
+                LOGGER.warn("保存缓存快照失败：" + file.getAbsolutePath(), e);
+            }
+        };
+        final ScheduledFuture<?> future = (period > 0)
+                ? scheduledExecutorService.scheduleWithFixedDelay(saveTask, period, period, timeUnit) : null;
+        snapshotFuture = future;
+        //进程退出时先取消定期保存，正在执行的保存持有snapshotLock，最后一次保存会等待其完成后再执行
+        snapshotHook = new Thread(() -> {
+            if (future != null) {
+                future.cancel(false);
+            }
+            saveTask.run();
+        }, "MemoryCache-Snapshot");
+        Runtime.getRuntime().addShutdownHook(snapshotHook);
+        return count;
+    }
+
+    /**
+     * 停用快照，不再定期保存快照，进程退出时也不再保存
+     */
+    public synchronized void disableSnapshot() {
+        if (snapshotFuture != null) {
+            snapshotFuture.cancel(false);
+            snapshotFuture = null;
+        }
+        if (snapshotHook != null) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(snapshotHook);
+            } catch (IllegalStateException e) {
+                //进程正在退出，钩子已经开始执行
+            }
+            snapshotHook = null;
+        }
+    }
+
+    //读取快照文件中所有未过期的缓存项
+    private static List<SnapshotRecord> readSnapshot(File file) {
+        long now = System.currentTimeMillis();
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            Validate.isTrue(inputStream.readInt() == SNAPSHOT_MAGIC, "不是有效的缓存快照文件：%s", file.getAbsolutePath());
+            int version = inputStream.readInt();
+            Validate.isTrue(version == SNAPSHOT_VERSION, "不支持的缓存快照版本：%s", version);
+            int size = inputStream.readInt();
+
+            List<SnapshotRecord> records = new ArrayList<>(Math.max(0, size));
+            while (inputStream.readBoolean()) {
+                byte[] keyBytes = new byte[inputStream.readInt()];
+                inputStream.readFully(keyBytes);
+                long absExpiry = inputStream.readLong();
+                int length = inputStream.readInt();
+                if (absExpiry >= 0 && absExpiry < now) {
+                    skipFully(inputStream, length);         //跳过已经过期的缓存项，不需要反序列化
+                    continue;
+                }
+                byte[] bytes = new byte[length];
+                inputStream.readFully(bytes);
+                records.add(new SnapshotRecord(new String(keyBytes, StandardCharsets.UTF_8), absExpiry, bytes));
+            }
+            return records;
+        } catch (EOFException e) {
+            throw new IllegalStateException("缓存快照文件不完整：" + file.getAbsolutePath(), e);
+        } catch (IOException e) {
+            throw new IllegalStateException("读取缓存快照失败：" + file.getAbsolutePath(), e);
+        }
+    }
+
+    private static void skipFully(DataInputStream inputStream, int length) throws IOException {
+        int skipped = 0;
+        while (skipped < length) {
+            int bytes = inputStream.skipBytes(length - skipped);
+            if (bytes <= 0) {
+                throw new EOFException();
+            }
+            skipped += bytes;
+        }
+    }
+
     //判断缓存是否已经过期
     private boolean isExpiry(CacheItem<T> cacheItem) {
         if (cacheItem.getAbsExpiry() == null) {
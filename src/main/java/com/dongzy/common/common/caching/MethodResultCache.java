@@ -2,7 +2,6 @@ package com.dongzy.common.common.caching;
 
 import com.dongzy.common.common.Validate;
 
-import java.lang.ref.SoftReference;
 import java.util.Collection;
 import java.util.Date;
 
@@ -36,7 +35,7 @@ public final class MethodResultCache<T> extends CacheByL1Cache<T> {
     @Override
     public void set(String key, T value, Date date) {
         Validate.notNull(key,"缓存key不能为空");
-        memoryL1Cache.set(key, new SoftReference(value), date);
+        setL1Cache(key, value, date);
     }
 
     @Override
@@ -47,14 +46,13 @@ public final class MethodResultCache<T> extends CacheByL1Cache<T> {
     @Override
     synchronized public void remove(String key) {
         Validate.notNull(key,"缓存key不能为空");
-        memoryL1Cache.remove(key);
+        removeL1Cache(key);
     }
 
     @Override
     synchronized public void remove(Collection<String> keys) {
-        for (String key : keys) {
-            remove(key);
-        }
+        Validate.notNull(keys,"缓存key集合不能为空");
+        removeL1Cache(keys);
     }
 
     @Override
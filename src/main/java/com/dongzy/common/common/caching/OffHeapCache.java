@@ -0,0 +1,376 @@
+package com.dongzy.common.common.caching;
+
+import com.dongzy.common.common.Validate;
+import com.dongzy.common.common.io.ISerializer;
+import com.dongzy.common.common.io.JdkSerializer;
+import com.dongzy.common.common.io.MappedBufferUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 堆外内存缓存的实现类，适用于缓存大量序列化后体积较大的对象，主要包含以下功能：
+ * 1、缓存的值序列化后保存在堆外的直接内存（或内存映射文件）中，不占用JAVA堆空间，不会增加GC的停顿时间
+ * 2、存储空间被划分为多个固定大小的分片，分片按顺序循环写入，每个分片内采用追加的方式分配空间
+ * 3、存储空间写满后，淘汰最早写入的整个分片中的所有缓存项（FIFO），被覆盖或移除的缓存项所占用的空间在分片被淘汰时回收
+ * 4、缓存项的过期规则与{@link MemoryCache}一致
+ * <p>
+ * 注意：
+ * 1、缓存的值默认采用{@link JdkSerializer}序列化，必须实现Serializable接口，也可以传入自定义的序列化类
+ * 2、每次读取都会反序列化出一个新的对象，修改读取到的对象不会影响缓存中的值
+ * 3、序列化后的大小超过分片大小的值无法缓存，会抛出IllegalArgumentException异常
+ * 4、key和位置索引仍然保存在堆内存中
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public final class OffHeapCache<T> extends Cache<T> implements Closeable {
+
+    private static final int DEFAULT_SLAB_SIZE = 64 * 1024 * 1024;     //默认的分片大小为64M
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Location> indexMap = new HashMap<>();       //缓存项在堆外内存中的位置
+    private final ISerializer<T> serializer;
+    private final ByteBuffer[] slabs;
+    private final List<List<String>> slabKeys;                            //每个分片中写入过的key
+    private final int slabSize;
+    private final FileChannel fileChannel;
+    private final RandomAccessFile randomAccessFile;
+
+    private int writeSlab = 0;              //当前写入的分片
+    private int writePosition = 0;          //当前分片的写入位置
+    private long usedBytes = 0;             //有效缓存项占用的字节数
+    private boolean closed = false;         //缓存是否已经关闭
+
+    /**
+     * 缓存项在堆外内存中的位置
+     */
+    private static final class Location {
+        private final int slab;
+        private final int offset;
+        private final int length;
+        private final long absExpiry;       //绝对过期时间，Long.MAX_VALUE表示永不过期
+
+        private Location(int slab, int offset, int length, long absExpiry) {
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+            this.absExpiry = absExpiry;
+        }
+    }
+
+    /**
+     * 根据缓存的最大容量构造函数，采用直接内存保存数据
+     *
+     * @param capacity 缓存的最大容量（字节）
+     */
+    public OffHeapCache(long capacity) {
+        this(capacity, (int) Math.min(capacity, DEFAULT_SLAB_SIZE), new JdkSerializer<>());
+    }
+
+    /**
+     * 根据传入的参数构造函数，采用直接内存保存数据
+     *
+     * @param capacity   缓存的最大容量（字节）
+     * @param slabSize   每个分片的大小（字节），也是单个缓存项的大小上限
+     * @param serializer 缓存值的序列化类
+     */
+    public OffHeapCache(long capacity, int slabSize, ISerializer<T> serializer) {
+        this(null, capacity, slabSize, serializer);
+    }
+
+    /**
+     * 根据传入的参数构造函数，如果指定了文件，那么采用内存映射文件保存数据，文件只作为交换空间使用，重启后不会恢复缓存内容
+     *
+     * @param file       内存映射文件，为null时采用直接内存
+     * @param capacity   缓存的最大容量（字节）
+     * @param slabSize   每个分片的大小（字节），也是单个缓存项的大小上限
+     * @param serializer 缓存值的序列化类
+     */
+    public OffHeapCache(File file, long capacity, int slabSize, ISerializer<T> serializer) {
+        Validate.isTrue(slabSize > 0, "分片大小必须大于0！");
+        Validate.isTrue(capacity >= slabSize, "缓存的容量不能小于分片大小！");
+        Validate.notNull(serializer, "serializer对象不能为null。");
+
+        long slabCount = (capacity + slabSize - 1) / slabSize;
+        Validate.isTrue(slabCount <= Integer.MAX_VALUE, "分片数量过多，请增大分片大小！");
+
+        this.slabSize = slabSize;
+        this.serializer = serializer;
+        this.slabs = new ByteBuffer[(int) slabCount];
+        this.slabKeys = new ArrayList<>(slabs.length);
+        for (int i = 0; i < slabs.length; i++) {
+            slabKeys.add(new ArrayList<>());
+        }
+
+        if (file == null) {
+            this.randomAccessFile = null;
+            this.fileChannel = null;
+        } else {
+            try {
+                this.randomAccessFile = new RandomAccessFile(file, "rw");
+                this.fileChannel = randomAccessFile.getChannel();
+            } catch (IOException e) {
+                throw new IllegalArgumentException("无法打开内存映射文件：" + file.getAbsolutePath(), e);
+            }
+        }
+    }
+
+    /**
+     * 获取当前缓存项的数量（可能包含已经过期但尚未清理的缓存项）
+     *
+     * @return 缓存项的数量
+     */
+    @Override
+    public long size() {
+        lock.readLock().lock();
+        try {
+            return indexMap.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取有效缓存项占用的堆外内存字节数
+     *
+     * @return 占用的字节数
+     */
+    public long usedBytes() {
+        lock.readLock().lock();
+        try {
+            return usedBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void set(String key, T value) {
+        set(key, value, null);
+    }
+
+    @Override
+    public void set(String key, T value, Date date) {
+        Validate.notNull(key, "缓存的key不能为空！");
+
+        byte[] bytes = serializer.serialize(value);        //在锁外完成序列化
+        if (bytes == null) {
+            remove(key);
+            return;
+        }
+        Validate.isTrue(bytes.length <= slabSize, "缓存项序列化后的大小[%s]超过了分片大小[%s]！", bytes.length, slabSize);
+
+        long absExpiry = (date == null) ? Long.MAX_VALUE : date.getTime();
+        lock.writeLock().lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("堆外缓存已经关闭！");
+            }
+            if (writePosition + bytes.length > slabSize) {
+                nextSlab();
+            } else if (slabs[writeSlab] == null) {
+                slabs[writeSlab] = allocateSlab(writeSlab);
+            }
+            ByteBuffer buffer = slabs[writeSlab].duplicate();
+            buffer.position(writePosition);
+            buffer.put(bytes);
+
+            removeLocation(indexMap.put(key, new Location(writeSlab, writePosition, bytes.length, absExpiry)));
+            slabKeys.get(writeSlab).add(key);
+            writePosition += bytes.length;
+            usedBytes += bytes.length;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public T get(String key) {
+        Validate.notNull(key, "缓存的key不能为空！");
+
+        byte[] bytes;
+        Location location;
+        lock.readLock().lock();
+        try {
+            location = indexMap.get(key);
+            if (location == null) {
+                statsCounter.recordMisses(1);
+                return null;
+            }
+            if (isExpiry(location)) {
+                bytes = null;
+            } else {
+                bytes = new byte[location.length];
+                ByteBuffer buffer = slabs[location.slab].duplicate();
+                buffer.position(location.offset);
+                buffer.get(bytes);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (bytes == null) {
+            removeIfSame(key, location);       // 移除过期的缓存对象
+            statsCounter.recordMisses(1);
+            return null;
+        }
+        statsCounter.recordHits(1);
+        return serializer.deserialize(bytes);  //在锁外完成反序列化
+    }
+
+    @Override
+    public void remove(String key) {
+        Validate.notNull(key, "缓存的key不能为空！");
+        lock.writeLock().lock();
+        try {
+            removeLocation(indexMap.remove(key));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void remove(Collection<String> keys) {
+        for (String key : keys) {
+            remove(key);
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            indexMap.clear();
+            for (List<String> keys : slabKeys) {
+                keys.clear();
+            }
+            writeSlab = 0;
+            writePosition = 0;
+            usedBytes = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean containsKey(String key) {
+        Validate.notNull(key, "缓存的key不能为空！");
+
+        Location location;
+        lock.readLock().lock();
+        try {
+            location = indexMap.get(key);
+            if (location == null) {
+                return false;
+            }
+            if (!isExpiry(location)) {
+                return true;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        removeIfSame(key, location);           // 移除过期的缓存对象
+        return false;
+    }
+
+    /**
+     * 关闭缓存，清空所有的缓存项并立即释放所有分片占用的直接内存或内存映射区域，关闭后不能再写入缓存
+     *
+     * @throws IOException 关闭映射文件时发生的异常
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();       //等待正在读取分片的线程完成，关闭后索引为空，不会再有线程访问分片
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            clear();
+            for (int i = 0; i < slabs.length; i++) {
+                if (slabs[i] instanceof MappedByteBuffer) {     //直接内存缓冲区也是MappedByteBuffer的子类
+                    MappedBufferUtils.unmap((MappedByteBuffer) slabs[i]);
+                }
+                slabs[i] = null;
+            }
+            if (randomAccessFile != null) {
+                randomAccessFile.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //切换到下一个分片，如果该分片中还有缓存项，那么将其全部淘汰
+    private void nextSlab() {
+        writeSlab = (writeSlab + 1) % slabs.length;
+        writePosition = 0;
+
+        List<String> keys = slabKeys.get(writeSlab);
+        for (String key : keys) {
+            Location location = indexMap.get(key);
+            if (location != null && location.slab == writeSlab) {
+                indexMap.remove(key);
+                removeLocation(location);
+                statsCounter.recordEviction();
+            }
+        }
+        keys.clear();
+
+        if (slabs[writeSlab] == null) {
+            slabs[writeSlab] = allocateSlab(writeSlab);
+        }
+    }
+
+    //分配一个分片的存储空间
+    private ByteBuffer allocateSlab(int index) {
+        if (fileChannel == null) {
+            return ByteBuffer.allocateDirect(slabSize);
+        }
+        try {
+            return fileChannel.map(FileChannel.MapMode.READ_WRITE, (long) index * slabSize, slabSize);
+        } catch (IOException e) {
+            throw new IllegalStateException("映射缓存文件时发生异常！", e);
+        }
+    }
+
+    //缓存项被移除或者被覆盖后，扣减其占用的空间，实际的空间在分片被淘汰时回收
+    private void removeLocation(Location location) {
+        if (location != null) {
+            usedBytes -= location.length;
+        }
+    }
+
+    //如果key对应的位置没有被其他线程修改，那么移除该key
+    private void removeIfSame(String key, Location location) {
+        lock.writeLock().lock();
+        try {
+            if (indexMap.get(key) == location) {
+                indexMap.remove(key);
+                removeLocation(location);
+                statsCounter.recordEviction();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    //判断缓存是否已经过期
+    private boolean isExpiry(Location location) {
+        return location.absExpiry < System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,206 @@
+package com.dongzy.common.common.caching;
+
+import com.dongzy.common.common.Validate;
+import com.dongzy.common.log.TextLoggerFactory;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 基于UDP的缓存失效消息传输通道，适用于节点数量较少的本地集群，主要包含以下功能：
+ * 1、每个节点监听一个本地端口，发布的消息以单播的方式发送给配置的所有节点（包括自身）
+ * 2、消息采用紧凑的二进制格式编码，批量发布时多条消息合并到一个数据包中，数据包超过以太网MTU时拆分为多个数据包，
+ * 避免IP分片（任意一个分片丢失都会导致整个数据包丢失），单条消息不能超过UDP数据包的最大长度
+ * 3、接收线程为守护线程，收到的消息在接收线程中投递给所有订阅者
+ * <p>
+ * 注意：UDP不保证消息一定送达，近端缓存的一级缓存有效期是消息丢失时数据不一致的最长时间
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public final class SocketInvalidationTransport implements IInvalidationTransport {
+
+    private final static Logger LOGGER = TextLoggerFactory.getInstance().getLogger(SocketInvalidationTransport.class);
+    private final static int MAGIC = 0x43494E56;         //消息头，用于过滤非本通道的数据包
+    private final static int MAX_PACKET_SIZE = 65507;      //UDP数据包的最大长度（65535 - 8字节UDP头 - 20字节IP头）
+    private final static int BATCH_PACKET_SIZE = 1400;     //合并消息时数据包的长度上限，小于以太网MTU，不会产生IP分片
+    private final static int HEADER_SIZE = 6;              //数据包头的长度：消息头（4字节）+ 消息数量（2字节）
+
+    private final DatagramSocket socket;
+    private final List<InetSocketAddress> peers;
+    private final List<IInvalidationListener> listeners = new CopyOnWriteArrayList<>();
+    private final Thread receiveThread;
+    private volatile boolean closed;
+
+    /**
+     * 根据传入的参数构造函数
+     *
+     * @param port  本地监听的端口
+     * @param peers 集群中所有节点的地址，可以包含本节点
+     */
+    public SocketInvalidationTransport(int port, Collection<InetSocketAddress> peers) {
+        Validate.notEmpty(peers, "集群节点的地址不能为空！");
+        this.peers = new ArrayList<>(peers);
+        try {
+            this.socket = new DatagramSocket(port);
+        } catch (SocketException e) {
+            throw new IllegalArgumentException("无法监听缓存失效消息的端口：" + port, e);
+        }
+
+        this.receiveThread = new Thread(this::receive, "SocketInvalidationTransport-" + port);
+        receiveThread.setDaemon(true);
+        receiveThread.start();
+    }
+
+    @Override
+    public void publish(InvalidationMessage message) {
+        Validate.notNull(message, "message对象不能为null。");
+        publish(Collections.singletonList(message));
+    }
+
+    /**
+     * 批量发布失效消息，消息按顺序合并到不超过{@value #BATCH_PACKET_SIZE}字节的数据包中发送，
+     * 单条消息超过该长度时单独发送
+     *
+     * @param messages 失效消息的集合
+     */
+    @Override
+    public void publish(Collection<InvalidationMessage> messages) {
+        Validate.notNull(messages, "messages对象不能为null。");
+        List<byte[]> batch = new ArrayList<>();
+        int packetSize = HEADER_SIZE;
+        for (InvalidationMessage message : messages) {
+            Validate.notNull(message, "message对象不能为null。");
+            byte[] bytes = encode(message);
+            if (!batch.isEmpty() && packetSize + bytes.length > BATCH_PACKET_SIZE) {
+                send(batch, packetSize);
+                batch.clear();
+                packetSize = HEADER_SIZE;
+            }
+            batch.add(bytes);
+            packetSize += bytes.length;
+        }
+        if (!batch.isEmpty()) {
+            send(batch, packetSize);
+        }
+    }
+
+    @Override
+    public void subscribe(IInvalidationListener listener) {
+        Validate.notNull(listener, "listener对象不能为null。");
+        listeners.add(listener);
+    }
+
+    @Override
+    public void unsubscribe(IInvalidationListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        socket.close();                 //关闭后接收线程会从阻塞中退出
+        listeners.clear();
+    }
+
+    //将已编码的消息合并为一个数据包，发送给所有节点
+    private void send(List<byte[]> batch, int packetSize) {
+        ByteBuffer buffer = ByteBuffer.allocate(packetSize);
+        buffer.putInt(MAGIC);
+        buffer.putShort((short) batch.size());
+        for (byte[] bytes : batch) {
+            buffer.put(bytes);
+        }
+        byte[] packet = buffer.array();
+        for (InetSocketAddress peer : peers) {
+            try {
+                socket.send(new DatagramPacket(packet, packet.length, peer));
+            } catch (IOException e) {
+                if (!closed) {
+                    LOGGER.warn("发送缓存失效消息失败，节点：" + peer + "，消息数量：" + batch.size(), e);
+                }
+            }
+        }
+    }
+
+    //接收线程的执行方法，循环接收数据包并投递给订阅者
+    private void receive() {
+        byte[] buffer = new byte[MAX_PACKET_SIZE];
+        while (!closed) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+            } catch (IOException e) {
+                if (!closed) {
+                    LOGGER.warn("接收缓存失效消息时发生异常！", e);
+                }
+                continue;
+            }
+
+            for (InvalidationMessage message : decode(packet.getData(), packet.getOffset(), packet.getLength())) {
+                for (IInvalidationListener listener : listeners) {
+                    try {
+                        listener.onInvalidation(message);
+                    } catch (Exception e) {
+                        LOGGER.warn("处理缓存失效消息时发生异常，" + message, e);
+                    }
+                }
+            }
+        }
+    }
+
+    //将单条消息编码为二进制数据（不包含数据包头）
+    private static byte[] encode(InvalidationMessage message) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(128);
+        try (DataOutputStream dataOutputStream = new DataOutputStream(outputStream)) {
+            dataOutputStream.writeUTF(message.getSourceId());
+            dataOutputStream.writeUTF(message.getCacheName());
+            dataOutputStream.writeBoolean(message.isClear());
+            if (!message.isClear()) {
+                dataOutputStream.writeUTF(message.getKey());
+            }
+            dataOutputStream.writeLong(message.getVersion());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("缓存失效消息编码失败，" + message, e);
+        }
+        byte[] bytes = outputStream.toByteArray();
+        Validate.isTrue(bytes.length <= MAX_PACKET_SIZE - HEADER_SIZE, "缓存失效消息的长度超过了%s字节！", MAX_PACKET_SIZE - HEADER_SIZE);
+        return bytes;
+    }
+
+    //将数据包解码为消息列表，无法识别的数据包返回空列表
+    private static List<InvalidationMessage> decode(byte[] bytes, int offset, int length) {
+        try (DataInputStream dataInputStream = new DataInputStream(new ByteArrayInputStream(bytes, offset, length))) {
+            if (dataInputStream.readInt() != MAGIC) {
+                return Collections.emptyList();
+            }
+            int count = dataInputStream.readUnsignedShort();
+            List<InvalidationMessage> messages = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String sourceId = dataInputStream.readUTF();
+                String cacheName = dataInputStream.readUTF();
+                String key = dataInputStream.readBoolean() ? null : dataInputStream.readUTF();
+                long version = dataInputStream.readLong();
+                messages.add(new InvalidationMessage(sourceId, cacheName, key, version));
+            }
+            return messages;
+        } catch (IOException e) {
+            LOGGER.warn("无法识别的缓存失效消息，长度：" + length);
+            return Collections.emptyList();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.dongzy.common.common.caching;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存统计信息的计数器，采用分段累加的LongAdder实现，高并发下的记录开销很低
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public final class StatsCounter {
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder loadSuccessCount = new LongAdder();
+    private final LongAdder loadFailureCount = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * 记录命中次数
+     *
+     * @param count 命中次数
+     */
+    public void recordHits(int count) {
+        hitCount.add(count);
+    }
+
+    /**
+     * 记录未命中次数
+     *
+     * @param count 未命中次数
+     */
+    public void recordMisses(int count) {
+        missCount.add(count);
+    }
+
+    /**
+     * 记录一次成功的加载
+     *
+     * @param loadTime 加载的耗时，单位纳秒
+     */
+    public void recordLoadSuccess(long loadTime) {
+        loadSuccessCount.increment();
+        totalLoadTime.add(loadTime);
+    }
+
+    /**
+     * 记录一次失败的加载
+     *
+     * @param loadTime 加载的耗时，单位纳秒
+     */
+    public void recordLoadFailure(long loadTime) {
+        loadFailureCount.increment();
+        totalLoadTime.add(loadTime);
+    }
+
+    /**
+     * 记录一个被淘汰的缓存项
+     */
+    public void recordEviction() {
+        evictionCount.increment();
+    }
+
+    /**
+     * 获取当前统计信息的快照
+     *
+     * @param size 当前缓存项的数量
+     * @return 统计信息的快照
+     */
+    public CacheStats snapshot(long size) {
+        return new CacheStats(hitCount.sum(), missCount.sum(), loadSuccessCount.sum(), loadFailureCount.sum(),
+                totalLoadTime.sum(), evictionCount.sum(), size);
+    }
+
+    /**
+     * 重置所有的计数
+     */
+    public void reset() {
+        hitCount.reset();
+        missCount.reset();
+        loadSuccessCount.reset();
+        loadFailureCount.reset();
+        totalLoadTime.reset();
+        evictionCount.reset();
+    }
+}
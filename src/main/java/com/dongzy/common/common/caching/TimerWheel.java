@@ -0,0 +1,212 @@
+package com.dongzy.common.common.caching;
+
+/**
+ * 分层时间轮，用于在缓存项的过期时间附近将其移除，添加、取消和到期处理的均摊时间复杂度都是O(1)
+ * 时间轮共分为5层，每层的刻度分别约为：1秒、1分钟、1小时、1天、6天，超过最上层范围的定时器放在溢出桶中，
+ * 时间推进时，上层桶中的定时器会被重新分配到更精细的下层桶中，直到真正到期。
+ * <p>
+ * 注意：
+ * 1、时间单位为毫秒
+ * 2、本类不是线程安全的，需要由调用方保证同步
+ * 3、定时器的到期时间与桶的刻度有关，到期处理最多会延后一个最小刻度（约1秒）
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+final class TimerWheel {
+
+    private static final int[] BUCKETS = {64, 64, 32, 4, 1};
+    private static final long[] SPANS = {
+            1L << 10,               // 1.02秒
+            1L << 16,               // 1.09分钟
+            1L << 22,               // 1.17小时
+            1L << 27,               // 1.55天
+            1L << 29,               // 6.21天
+            1L << 29,
+    };
+    private static final long[] SHIFT = {
+            Long.numberOfTrailingZeros(SPANS[0]),
+            Long.numberOfTrailingZeros(SPANS[1]),
+            Long.numberOfTrailingZeros(SPANS[2]),
+            Long.numberOfTrailingZeros(SPANS[3]),
+            Long.numberOfTrailingZeros(SPANS[4]),
+    };
+
+    private final Timer[][] wheel;
+    private final IExpirationHandler handler;
+    private long time;                  //时间轮当前的时间
+
+    /**
+     * 定时器，需要定时处理的对象应继承本类，并在调度前设置好到期时间
+     */
+    static class Timer {
+        long deadline;                  //到期时间
+        Timer prev;
+        Timer next;
+
+        //判断当前定时器是否已经在时间轮中
+        boolean isScheduled() {
+            return next != null;
+        }
+    }
+
+    /**
+     * 定时器到期的处理接口
+     */
+    interface IExpirationHandler {
+
+        /**
+         * 处理到期的定时器，如果定时器的到期时间被延后了（如缓存项在闲置期内被再次访问），
+         * 那么应当更新定时器的到期时间并返回false，定时器将被重新调度
+         *
+         * @param timer 到期的定时器
+         * @param now   当前时间
+         * @return 定时器是否已经处理完毕
+         */
+        boolean expire(Timer timer, long now);
+    }
+
+    /**
+     * 根据传入的参数构造函数
+     *
+     * @param now     当前时间
+     * @param handler 定时器到期的处理程序
+     */
+    TimerWheel(long now, IExpirationHandler handler) {
+        this.time = now;
+        this.handler = handler;
+        this.wheel = new Timer[BUCKETS.length][];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Timer[BUCKETS[i]];
+            for (int j = 0; j < wheel[i].length; j++) {
+                wheel[i][j] = newSentinel();
+            }
+        }
+    }
+
+    /**
+     * 按照定时器的到期时间进行调度，如果定时器已经被调度过，那么会重新调度
+     *
+     * @param timer 定时器
+     */
+    void schedule(Timer timer) {
+        if (timer.isScheduled()) {
+            unlink(timer);
+        }
+        link(findBucket(timer.deadline), timer);
+    }
+
+    /**
+     * 取消定时器的调度
+     *
+     * @param timer 定时器
+     */
+    void deschedule(Timer timer) {
+        if (timer.isScheduled()) {
+            unlink(timer);
+        }
+    }
+
+    /**
+     * 将时间轮推进到指定时间，并处理所有经过的桶中的定时器
+     *
+     * @param now 当前时间
+     */
+    void advance(long now) {
+        long previousTime = time;
+        if (now <= previousTime) {
+            return;
+        }
+        time = now;
+        for (int i = 0; i < SHIFT.length; i++) {
+            long previousTicks = previousTime >>> SHIFT[i];
+            long currentTicks = now >>> SHIFT[i];
+            long delta = currentTicks - previousTicks;
+            if (delta <= 0L) {
+                break;
+            }
+            expire(i, previousTicks, delta);
+        }
+    }
+
+    /**
+     * 移除时间轮中的所有定时器
+     */
+    void clear() {
+        for (Timer[] buckets : wheel) {
+            for (Timer sentinel : buckets) {
+                Timer timer = sentinel.next;
+                while (timer != sentinel) {
+                    Timer next = timer.next;
+                    timer.prev = null;
+                    timer.next = null;
+                    timer = next;
+                }
+                sentinel.prev = sentinel;
+                sentinel.next = sentinel;
+            }
+        }
+    }
+
+    //处理指定层级中经过的桶，未到期的定时器会被重新分配到合适的桶中
+    private void expire(int level, long previousTicks, long delta) {
+        Timer[] buckets = wheel[level];
+        int mask = buckets.length - 1;
+        int steps = (int) Math.min(1 + delta, buckets.length);
+        int start = (int) (previousTicks & mask);
+        int end = start + steps;
+
+        for (int i = start; i < end; i++) {
+            Timer sentinel = buckets[i & mask];
+            Timer timer = sentinel.next;
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+
+            while (timer != sentinel) {
+                Timer next = timer.next;
+                timer.prev = null;
+                timer.next = null;
+                if (timer.deadline > time || !handler.expire(timer, time)) {
+                    schedule(timer);
+                }
+                timer = next;
+            }
+        }
+    }
+
+    //根据到期时间找到定时器所在的桶，已经到期的定时器放在当前刻度的桶中，在下次推进时处理
+    private Timer findBucket(long deadline) {
+        deadline = Math.max(deadline, time);
+        long duration = deadline - time;
+        int length = wheel.length - 1;
+        for (int i = 0; i < length; i++) {
+            if (duration < SPANS[i + 1]) {
+                long ticks = deadline >>> SHIFT[i];
+                int index = (int) (ticks & (wheel[i].length - 1));
+                return wheel[i][index];
+            }
+        }
+        return wheel[length][0];
+    }
+
+    private static void link(Timer sentinel, Timer timer) {
+        timer.prev = sentinel.prev;
+        timer.next = sentinel;
+        sentinel.prev.next = timer;
+        sentinel.prev = timer;
+    }
+
+    private static void unlink(Timer timer) {
+        timer.prev.next = timer.next;
+        timer.next.prev = timer.prev;
+        timer.prev = null;
+        timer.next = null;
+    }
+
+    private static Timer newSentinel() {
+        Timer sentinel = new Timer();
+        sentinel.prev = sentinel;
+        sentinel.next = sentinel;
+        return sentinel;
+    }
+}
@@ -0,0 +1,27 @@
+package com.dongzy.common.common.io;
+
+/**
+ * 对象序列化接口，定义了对象与二进制数据之间的相互转换
+ * 如果传入的参数为null值，那么返回值也应当为null
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public interface ISerializer<T> {
+
+    /**
+     * 将对象序列化成二进制数据
+     *
+     * @param object 需要序列化的对象
+     * @return 二进制数据
+     */
+    byte[] serialize(T object);
+
+    /**
+     * 将二进制数据反序列化成对象
+     *
+     * @param bytes 二进制数据
+     * @return 对象
+     */
+    T deserialize(byte[] bytes);
+}
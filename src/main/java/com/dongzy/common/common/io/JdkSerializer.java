@@ -0,0 +1,30 @@
+package com.dongzy.common.common.io;
+
+import java.io.Serializable;
+
+/**
+ * 采用JDK自带的序列化机制实现的序列化类，具体实现由{@link SerializationUtils}完成
+ * 需要序列化的对象必须实现{@link Serializable}接口，否则将抛出IllegalArgumentException异常
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public class JdkSerializer<T> implements ISerializer<T> {
+
+    @Override
+    public byte[] serialize(T object) {
+        if (object == null) {
+            return null;
+        }
+        if (!(object instanceof Serializable)) {
+            throw new IllegalArgumentException("对象没有实现Serializable接口，无法序列化：" + object.getClass().getName());
+        }
+        return SerializationUtils.serialize((Serializable) object);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T deserialize(byte[] bytes) {
+        return (T) SerializationUtils.deserialize(bytes);
+    }
+}
@@ -0,0 +1,88 @@
+package com.dongzy.common.common.io;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * 内存映射缓冲区的工具类，用于立即释放映射的区域
+ * JDK不提供释放映射区域的公开方法，映射区域要等到缓冲区对象被垃圾回收后才释放，在此之前：
+ * 1、已经删除的文件仍然占用磁盘空间
+ * 2、Windows下不能截断、重命名或者删除被映射的文件
+ * <p>
+ * 本类通过反射调用JDK内部的清理方法：JDK9及以上版本调用sun.misc.Unsafe.invokeCleaner，JDK8调用sun.misc.Cleaner.clean，
+ * 当前JDK都不支持时不做任何处理，映射区域仍然由垃圾回收释放
+ * <p>
+ * 注意：释放后再访问缓冲区（包括通过duplicate、slice创建的缓冲区）会导致JVM崩溃，调用方需要保证释放后没有任何线程再访问缓冲区
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public final class MappedBufferUtils {
+
+    private static final Unmapper UNMAPPER = createUnmapper();
+
+    /**
+     * 释放映射区域的方法
+     */
+    private interface Unmapper {
+        void unmap(MappedByteBuffer buffer) throws ReflectiveOperationException;
+    }
+
+    private MappedBufferUtils() {
+    }
+
+    /**
+     * 立即释放缓冲区映射的区域
+     *
+     * @param buffer 内存映射缓冲区，为null时不做任何处理
+     * @return 是否已经释放，当前JDK不支持时返回false
+     */
+    public static boolean unmap(MappedByteBuffer buffer) {
+        if (buffer == null || UNMAPPER == null) {
+            return false;
+        }
+        try {
+            UNMAPPER.unmap(buffer);
+            return true;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 判断当前JDK是否支持立即释放映射区域
+     *
+     * @return 是否支持
+     */
+    public static boolean isUnmapSupported() {
+        return UNMAPPER != null;
+    }
+
+    //按照JDK9及以上版本、JDK8的顺序查找可用的清理方法
+    private static Unmapper createUnmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+            return buffer -> invokeCleaner.invoke(unsafe, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            //JDK8没有invokeCleaner方法
+        }
+        try {
+            Method cleanerMethod = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method cleanMethod = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            return buffer -> {
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleanMethod.invoke(cleaner);
+                }
+            };
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
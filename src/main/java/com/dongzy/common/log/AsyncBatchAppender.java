@@ -0,0 +1,276 @@
+package com.dongzy.common.log;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.OutputStreamAppender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.spi.AppenderAttachable;
+import ch.qos.logback.core.spi.AppenderAttachableImpl;
+import com.dongzy.common.mq.IWaitStrategy;
+import com.dongzy.common.mq.ParkingWaitStrategy;
+import com.dongzy.common.mq.RingBufferQueue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步批量写入的日志添加器，主要包含以下功能：
+ * 1、记录日志的线程只把日志事件放入有界的无锁环形缓冲区，不再执行文件IO，也不需要获取被包装添加器的锁
+ * 2、所有的异步添加器共用一个写入线程，写入线程每次取出一批日志事件交给被包装的添加器，每批写完后刷新一次输出流
+ * 3、缓冲区的使用量超过80%时，丢弃级别不高于丢弃级别（默认为INFO）的日志；缓冲区已满时，更高级别的日志等待写入线程腾出空间
+ * 4、停止添加器时会等待缓冲区中的日志全部写入，进程退出时通过关闭钩子停止所有的异步添加器
+ * <p>
+ * 注意：被包装的添加器应该关闭immediateFlush，由本类在每批日志写完后统一刷新
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public class AsyncBatchAppender extends UnsynchronizedAppenderBase<ILoggingEvent> implements AppenderAttachable<ILoggingEvent> {
+
+    //默认的缓冲区大小
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+    //写入线程每次从一个缓冲区中取出的最大日志数量
+    private static final int MAX_BATCH_SIZE = 512;
+    //缓冲区已满时，记录日志的线程每次等待的时间
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    //停止添加器时等待缓冲区写完的最长时间
+    private static final long STOP_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final List<AsyncBatchAppender> APPENDERS = new CopyOnWriteArrayList<>();
+    private static Thread writerThread;
+
+    private final AppenderAttachableImpl<ILoggingEvent> appenders = new AppenderAttachableImpl<>();
+    private final Object drainLock = new Object();          //写入一批日志时持有，停止时据此等待正在写入的批次
+    private final LongAdder discardedCount = new LongAdder();
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private Level discardLevel = Level.INFO;               //缓冲区紧张时可以丢弃的最高级别，为null表示不丢弃
+    private RingBufferQueue<ILoggingEvent> buffer;
+    private int discardSize;                                //缓冲区中的日志数量达到该值时开始丢弃
+
+    /**
+     * 设置缓冲区的大小，会向上取整为2的幂，启动前设置有效
+     *
+     * @param bufferSize 缓冲区的大小
+     */
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * 设置缓冲区紧张时可以丢弃的最高日志级别，为null或者OFF时不丢弃任何日志
+     *
+     * @param discardLevel 可以丢弃的最高日志级别
+     */
+    public void setDiscardLevel(Level discardLevel) {
+        this.discardLevel = (discardLevel == null || discardLevel == Level.OFF) ? null : discardLevel;
+    }
+
+    public Level getDiscardLevel() {
+        return discardLevel;
+    }
+
+    /**
+     * 获取因缓冲区紧张被丢弃的日志数量
+     *
+     * @return 被丢弃的日志数量
+     */
+    public long getDiscardedCount() {
+        return discardedCount.sum();
+    }
+
+    /**
+     * 获取缓冲区中尚未写入的日志数量
+     *
+     * @return 尚未写入的日志数量
+     */
+    public long getQueueSize() {
+        return (buffer == null) ? 0 : buffer.size();
+    }
+
+    @Override
+    public void start() {
+        if (isStarted()) {
+            return;
+        }
+        if (bufferSize <= 0) {
+            addError("缓冲区的大小必须大于0：" + bufferSize);
+            return;
+        }
+        buffer = new RingBufferQueue<>(bufferSize);
+        discardSize = buffer.capacity() - buffer.capacity() / 5;
+        super.start();
+        APPENDERS.add(this);
+        startWriter();
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop();               //不再接收新的日志
+
+        final long deadline = System.nanoTime() + STOP_TIMEOUT_NANOS;
+        while (!buffer.isEmpty() && System.nanoTime() < deadline && writerThread != Thread.currentThread()) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        synchronized (drainLock) {
+            APPENDERS.remove(this);
+            List<ILoggingEvent> batch = new ArrayList<>(MAX_BATCH_SIZE);
+            while (drain(batch) > 0) {
+                //写入停止前刚放入缓冲区的日志
+            }
+        }
+        if (!buffer.isEmpty()) {
+            addWarn("停止异步日志添加器时仍有日志没有写入：" + buffer.size());
+        }
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        if (Thread.currentThread() == writerThread) {
+            appenders.appendLoopOnAppenders(event);         //写入线程自身产生的日志直接写入，避免等待自己
+            return;
+        }
+        final boolean discardable = isDiscardable(event);
+        if (discardable && buffer.size() >= discardSize) {
+            discardedCount.increment();
+            return;
+        }
+        event.prepareForDeferredProcessing();               //在当前线程中获取线程名称、格式化消息和MDC
+        while (!buffer.offer(event)) {
+            if (discardable || !isStarted()) {
+                discardedCount.increment();
+                return;
+            }
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+        }
+    }
+
+    //判断日志在缓冲区紧张时是否可以丢弃
+    private boolean isDiscardable(ILoggingEvent event) {
+        Level level = discardLevel;
+        return level != null && event.getLevel().toInt() <= level.toInt();
+    }
+
+    //从缓冲区中取出一批日志写入所有被包装的添加器，写完后刷新一次输出流，返回写入的数量
+    private int drain(List<ILoggingEvent> batch) {
+        synchronized (drainLock) {
+            int count = buffer.drainTo(batch, MAX_BATCH_SIZE);
+            if (count > 0) {
+                try {
+                    for (ILoggingEvent event : batch) {
+                        appenders.appendLoopOnAppenders(event);
+                    }
+                    flush();
+                } catch (Exception e) {
+                    addError("写入日志时发生异常", e);
+                } finally {
+                    batch.clear();
+                }
+            }
+            return count;
+        }
+    }
+
+    //刷新所有被包装添加器的输出流
+    private void flush() throws IOException {
+        Iterator<Appender<ILoggingEvent>> iterator = appenders.iteratorForAppenders();
+        while (iterator.hasNext()) {
+            Appender<ILoggingEvent> appender = iterator.next();
+            if (appender instanceof OutputStreamAppender) {
+                OutputStream outputStream = ((OutputStreamAppender<ILoggingEvent>) appender).getOutputStream();
+                if (outputStream != null) {
+                    outputStream.flush();
+                }
+            }
+        }
+    }
+
+    //启动所有异步添加器共用的写入线程，并注册停止所有异步添加器的关闭钩子
+    private static synchronized void startWriter() {
+        if (writerThread != null) {
+            return;
+        }
+        writerThread = new Thread(AsyncBatchAppender::writeLoop, "AsyncBatchAppender-Writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(AsyncBatchAppender::stopAll, "AsyncBatchAppender-Shutdown"));
+    }
+
+    //写入线程的主循环，依次从每个异步添加器的缓冲区中取出日志写入，所有缓冲区都为空时逐步退避等待
+    private static void writeLoop() {
+        final IWaitStrategy strategy = new ParkingWaitStrategy(100, 100, 5, TimeUnit.MILLISECONDS);
+        final List<ILoggingEvent> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        int idleCount = 0;
+        while (true) {
+            int count = 0;
+            for (AsyncBatchAppender appender : APPENDERS) {
+                count += appender.drain(batch);
+            }
+            if (count > 0) {
+                idleCount = 0;
+            } else {
+                try {
+                    idleCount = strategy.idle(idleCount);
+                } catch (InterruptedException e) {
+                    idleCount = 0;          //写入线程不响应中断，保证日志写入完毕
+                }
+            }
+        }
+    }
+
+    //停止所有的异步添加器，写完缓冲区中的日志
+    private static void stopAll() {
+        for (AsyncBatchAppender appender : APPENDERS) {
+            appender.stop();
+        }
+    }
+
+    @Override
+    public void addAppender(Appender<ILoggingEvent> newAppender) {
+        appenders.addAppender(newAppender);
+    }
+
+    @Override
+    public Iterator<Appender<ILoggingEvent>> iteratorForAppenders() {
+        return appenders.iteratorForAppenders();
+    }
+
+    @Override
+    public Appender<ILoggingEvent> getAppender(String name) {
+        return appenders.getAppender(name);
+    }
+
+    @Override
+    public boolean isAttached(Appender<ILoggingEvent> appender) {
+        return appenders.isAttached(appender);
+    }
+
+    @Override
+    public void detachAndStopAllAppenders() {
+        appenders.detachAndStopAllAppenders();
+    }
+
+    @Override
+    public boolean detachAppender(Appender<ILoggingEvent> appender) {
+        return appenders.detachAppender(appender);
+    }
+
+    @Override
+    public boolean detachAppender(String name) {
+        return appenders.detachAppender(name);
+    }
+}
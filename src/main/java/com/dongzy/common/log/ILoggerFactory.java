@@ -34,6 +34,14 @@ public interface ILoggerFactory extends org.slf4j.ILoggerFactory {
      */
     Logger getLogger(String contextName, final Class<?> clazz);
 
+    /**
+     * 释放日志记录器，移除其附加的共享添加器，不再被任何日志记录器使用的日志文件会被关闭
+     * 释放后再次获取同名的日志记录器时会重新附加添加器
+     *
+     * @param loggerName 日志记录器的名称
+     */
+    void releaseLogger(String loggerName);
+
     /**
      * 获取是否对日志进行分类记录
      *
@@ -48,6 +56,48 @@ public interface ILoggerFactory extends org.slf4j.ILoggerFactory {
      */
     void setSplitFile(boolean splitFile);
 
+    /**
+     * 获取是否采用异步批量的方式写入日志
+     *
+     * @return 是否异步写入
+     */
+    boolean isAsync();
+
+    /**
+     * 设置是否采用异步批量的方式写入日志，只对设置后新添加的日志添加器有效
+     *
+     * @param async 是否异步写入
+     */
+    void setAsync(boolean async);
+
+    /**
+     * 获取是否通过内存映射写入日志文件
+     *
+     * @return 是否通过内存映射写入
+     */
+    boolean isMmap();
+
+    /**
+     * 设置是否通过内存映射写入日志文件，只对设置后新添加的日志添加器有效
+     *
+     * @param mmap 是否通过内存映射写入
+     */
+    void setMmap(boolean mmap);
+
+    /**
+     * 获取日志文件的输出格式
+     *
+     * @return 日志文件的输出格式
+     */
+    LogFormatEnum getLogFormat();
+
+    /**
+     * 设置日志文件的输出格式，只对设置后新添加的日志添加器有效
+     *
+     * @param logFormat 日志文件的输出格式
+     */
+    void setLogFormat(LogFormatEnum logFormat);
+
     /**
      * 设置日志保留的最大天数
      *
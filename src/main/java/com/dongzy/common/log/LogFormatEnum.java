@@ -0,0 +1,24 @@
+package com.dongzy.common.log;
+
+/**
+ * 日志文件的输出格式
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public enum LogFormatEnum {
+
+    /**
+     * 按照文本模板输出，每条日志一行（默认格式）
+     */
+    TEXT,
+    /**
+     * 每条日志输出为一行JSON，便于日志收集系统解析
+     */
+    JSON,
+    /**
+     * 紧凑的二进制格式，每条日志以长度开头，格式见{@link StructuredLogEncoder}
+     */
+    BINARY
+
+}
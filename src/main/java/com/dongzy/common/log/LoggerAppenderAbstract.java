@@ -5,10 +5,12 @@ import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
 import ch.qos.logback.classic.filter.LevelFilter;
 import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
 import ch.qos.logback.core.ConsoleAppender;
 import ch.qos.logback.core.spi.FilterReply;
 
 import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
 
 /**
  * 文件日志记录器实现类，定了了将日志写入文件的规则
@@ -50,6 +52,26 @@ public abstract class LoggerAppenderAbstract {
         }
     }
 
+    /**
+     * 释放日志记录器上的所有共享添加器，不再被任何日志记录器使用的添加器会被停止
+     *
+     * @param log 日志记录类
+     */
+    public void releaseRecordAppender(Logger log) {
+        SharedAppenderRegistry.release(log);
+    }
+
+    /**
+     * 将共享的添加器附加到日志记录类上，同一个上下文中key相同的添加器只创建一次，由所有的日志记录类共用
+     *
+     * @param log     日志记录类
+     * @param key     添加器在上下文中的唯一标识，如文件名模式
+     * @param creator 创建添加器的方法，返回的添加器必须已经启动
+     */
+    protected void attachSharedAppender(Logger log, String key, Supplier<Appender<ILoggingEvent>> creator) {
+        SharedAppenderRegistry.attach(log, key, creator);
+    }
+
     /**
      * 定义持久化日志的添加器
      *
@@ -66,6 +88,11 @@ public abstract class LoggerAppenderAbstract {
      * @param level 日志的级别
      */
     protected void addConsoleAppender(Logger log, Level level) {
+        attachSharedAppender(log, "console." + level.levelStr, () -> createConsoleAppender(log, level));
+    }
+
+    //创建指定级别的控制台添加器
+    private Appender<ILoggingEvent> createConsoleAppender(Logger log, Level level) {
         ConsoleAppender<ILoggingEvent> consoleAppender = new ConsoleAppender<>();
         consoleAppender.setContext(log.getLoggerContext());
         PatternLayoutEncoder encoder = new PatternLayoutEncoder();
@@ -97,6 +124,6 @@ public abstract class LoggerAppenderAbstract {
 
         consoleAppender.addFilter(levelFilter);
         consoleAppender.start();
-        log.addAppender(consoleAppender);
+        return consoleAppender;
     }
 }
@@ -42,14 +42,50 @@ public abstract class LoggerFactoryAbstract implements ILoggerFactory {
      * 配置jpa日志的日志记录级别，默认为OFF，不记录日志
      */
     static final String RECORD_JPA_LOG = "log.jpa.level";
+    /**
+     * 是否采用异步批量的方式写入日志文件，默认为false
+     */
+    static final String LOG_ASYNC = "log.record.async";
+    /**
+     * 异步写入时日志缓冲区的大小，默认为8192
+     */
+    static final String LOG_ASYNC_BUFFER_SIZE = "log.record.async.buffersize";
+    /**
+     * 异步写入时缓冲区紧张可以丢弃的最高日志级别，默认为info，设置为off时不丢弃任何日志
+     */
+    static final String LOG_ASYNC_DISCARD_LEVEL = "log.record.async.discardlevel";
+    /**
+     * 日志文件的输出格式，可选值为text、json和binary，默认为text
+     */
+    static final String LOG_FORMAT = "log.record.format";
+    /**
+     * 是否通过内存映射写入日志文件，默认为false
+     */
+    static final String LOG_MMAP = "log.record.mmap";
+    /**
+     * 通过内存映射写入时单个日志文件的最大大小，单位为M，默认为256
+     */
+    static final String LOG_MMAP_MAX_FILE_SIZE = "log.record.mmap.maxfilesize";
+    /**
+     * 通过内存映射写入时每次映射的区域大小，单位为M，默认为32
+     */
+    static final String LOG_MMAP_REGION_SIZE = "log.record.mmap.regionsize";
 
     private final static Map<String, LoggerContext> CONTEXT_MAP = new ConcurrentHashMap<>();
     private final ch.qos.logback.classic.Level level;
     private final String contextName;
+    //本工厂已经创建的日志记录器，key为日志记录器名称；不同的工厂实例即使上下文名称相同，也各自创建日志记录器
+    private final Map<String, PersistenceLogger> loggerMap = new ConcurrentHashMap<>();
 
     //是否将不同的日志级别的内容是否存储到不同文件中
     private boolean splitFile = CustomConfigManager.getCustomConfig().getBooleanValue(LOG_SPLITE_FILE, false);
     private int maxHistory;           //保留日志的最大天数
+    //是否采用异步批量的方式写入日志文件
+    private boolean async = CustomConfigManager.getCustomConfig().getBooleanValue(LOG_ASYNC, false);
+    //是否通过内存映射写入日志文件
+    private boolean mmap = CustomConfigManager.getCustomConfig().getBooleanValue(LOG_MMAP, false);
+    //日志文件的输出格式
+    private LogFormatEnum logFormat = parseLogFormat(CustomConfigManager.getCustomConfig().getValue(LOG_FORMAT, "text"));
 
     /**
      * 默认构造函数
@@ -104,6 +140,86 @@ public abstract class LoggerFactoryAbstract implements ILoggerFactory {
         this.splitFile = splitFile;
     }
 
+    @Override
+    public boolean isAsync() {
+        return async;
+    }
+
+    @Override
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+    @Override
+    public boolean isMmap() {
+        return mmap;
+    }
+
+    @Override
+    public void setMmap(boolean mmap) {
+        this.mmap = mmap;
+    }
+
+    /**
+     * 获取通过内存映射写入时单个日志文件的最大大小
+     *
+     * @return 最大大小，单位为字节
+     */
+    public long getMmapMaxFileSize() {
+        int size = CustomConfigManager.getCustomConfig().getIntegerValue(LOG_MMAP_MAX_FILE_SIZE, 0);
+        return size > 0 ? size * 1024L * 1024L : MappedFileAppender.DEFAULT_MAX_FILE_SIZE;
+    }
+
+    /**
+     * 获取通过内存映射写入时每次映射的区域大小
+     *
+     * @return 区域大小，单位为字节
+     */
+    public int getMmapRegionSize() {
+        int size = CustomConfigManager.getCustomConfig().getIntegerValue(LOG_MMAP_REGION_SIZE, 0);
+        return (size > 0 && size < 2048) ? size * 1024 * 1024 : MappedFileAppender.DEFAULT_REGION_SIZE;
+    }
+
+    @Override
+    public LogFormatEnum getLogFormat() {
+        return logFormat;
+    }
+
+    @Override
+    public void setLogFormat(LogFormatEnum logFormat) {
+        Validate.notNull(logFormat, "日志文件的输出格式不能为null");
+        this.logFormat = logFormat;
+    }
+
+    //解析配置的输出格式，无法识别时采用文本格式
+    private static LogFormatEnum parseLogFormat(String format) {
+        for (LogFormatEnum item : LogFormatEnum.values()) {
+            if (item.name().equalsIgnoreCase(StringUtils.trim(format))) {
+                return item;
+            }
+        }
+        return LogFormatEnum.TEXT;
+    }
+
+    /**
+     * 获取异步写入时日志缓冲区的大小
+     *
+     * @return 日志缓冲区的大小
+     */
+    public int getAsyncBufferSize() {
+        return CustomConfigManager.getCustomConfig().getIntegerValue(LOG_ASYNC_BUFFER_SIZE, AsyncBatchAppender.DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * 获取异步写入时缓冲区紧张可以丢弃的最高日志级别
+     *
+     * @return 可以丢弃的最高日志级别，OFF表示不丢弃任何日志
+     */
+    public ch.qos.logback.classic.Level getAsyncDiscardLevel() {
+        String levelString = CustomConfigManager.getCustomConfig().getValue(LOG_ASYNC_DISCARD_LEVEL, "info");
+        return ch.qos.logback.classic.Level.toLevel(levelString, ch.qos.logback.classic.Level.INFO);
+    }
+
     @Override
     public void setMaxHistory(int maxHistory) {
         this.maxHistory = maxHistory;
@@ -127,20 +243,43 @@ public abstract class LoggerFactoryAbstract implements ILoggerFactory {
 
     @Override
     public Logger getLogger(String loggerName) {
-        LoggerContext loggerContext = CONTEXT_MAP.get(contextName);
-        if (loggerContext == null) {
-            loggerContext = new LoggerContext();
-            loggerContext.setName(contextName);
-            CONTEXT_MAP.put(contextName, loggerContext);
-        }
+        //同一个工厂中同名的日志记录器只创建一次，并且只在创建时添加日志添加器
+        //添加日志添加器时可能会初始化其他类并获取它们的日志记录器，因此采用可重入的锁，而不是在computeIfAbsent中创建
+        PersistenceLogger fileLogger = loggerMap.get(loggerName);
+        if (fileLogger == null) {
+            synchronized (loggerMap) {
+                fileLogger = loggerMap.get(loggerName);
+                if (fileLogger == null) {
+                    LoggerContext loggerContext = CONTEXT_MAP.get(contextName);
+                    if (loggerContext == null) {
+                        loggerContext = new LoggerContext();
+                        loggerContext.setName(contextName);
+                        CONTEXT_MAP.put(contextName, loggerContext);
+                    }
 
-        ch.qos.logback.classic.Logger log = loggerContext.getLogger(loggerName);
-        log.setLevel(level);
-        PersistenceLogger fileLogger = getPersistenceLogger();
-        fileLogger.setLogger(log);
+                    ch.qos.logback.classic.Logger log = loggerContext.getLogger(loggerName);
+                    log.setLevel(level);
+                    fileLogger = getPersistenceLogger();
+                    fileLogger.setLogger(log);
+                    fileLogger.initAppenders();
+                    loggerMap.put(loggerName, fileLogger);
+                }
+            }
+        }
         return fileLogger;
     }
 
+    @Override
+    public void releaseLogger(String loggerName) {
+        PersistenceLogger fileLogger;
+        synchronized (loggerMap) {
+            fileLogger = loggerMap.remove(loggerName);
+        }
+        if (fileLogger != null) {
+            fileLogger.releaseAppenders();
+        }
+    }
+
     /**
      * 获取持久化的日志记录类
      *
@@ -0,0 +1,438 @@
+package com.dongzy.common.log;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.encoder.Encoder;
+import com.dongzy.common.common.io.MappedBufferUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 通过内存映射写入日志文件的添加器，主要包含以下功能：
+ * 1、日志文件按区域预先分配并映射到内存，写入日志只是内存复制，不需要每条日志执行一次write系统调用，区域写满后再映射下一个区域
+ * 2、编码器为{@link StructuredLogEncoder}时，日志事件直接编码到映射区域中，不创建中间的字节数组
+ * 3、按大小和日期滚动：文件超过最大大小或者跨天时，截断预分配的空白部分并重命名为“前缀.yyMMdd.序号.log”，
+ * 之后由后台线程压缩为zip文件，记录日志的线程不会因为压缩而等待
+ * 4、启动时将上次遗留的活动文件滚动，并压缩上次没有来得及压缩的文件；压缩后删除超过最大保留天数的压缩文件
+ * <p>
+ * 活动文件为setFile设置的文件，如logs/log.log，滚动后的文件为logs/log.240101.0.log.zip
+ * <p>
+ * 注意：进程异常退出时活动文件的末尾会留有预分配的空白字节，文本和JSON格式在下次启动时会截掉，
+ * 二进制格式无法区分空白和数据，保留原样，读取时遇到长度为0的记录即可结束
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public class MappedFileAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+
+    /**
+     * 默认每次映射的区域大小，32M
+     */
+    static final int DEFAULT_REGION_SIZE = 32 * 1024 * 1024;
+    /**
+     * 默认单个日志文件的最大大小，256M
+     */
+    static final long DEFAULT_MAX_FILE_SIZE = 256L * 1024 * 1024;
+    private static final String LOG_SUFFIX = ".log";
+    private static final String ZIP_SUFFIX = ".zip";
+    //所有内存映射添加器共用的压缩线程
+    private static final ExecutorService COMPRESSOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "MappedFileAppender-Compressor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private String file;
+    private String filePrefix;                  //活动文件去掉.log后缀后的路径
+    private Encoder<ILoggingEvent> encoder;
+    private StructuredLogEncoder structuredEncoder; //可以直接编码到映射区域的编码器
+    private int regionSize = DEFAULT_REGION_SIZE;
+    private long maxFileSize = DEFAULT_MAX_FILE_SIZE;
+    private int maxHistory = 0;                 //压缩文件保留的最大天数，为0表示不删除
+
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private MappedByteBuffer region;            //当前映射的区域
+    private long regionStart;                   //当前区域在文件中的开始位置
+    private String period;                      //活动文件所属的日期，格式为yyMMdd
+    private long nextPeriodMillis;              //下一个日期开始的时间
+    private long rolloverSize;                  //按大小滚动的阈值，重命名失败后在下一个日期之前不再按大小滚动
+
+    /**
+     * 设置活动日志文件的路径，必须以.log结尾
+     *
+     * @param file 活动日志文件的路径
+     */
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public void setEncoder(Encoder<ILoggingEvent> encoder) {
+        this.encoder = encoder;
+    }
+
+    public Encoder<ILoggingEvent> getEncoder() {
+        return encoder;
+    }
+
+    /**
+     * 设置每次映射的区域大小，启动前设置有效
+     *
+     * @param regionSize 区域大小，单位为字节
+     */
+    public void setRegionSize(int regionSize) {
+        this.regionSize = regionSize;
+    }
+
+    public int getRegionSize() {
+        return regionSize;
+    }
+
+    /**
+     * 设置单个日志文件的最大大小，超过后滚动到新的文件
+     *
+     * @param maxFileSize 最大大小，单位为字节
+     */
+    public void setMaxFileSize(long maxFileSize) {
+        this.maxFileSize = maxFileSize;
+    }
+
+    public long getMaxFileSize() {
+        return maxFileSize;
+    }
+
+    /**
+     * 设置压缩文件保留的最大天数，为0时不删除
+     *
+     * @param maxHistory 保留的最大天数
+     */
+    public void setMaxHistory(int maxHistory) {
+        this.maxHistory = maxHistory;
+    }
+
+    public int getMaxHistory() {
+        return maxHistory;
+    }
+
+    @Override
+    public void start() {
+        if (isStarted()) {
+            return;
+        }
+        if (file == null || !file.endsWith(LOG_SUFFIX)) {
+            addError("日志文件的路径必须以" + LOG_SUFFIX + "结尾：" + file);
+            return;
+        }
+        if (encoder == null) {
+            addError("没有为添加器[" + name + "]设置编码器");
+            return;
+        }
+        if (regionSize <= 0 || maxFileSize <= 0) {
+            addError("映射区域大小和文件最大大小必须大于0");
+            return;
+        }
+        filePrefix = file.substring(0, file.length() - LOG_SUFFIX.length());
+        structuredEncoder = (encoder instanceof StructuredLogEncoder) ? (StructuredLogEncoder) encoder : null;
+        try {
+            File activeFile = new File(file);
+            File parent = activeFile.getAbsoluteFile().getParentFile();
+            if (!parent.exists() && !parent.mkdirs()) {
+                throw new IOException("创建日志目录失败：" + parent);
+            }
+            if (activeFile.exists()) {
+                recoverActiveFile(activeFile);
+            }
+            compressPending(parent, activeFile.getName());
+            openActiveFile(System.currentTimeMillis());
+            writeBytes(encoder.headerBytes());
+        } catch (IOException e) {
+            addError("打开日志文件[" + file + "]失败", e);
+            closeActiveFile();
+            return;
+        }
+        super.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        lock.lock();
+        try {
+            super.stop();
+            if (region != null) {
+                writeBytes(encoder.footerBytes());
+                region.force();
+            }
+        } catch (IOException e) {
+            addError("写入日志文件[" + file + "]的结尾失败", e);
+        } finally {
+            closeActiveFile();
+            lock.unlock();
+        }
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        if (!isStarted()) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (region == null) {
+                openActiveFile(event.getTimeStamp());       //上次滚动时打开新文件失败
+            }
+            if (event.getTimeStamp() >= nextPeriodMillis || regionStart + region.position() >= rolloverSize) {
+                rollover(event.getTimeStamp());
+            }
+            if (structuredEncoder != null) {
+                appendStructured(event);
+            } else {
+                writeBytes(encoder.encode(event));
+            }
+        } catch (IOException e) {
+            addError("写入日志文件[" + file + "]失败", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //直接编码到映射区域，区域剩余空间不足时映射下一个区域重试，单条日志超过区域大小时退回到字节数组方式
+    private void appendStructured(ILoggingEvent event) throws IOException {
+        try {
+            structuredEncoder.encode(event, region);
+            return;
+        } catch (BufferOverflowException e) {
+            mapNextRegion(regionSize);
+        }
+        try {
+            structuredEncoder.encode(event, region);
+        } catch (BufferOverflowException e) {
+            writeBytes(structuredEncoder.encode(event));
+        }
+    }
+
+    //将字节数组写入映射区域，剩余空间不足时映射下一个区域
+    private void writeBytes(byte[] bytes) throws IOException {
+        if (bytes == null || bytes.length == 0) {
+            return;
+        }
+        if (region.remaining() < bytes.length) {
+            mapNextRegion(Math.max(regionSize, bytes.length));
+        }
+        region.put(bytes);
+    }
+
+    //从当前写入位置开始映射新的区域，文件随之扩展，并立即释放写满的区域
+    private void mapNextRegion(int size) throws IOException {
+        MappedByteBuffer fullRegion = region;
+        long start = regionStart + fullRegion.position();
+        region = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+        regionStart = start;
+        MappedBufferUtils.unmap(fullRegion);
+    }
+
+    //滚动活动文件：截掉预分配的空白部分，重命名后交给后台线程压缩，再打开新的活动文件；
+    //重命名失败时继续写入原来的文件，并且在下一个日期之前不再按大小滚动，避免每条日志都重试滚动
+    private void rollover(long timestamp) throws IOException {
+        writeBytes(encoder.footerBytes());
+        final String rolledPeriod = period;
+        closeActiveFile();
+        boolean rolled = false;
+        try {
+            File rolledFile = nextRolledFile(rolledPeriod);
+            Files.move(new File(file).toPath(), rolledFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            submitCompress(rolledFile);
+            rolled = true;
+        } catch (IOException e) {
+            addError("滚动日志文件[" + file + "]失败，下一个日期之前继续写入该文件", e);
+        }
+        openActiveFile(timestamp);
+        if (!rolled) {
+            rolloverSize = Long.MAX_VALUE;
+        }
+        writeBytes(encoder.headerBytes());
+    }
+
+    //打开活动文件并从文件末尾开始映射，滚动时重命名失败会继续写入原来的文件
+    private void openActiveFile(long timestamp) throws IOException {
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+        regionStart = channel.size();
+        region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, regionSize);
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(timestamp);
+        period = new SimpleDateFormat("yyMMdd").format(calendar.getTime());
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        nextPeriodMillis = calendar.getTimeInMillis();
+        rolloverSize = maxFileSize;
+    }
+
+    //释放映射的区域，将活动文件截断为实际写入的长度并关闭；Windows下被映射的文件不能截断和重命名，因此先释放区域
+    private void closeActiveFile() {
+        try {
+            if (channel != null && region != null) {
+                long length = regionStart + region.position();
+                MappedBufferUtils.unmap(region);
+                region = null;
+                channel.truncate(length);
+            }
+        } catch (IOException e) {
+            addError("截断日志文件[" + file + "]失败", e);
+        }
+        try {
+            if (randomAccessFile != null) {
+                randomAccessFile.close();
+            }
+        } catch (IOException e) {
+            addError("关闭日志文件[" + file + "]失败", e);
+        }
+        region = null;
+        channel = null;
+        randomAccessFile = null;
+    }
+
+    //上次异常退出时遗留的活动文件：截掉末尾的空白字节后滚动
+    private void recoverActiveFile(File activeFile) throws IOException {
+        boolean binary = structuredEncoder != null && structuredEncoder.getFormat() == LogFormatEnum.BINARY;
+        try (RandomAccessFile raf = new RandomAccessFile(activeFile, "rw")) {
+            if (!binary) {
+                raf.setLength(findDataLength(raf));
+            }
+        }
+        if (activeFile.length() == 0) {
+            Files.delete(activeFile.toPath());
+            return;
+        }
+        File rolledFile = nextRolledFile(new SimpleDateFormat("yyMMdd").format(new Date(activeFile.lastModified())));
+        Files.move(activeFile.toPath(), rolledFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    //从文件末尾向前查找最后一个非0字节，返回有效数据的长度
+    private static long findDataLength(RandomAccessFile raf) throws IOException {
+        final byte[] block = new byte[8192];
+        long end = raf.length();
+        while (end > 0) {
+            int size = (int) Math.min(block.length, end);
+            raf.seek(end - size);
+            raf.readFully(block, 0, size);
+            for (int i = size - 1; i >= 0; i--) {
+                if (block[i] != 0) {
+                    return end - size + i + 1;
+                }
+            }
+            end -= size;
+        }
+        return 0;
+    }
+
+    //获取指定日期下一个可用的滚动文件名，未压缩和已压缩的文件都不存在时才可用
+    private File nextRolledFile(String rolledPeriod) {
+        for (int index = 0; ; index++) {
+            File rolledFile = new File(filePrefix + "." + rolledPeriod + "." + index + LOG_SUFFIX);
+            if (!rolledFile.exists() && !new File(rolledFile.getPath() + ZIP_SUFFIX).exists()) {
+                return rolledFile;
+            }
+        }
+    }
+
+    //压缩上次没有来得及压缩的滚动文件
+    private void compressPending(File directory, String activeFileName) {
+        final Pattern pattern = Pattern.compile(Pattern.quote(activeFileName.substring(0, activeFileName.length() - LOG_SUFFIX.length()))
+                + "\\.\\d{6}\\.\\d+" + Pattern.quote(LOG_SUFFIX));
+        File[] files = directory.listFiles((dir, fileName) -> pattern.matcher(fileName).matches());
+        if (files != null) {
+            for (File rolledFile : files) {
+                submitCompress(rolledFile);
+            }
+        }
+    }
+
+    private void submitCompress(File rolledFile) {
+        final int history = maxHistory;
+        COMPRESSOR.execute(() -> {
+            compress(rolledFile);
+            if (history > 0) {
+                deleteExpired(rolledFile, history);
+            }
+        });
+    }
+
+    //将滚动文件压缩为同名的zip文件，压缩成功后删除原文件
+    private void compress(File rolledFile) {
+        File zipFile = new File(rolledFile.getPath() + ZIP_SUFFIX);
+        File tempFile = new File(zipFile.getPath() + ".tmp");
+        try (InputStream input = new FileInputStream(rolledFile);
+             ZipOutputStream output = new ZipOutputStream(new FileOutputStream(tempFile))) {
+            output.putNextEntry(new ZipEntry(rolledFile.getName()));
+            copy(input, output);
+            output.closeEntry();
+        } catch (IOException e) {
+            addError("压缩日志文件[" + rolledFile + "]失败", e);
+            tempFile.delete();
+            return;
+        }
+        try {
+            Files.move(tempFile.toPath(), zipFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(rolledFile.toPath());
+        } catch (IOException e) {
+            addError("压缩日志文件[" + rolledFile + "]失败", e);
+        }
+    }
+
+    private static void copy(InputStream input, OutputStream output) throws IOException {
+        final byte[] buffer = new byte[64 * 1024];
+        int count;
+        while ((count = input.read(buffer)) > 0) {
+            output.write(buffer, 0, count);
+        }
+    }
+
+    //删除与滚动文件同前缀、最后修改时间超过保留天数的压缩文件
+    private void deleteExpired(File rolledFile, int history) {
+        final String prefix = new File(filePrefix).getName() + ".";
+        final long expireMillis = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(history);
+        File[] files = rolledFile.getAbsoluteFile().getParentFile()
+                .listFiles((dir, fileName) -> fileName.startsWith(prefix) && fileName.endsWith(LOG_SUFFIX + ZIP_SUFFIX));
+        if (files == null) {
+            return;
+        }
+        for (File zipFile : files) {
+            if (zipFile.lastModified() < expireMillis && !zipFile.delete()) {
+                addWarn("删除过期的日志文件[" + zipFile + "]失败");
+            }
+        }
+    }
+}
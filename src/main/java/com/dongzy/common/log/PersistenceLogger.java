@@ -9,13 +9,10 @@ import org.slf4j.Marker;
  */
 public abstract class PersistenceLogger implements org.slf4j.Logger {
 
+    //需要添加日志添加器的日志级别
+    private static final Level[] RECORD_LEVELS = {Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR};
     private Logger logger;
     private final String contextName;
-    private volatile boolean isInitTrace;
-    private volatile boolean isInitDebug;
-    private volatile boolean isInitInfo;
-    private volatile boolean isInitWarn;
-    private volatile boolean isInitError;
     private LoggerAppenderAbstract appender;
 
     public PersistenceLogger(String contextName) {
@@ -26,49 +23,24 @@ public abstract class PersistenceLogger implements org.slf4j.Logger {
         this.appender = appender;
     }
 
-    private synchronized void initTraceAppender() {
-        if (!isInitTrace) {
-            if (logger.getLevel().levelInt <= Level.TRACE_INT) {
-                appender.addRecordAppender(logger, contextName, Level.TRACE);
+    /**
+     * 为日志记录器添加所有已启用级别的添加器，由日志工厂在创建日志记录器时调用一次，
+     * 之后记录日志时只需要由logback判断日志级别，不再检查添加器是否已经初始化
+     */
+    void initAppenders() {
+        final int levelInt = logger.getEffectiveLevel().levelInt;
+        for (Level level : RECORD_LEVELS) {
+            if (levelInt <= level.levelInt) {
+                appender.addRecordAppender(logger, contextName, level);
             }
-            isInitTrace = true;
         }
     }
 
-    private synchronized void initDebugAppender() {
-        if (!isInitDebug) {
-            if (logger.getLevel().levelInt <= Level.DEBUG_INT) {
-                appender.addRecordAppender(logger, contextName, Level.DEBUG);
-            }
-            isInitDebug = true;
-        }
-    }
-
-    private synchronized void initInfoAppender() {
-        if (!isInitInfo) {
-            if (logger.getLevel().levelInt <= Level.INFO_INT) {
-                appender.addRecordAppender(logger, contextName, Level.INFO);
-            }
-            isInitInfo = true;
-        }
-    }
-
-    private synchronized void initWarnAppender() {
-        if (!isInitWarn) {
-            if (logger.getLevel().levelInt <= Level.WARN_INT) {
-                appender.addRecordAppender(logger, contextName, Level.WARN);
-            }
-            isInitWarn = true;
-        }
-    }
-
-    private synchronized void initErrorAppender() {
-        if (!isInitError) {
-            if (logger.getLevel().levelInt <= Level.ERROR_INT) {
-                appender.addRecordAppender(logger, contextName, Level.ERROR);
-            }
-            isInitError = true;
-        }
+    /**
+     * 释放日志记录器上的所有共享添加器，由日志工厂在释放日志记录器时调用
+     */
+    void releaseAppenders() {
+        appender.releaseRecordAppender(logger);
     }
 
     public void setLogger(Logger logger) {
@@ -87,31 +59,26 @@ public abstract class PersistenceLogger implements org.slf4j.Logger {
 
     @Override
     public void trace(String msg) {
-        initTraceAppender();
         logger.trace(msg);
     }
 
     @Override
     public void trace(String format, Object arg) {
-        initTraceAppender();
         logger.trace(format, arg);
     }
 
     @Override
     public void trace(String format, Object arg1, Object arg2) {
-        initTraceAppender();
         logger.trace(format, arg1, arg2);
     }
 
     @Override
     public void trace(String format, Object... arguments) {
-        initTraceAppender();
         logger.trace(format, arguments);
     }
 
     @Override
     public void trace(String msg, Throwable t) {
-        initTraceAppender();
         logger.trace(msg, t);
     }
 
@@ -122,31 +89,26 @@ public abstract class PersistenceLogger implements org.slf4j.Logger {
 
     @Override
     public void trace(Marker marker, String msg) {
-        initTraceAppender();
         logger.trace(marker, msg);
     }
 
     @Override
     public void trace(Marker marker, String format, Object arg) {
-        initTraceAppender();
         logger.trace(marker, format, arg);
     }
 
     @Override
     public void trace(Marker marker, String format, Object arg1, Object arg2) {
-        initTraceAppender();
         logger.trace(marker, format, arg1, arg2);
     }
 
     @Override
     public void trace(Marker marker, String format, Object... argArray) {
-        initTraceAppender();
         logger.trace(marker, format, argArray);
     }
 
     @Override
     public void trace(Marker marker, String msg, Throwable t) {
-        initTraceAppender();
         logger.trace(marker, msg, t);
     }
 
@@ -157,36 +119,26 @@ public abstract class PersistenceLogger implements org.slf4j.Logger {
 
     @Override
     public void debug(String msg) {
-        initTraceAppender();
-        initDebugAppender();
         logger.debug(msg);
     }
 
     @Override
     public void debug(String format, Object arg) {
-        initTraceAppender();
-        initDebugAppender();
         logger.debug(format, arg);
     }
 
     @Override
     public void debug(String format, Object arg1, Object arg2) {
-        initTraceAppender();
-        initDebugAppender();
         logger.debug(format, arg1, arg2);
     }
 
     @Override
     public void debug(String format, Object... arguments) {
-        initTraceAppender();
-        initDebugAppender();
         logger.debug(format, arguments);
     }
 
     @Override
     public void debug(String msg, Throwable t) {
-        initTraceAppender();
-        initDebugAppender();
         logger.debug(msg, t);
     }
 
@@ -197,36 +149,26 @@ public abstract class PersistenceLogger implements org.slf4j.Logger {
 
     @Override
     public void debug(Marker marker, String msg) {
-        initTraceAppender();
-        initDebugAppender();
         logger.debug(marker, msg);
     }
 
     @Override
     public void debug(Marker marker, String format, Object arg) {
-        initTraceAppender();
-        initDebugAppender();
         logger.debug(marker, format, arg);
     }
 
     @Override
     public void debug(Marker marker, String format, Object arg1, Object arg2) {
-        initTraceAppender();
-        initDebugAppender();
         logger.debug(marker, format, arg1, arg2);
     }
 
     @Override
     public void debug(Marker marker, String format, Object... argArray) {
-        initTraceAppender();
-        initDebugAppender();
         logger.debug(marker, format, argArray);
     }
 
     @Override
     public void debug(Marker marker, String msg, Throwable t) {
-        initTraceAppender();
-        initDebugAppender();
         logger.debug(marker, msg, t);
     }
 
@@ -238,36 +180,26 @@ public abstract class PersistenceLogger implements org.slf4j.Logger {
 
     @Override
     public void info(String msg) {
-        initTraceAppender();
-        initInfoAppender();
         logger.info(msg);
     }
 
     @Override
     public void info(String format, Object arg) {
-        initTraceAppender();
-        initInfoAppender();
         logger.info(format, arg);
     }
 
     @Override
     public void info(String format, Object arg1, Object arg2) {
-        initTraceAppender();
-        initInfoAppender();
         logger.info(format, arg1, arg2);
     }
 
     @Override
     public void info(String format, Object... arguments) {
-        initTraceAppender();
-        initInfoAppender();
         logger.info(format, arguments);
     }
 
     @Override
     public void info(String msg, Throwable t) {
-        initTraceAppender();
-        initInfoAppender();
         logger.info(msg, t);
     }
 
@@ -278,36 +210,26 @@ public abstract class PersistenceLogger implements org.slf4j.Logger {
 
     @Override
     public void info(Marker marker, String msg) {
-        initTraceAppender();
-        initInfoAppender();
         logger.info(marker, msg);
     }
 
     @Override
     public void info(Marker marker, String format, Object arg) {
-        initTraceAppender();
-        initInfoAppender();
         logger.info(marker, format, arg);
     }
 
     @Override
     public void info(Marker marker, String format, Object arg1, Object arg2) {
-        initTraceAppender();
-        initInfoAppender();
         logger.info(marker, format, arg1, arg2);
     }
 
     @Override
     public void info(Marker marker, String format, Object... argArray) {
-        initTraceAppender();
-        initInfoAppender();
         logger.info(marker, format, argArray);
     }
 
     @Override
     public void info(Marker marker, String msg, Throwable t) {
-        initTraceAppender();
-        initInfoAppender();
         logger.info(marker, msg, t);
     }
 
@@ -319,36 +241,26 @@ public abstract class PersistenceLogger implements org.slf4j.Logger {
 
     @Override
     public void warn(String msg) {
-        initTraceAppender();
-        initWarnAppender();
         logger.warn(msg);
     }
 
     @Override
     public void warn(String format, Object arg) {
-        initTraceAppender();
-        initWarnAppender();
         logger.warn(format, arg);
     }
 
     @Override
     public void warn(String format, Object arg1, Object arg2) {
-        initTraceAppender();
-        initWarnAppender();
         logger.warn(format, arg1, arg2);
     }
 
     @Override
     public void warn(String format, Object... arguments) {
-        initTraceAppender();
-        initWarnAppender();
         logger.warn(format, arguments);
     }
 
     @Override
     public void warn(String msg, Throwable t) {
-        initTraceAppender();
-        initWarnAppender();
         logger.warn(msg, t);
     }
 
@@ -359,36 +271,26 @@ public abstract class PersistenceLogger implements org.slf4j.Logger {
 
     @Override
     public void warn(Marker marker, String msg) {
-        initTraceAppender();
-        initWarnAppender();
         logger.warn(marker, msg);
     }
 
     @Override
     public void warn(Marker marker, String format, Object arg) {
-        initTraceAppender();
-        initWarnAppender();
         logger.warn(marker, format, arg);
     }
 
     @Override
     public void warn(Marker marker, String format, Object arg1, Object arg2) {
-        initTraceAppender();
-        initWarnAppender();
         logger.warn(marker, format, arg1, arg2);
     }
 
     @Override
     public void warn(Marker marker, String format, Object... argArray) {
-        initTraceAppender();
-        initWarnAppender();
         logger.warn(marker, format, argArray);
     }
 
     @Override
     public void warn(Marker marker, String msg, Throwable t) {
-        initTraceAppender();
-        initWarnAppender();
         logger.warn(marker, msg, t);
     }
 
@@ -400,36 +302,26 @@ public abstract class PersistenceLogger implements org.slf4j.Logger {
 
     @Override
     public void error(String msg) {
-        initTraceAppender();
-        initErrorAppender();
         logger.error(msg);
     }
 
     @Override
     public void error(String format, Object arg) {
-        initTraceAppender();
-        initErrorAppender();
         logger.error(format, arg);
     }
 
     @Override
     public void error(String format, Object arg1, Object arg2) {
-        initTraceAppender();
-        initErrorAppender();
         logger.error(format, arg1, arg2);
     }
 
     @Override
     public void error(String format, Object... arguments) {
-        initTraceAppender();
-        initErrorAppender();
         logger.error(format, arguments);
     }
 
     @Override
     public void error(String msg, Throwable t) {
-        initTraceAppender();
-        initErrorAppender();
         logger.error(msg, t);
     }
 
@@ -440,36 +332,26 @@ public abstract class PersistenceLogger implements org.slf4j.Logger {
 
     @Override
     public void error(Marker marker, String msg) {
-        initTraceAppender();
-        initErrorAppender();
         logger.error(marker, msg);
     }
 
     @Override
     public void error(Marker marker, String format, Object arg) {
-        initTraceAppender();
-        initErrorAppender();
         logger.error(marker, format, arg);
     }
 
     @Override
     public void error(Marker marker, String format, Object arg1, Object arg2) {
-        initTraceAppender();
-        initErrorAppender();
         logger.error(marker, format, arg1, arg2);
     }
 
     @Override
     public void error(Marker marker, String format, Object... argArray) {
-        initTraceAppender();
-        initErrorAppender();
         logger.error(marker, format, argArray);
     }
 
     @Override
     public void error(Marker marker, String msg, Throwable t) {
-        initTraceAppender();
-        initErrorAppender();
         logger.error(marker, msg, t);
     }
 }
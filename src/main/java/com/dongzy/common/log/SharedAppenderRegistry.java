@@ -0,0 +1,95 @@
+package com.dongzy.common.log;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 共享日志添加器的注册中心，同一个日志上下文中写入同一个目标（同一个文件名模式或者同一个级别的控制台输出）的日志记录器共用一个添加器，
+ * 避免每个日志记录器各自打开文件句柄、争抢同一个文件
+ * <p>
+ * 添加器采用引用计数管理：每个附加了该添加器的日志记录器计数一次，所有的日志记录器都释放后，添加器被停止并从注册中心移除
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+final class SharedAppenderRegistry {
+
+    //上下文名称和添加器key的组合与共享添加器的对应关系
+    private static final Map<String, SharedAppender> APPENDER_MAP = new HashMap<>();
+
+    /**
+     * 共享的添加器及其引用计数
+     */
+    private static final class SharedAppender {
+
+        private final Appender<ILoggingEvent> appender;
+        private int referenceCount = 0;
+
+        private SharedAppender(Appender<ILoggingEvent> appender) {
+            this.appender = appender;
+        }
+    }
+
+    private SharedAppenderRegistry() {
+    }
+
+    /**
+     * 将共享的添加器附加到日志记录器上，添加器不存在时通过creator创建并启动，
+     * 日志记录器已经附加了该添加器时不做任何处理，也不会增加引用计数
+     *
+     * @param log     日志记录器
+     * @param key     添加器在上下文中的唯一标识，如文件名模式
+     * @param creator 创建添加器的方法，返回的添加器必须已经启动
+     */
+    static synchronized void attach(Logger log, String key, Supplier<Appender<ILoggingEvent>> creator) {
+        final String name = fullName(log, key);
+        if (log.getAppender(name) != null) {
+            return;
+        }
+        SharedAppender sharedAppender = APPENDER_MAP.get(name);
+        if (sharedAppender == null) {
+            Appender<ILoggingEvent> appender = creator.get();
+            appender.setName(name);
+            sharedAppender = new SharedAppender(appender);
+            APPENDER_MAP.put(name, sharedAppender);
+        }
+        sharedAppender.referenceCount++;
+        log.addAppender(sharedAppender.appender);
+    }
+
+    /**
+     * 从日志记录器上移除所有的共享添加器，引用计数为0的添加器会被停止
+     *
+     * @param log 日志记录器
+     */
+    static synchronized void release(Logger log) {
+        List<Appender<ILoggingEvent>> appenders = new ArrayList<>();
+        Iterator<Appender<ILoggingEvent>> iterator = log.iteratorForAppenders();
+        while (iterator.hasNext()) {
+            appenders.add(iterator.next());
+        }
+        for (Appender<ILoggingEvent> appender : appenders) {
+            SharedAppender sharedAppender = APPENDER_MAP.get(appender.getName());
+            if (sharedAppender == null || sharedAppender.appender != appender) {
+                continue;           //不是共享的添加器
+            }
+            log.detachAppender(appender);
+            if (--sharedAppender.referenceCount == 0) {
+                APPENDER_MAP.remove(appender.getName());
+                appender.stop();
+            }
+        }
+    }
+
+    private static String fullName(Logger log, String key) {
+        return log.getLoggerContext().getName() + ":" + key;
+    }
+}
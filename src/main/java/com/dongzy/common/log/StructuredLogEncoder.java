@@ -0,0 +1,471 @@
+package com.dongzy.common.log;
+
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.IThrowableProxy;
+import ch.qos.logback.classic.spi.StackTraceElementProxy;
+import ch.qos.logback.core.encoder.EncoderBase;
+import com.dongzy.common.common.Validate;
+import org.slf4j.helpers.MessageFormatter;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * 结构化日志的编码器，将日志事件编码为JSON行或者紧凑的二进制格式，主要包含以下功能：
+ * 1、直接将日志事件写入{@link ByteBuffer}，不生成格式化后的消息字符串，字符串按UTF-8逐个字符写入
+ * 2、消息模板中的{}占位符在写入时替换，字符串、整数、布尔值和字符类型的参数不会创建临时对象，其他类型的参数调用toString方法；
+ * 异步写入（setDeferred）时日志事件已经在调用线程中格式化，直接写入格式化后的消息，不在写入线程中读取可能已经被修改的参数
+ * 3、输出MDC中的所有字段，以及异常的类名、消息、堆栈、cause和suppressed异常
+ * 4、logback的encode(E)方法使用每个线程复用的缓冲区编码，只在最后复制一次字节数组
+ * <p>
+ * JSON格式每条日志一行，字段为timestamp（毫秒时间戳）、level、thread、logger、message、mdc（可选）和exception（可选）
+ * <p>
+ * 二进制格式的每条日志为：[int 后续字节数][byte 版本][long 毫秒时间戳][int 级别][str 线程名称][str 日志记录器名称][str 消息]
+ * [int MDC字段数量]{[str key][str value]}[异常]，
+ * 其中str为[int UTF-8字节数，-1表示null][UTF-8字节]，
+ * 异常为[byte 0表示没有异常，1表示有异常]{[str 类名][str 消息][int 堆栈行数]{[str 堆栈行]}[int 省略的相同堆栈行数][异常 cause][int suppressed数量]{[异常]}}，
+ * 所有的整数均为大端字节序
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public class StructuredLogEncoder extends EncoderBase<ILoggingEvent> {
+
+    /**
+     * 二进制格式的版本号
+     */
+    public static final byte BINARY_VERSION = 1;
+    //每个线程编码缓冲区的初始大小
+    private static final int DEFAULT_BUFFER_SIZE = 4096;
+    //编码缓冲区的最大值，超过该长度的日志被丢弃
+    private static final int MAX_BUFFER_SIZE = 16 * 1024 * 1024;
+    //输出cause和suppressed异常的最大嵌套层数
+    private static final int MAX_THROWABLE_DEPTH = 16;
+    private static final byte[] HEX_DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+    private final ThreadLocal<ByteBuffer> bufferHolder = ThreadLocal.withInitial(() -> ByteBuffer.allocate(DEFAULT_BUFFER_SIZE));
+    private LogFormatEnum format = LogFormatEnum.JSON;
+    private boolean deferred = false;           //日志事件是否已经调用prepareForDeferredProcessing并交给其他线程写入
+
+    /**
+     * 设置输出格式，只支持JSON和BINARY，默认为JSON
+     *
+     * @param format 输出格式
+     */
+    public void setFormat(LogFormatEnum format) {
+        Validate.isTrue(format == LogFormatEnum.JSON || format == LogFormatEnum.BINARY, "结构化日志只支持JSON和BINARY格式！");
+        this.format = format;
+    }
+
+    public LogFormatEnum getFormat() {
+        return format;
+    }
+
+    /**
+     * 设置日志事件是否由其他线程延迟写入，延迟写入时采用日志事件中已经格式化好的消息，默认为false
+     *
+     * @param deferred 是否延迟写入
+     */
+    public void setDeferred(boolean deferred) {
+        this.deferred = deferred;
+    }
+
+    public boolean isDeferred() {
+        return deferred;
+    }
+
+    @Override
+    public byte[] headerBytes() {
+        return null;
+    }
+
+    @Override
+    public byte[] encode(ILoggingEvent event) {
+        ByteBuffer buffer = bufferHolder.get();
+        while (true) {
+            buffer.clear();
+            try {
+                encode(event, buffer);
+                return Arrays.copyOf(buffer.array(), buffer.position());
+            } catch (BufferOverflowException e) {
+                if (buffer.capacity() >= MAX_BUFFER_SIZE) {
+                    addError("日志内容超过了编码缓冲区的最大值：" + MAX_BUFFER_SIZE);
+                    return new byte[0];
+                }
+                buffer = ByteBuffer.allocate(Math.min(buffer.capacity() * 2, MAX_BUFFER_SIZE));
+                bufferHolder.set(buffer);
+            }
+        }
+    }
+
+    @Override
+    public byte[] footerBytes() {
+        return null;
+    }
+
+    /**
+     * 将日志事件直接编码到缓冲区的当前位置
+     *
+     * @param event  日志事件
+     * @param buffer 缓冲区
+     * @throws BufferOverflowException 缓冲区的剩余空间不足，此时缓冲区的位置恢复为调用前的位置
+     */
+    public void encode(ILoggingEvent event, ByteBuffer buffer) {
+        final int start = buffer.position();
+        try {
+            if (format == LogFormatEnum.BINARY) {
+                encodeBinary(event, buffer);
+            } else {
+                encodeJson(event, buffer);
+            }
+        } catch (BufferOverflowException | IndexOutOfBoundsException e) {
+            buffer.position(start);
+            throw new BufferOverflowException();
+        }
+    }
+
+    //编码为一行JSON
+    private void encodeJson(ILoggingEvent event, ByteBuffer buffer) {
+        putAscii(buffer, "{\"timestamp\":");
+        putLong(buffer, event.getTimeStamp());
+        putAscii(buffer, ",\"level\":\"");
+        putAscii(buffer, event.getLevel().levelStr);
+        putAscii(buffer, "\",\"thread\":");
+        putJsonString(buffer, event.getThreadName());
+        putAscii(buffer, ",\"logger\":");
+        putJsonString(buffer, event.getLoggerName());
+        putAscii(buffer, ",\"message\":\"");
+        putMessage(buffer, event, true);
+        buffer.put((byte) '"');
+
+        Map<String, String> mdc = event.getMDCPropertyMap();
+        if (mdc != null && !mdc.isEmpty()) {
+            putAscii(buffer, ",\"mdc\":{");
+            boolean first = true;
+            for (Map.Entry<String, String> entry : mdc.entrySet()) {
+                if (!first) {
+                    buffer.put((byte) ',');
+                }
+                first = false;
+                putJsonString(buffer, entry.getKey());
+                buffer.put((byte) ':');
+                putJsonString(buffer, entry.getValue());
+            }
+            buffer.put((byte) '}');
+        }
+
+        IThrowableProxy throwable = event.getThrowableProxy();
+        if (throwable != null) {
+            putAscii(buffer, ",\"exception\":");
+            putJsonThrowable(buffer, throwable, 0);
+        }
+        putAscii(buffer, "}\n");
+    }
+
+    private void putJsonThrowable(ByteBuffer buffer, IThrowableProxy throwable, int depth) {
+        putAscii(buffer, "{\"class\":");
+        putJsonString(buffer, throwable.getClassName());
+        putAscii(buffer, ",\"message\":");
+        putJsonString(buffer, throwable.getMessage());
+        putAscii(buffer, ",\"stack\":[");
+        StackTraceElementProxy[] frames = throwable.getStackTraceElementProxyArray();
+        final int frameCount = frames.length - throwable.getCommonFrames();
+        for (int i = 0; i < frameCount; i++) {
+            if (i > 0) {
+                buffer.put((byte) ',');
+            }
+            buffer.put((byte) '"');
+            putFrame(buffer, frames[i].getStackTraceElement(), true);
+            buffer.put((byte) '"');
+        }
+        buffer.put((byte) ']');
+        if (throwable.getCommonFrames() > 0) {
+            putAscii(buffer, ",\"commonFrames\":");
+            putLong(buffer, throwable.getCommonFrames());
+        }
+        if (depth < MAX_THROWABLE_DEPTH) {
+            if (throwable.getCause() != null) {
+                putAscii(buffer, ",\"cause\":");
+                putJsonThrowable(buffer, throwable.getCause(), depth + 1);
+            }
+            IThrowableProxy[] suppressed = throwable.getSuppressed();
+            if (suppressed != null && suppressed.length > 0) {
+                putAscii(buffer, ",\"suppressed\":[");
+                for (int i = 0; i < suppressed.length; i++) {
+                    if (i > 0) {
+                        buffer.put((byte) ',');
+                    }
+                    putJsonThrowable(buffer, suppressed[i], depth + 1);
+                }
+                buffer.put((byte) ']');
+            }
+        }
+        buffer.put((byte) '}');
+    }
+
+    private static void putJsonString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            putAscii(buffer, "null");
+            return;
+        }
+        buffer.put((byte) '"');
+        putText(buffer, value, 0, value.length(), true);
+        buffer.put((byte) '"');
+    }
+
+    //编码为二进制格式，长度字段在写完后回填
+    private void encodeBinary(ILoggingEvent event, ByteBuffer buffer) {
+        final int lengthPosition = buffer.position();
+        buffer.putInt(0);
+        buffer.put(BINARY_VERSION);
+        buffer.putLong(event.getTimeStamp());
+        buffer.putInt(event.getLevel().levelInt);
+        putBinaryString(buffer, event.getThreadName());
+        putBinaryString(buffer, event.getLoggerName());
+
+        int start = beginBinaryString(buffer);
+        putMessage(buffer, event, false);
+        endBinaryString(buffer, start);
+
+        Map<String, String> mdc = event.getMDCPropertyMap();
+        if (mdc == null || mdc.isEmpty()) {
+            buffer.putInt(0);
+        } else {
+            buffer.putInt(mdc.size());
+            for (Map.Entry<String, String> entry : mdc.entrySet()) {
+                putBinaryString(buffer, entry.getKey());
+                putBinaryString(buffer, entry.getValue());
+            }
+        }
+        putBinaryThrowable(buffer, event.getThrowableProxy(), 0);
+        buffer.putInt(lengthPosition, buffer.position() - lengthPosition - 4);
+    }
+
+    private void putBinaryThrowable(ByteBuffer buffer, IThrowableProxy throwable, int depth) {
+        if (throwable == null || depth > MAX_THROWABLE_DEPTH) {
+            buffer.put((byte) 0);
+            return;
+        }
+        buffer.put((byte) 1);
+        putBinaryString(buffer, throwable.getClassName());
+        putBinaryString(buffer, throwable.getMessage());
+        StackTraceElementProxy[] frames = throwable.getStackTraceElementProxyArray();
+        final int frameCount = frames.length - throwable.getCommonFrames();
+        buffer.putInt(frameCount);
+        for (int i = 0; i < frameCount; i++) {
+            int start = beginBinaryString(buffer);
+            putFrame(buffer, frames[i].getStackTraceElement(), false);
+            endBinaryString(buffer, start);
+        }
+        buffer.putInt(throwable.getCommonFrames());
+        putBinaryThrowable(buffer, throwable.getCause(), depth + 1);
+        IThrowableProxy[] suppressed = throwable.getSuppressed();
+        if (suppressed == null || depth >= MAX_THROWABLE_DEPTH) {
+            buffer.putInt(0);
+        } else {
+            buffer.putInt(suppressed.length);
+            for (IThrowableProxy item : suppressed) {
+                putBinaryThrowable(buffer, item, depth + 1);
+            }
+        }
+    }
+
+    private static void putBinaryString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        int start = beginBinaryString(buffer);
+        putText(buffer, value, 0, value.length(), false);
+        endBinaryString(buffer, start);
+    }
+
+    //预留字符串长度的位置，返回字符串内容的开始位置
+    private static int beginBinaryString(ByteBuffer buffer) {
+        buffer.putInt(0);
+        return buffer.position();
+    }
+
+    //回填字符串的字节数
+    private static void endBinaryString(ByteBuffer buffer, int start) {
+        buffer.putInt(start - 4, buffer.position() - start);
+    }
+
+    //按照slf4j的规则替换消息模板中的{}占位符，\{}表示{}本身，\\{}表示\后跟占位符；
+    //延迟写入时参数可能已经被调用方修改，改为写入prepareForDeferredProcessing时格式化好的消息
+    private void putMessage(ByteBuffer buffer, ILoggingEvent event, boolean json) {
+        final String pattern = deferred ? event.getFormattedMessage() : event.getMessage();
+        final Object[] arguments = deferred ? null : event.getArgumentArray();
+        if (pattern == null) {
+            return;
+        }
+        if (arguments == null || arguments.length == 0) {
+            putText(buffer, pattern, 0, pattern.length(), json);
+            return;
+        }
+        int argumentIndex = 0;
+        int from = 0;
+        while (argumentIndex < arguments.length) {
+            int index = pattern.indexOf("{}", from);
+            if (index < 0) {
+                break;
+            }
+            boolean escaped = index > 0 && pattern.charAt(index - 1) == '\\';
+            boolean escapedBackslash = escaped && index > 1 && pattern.charAt(index - 2) == '\\';
+            if (escaped && !escapedBackslash) {
+                putText(buffer, pattern, from, index - 1, json);
+                putAscii(buffer, "{}");
+            } else {
+                putText(buffer, pattern, from, escapedBackslash ? index - 1 : index, json);
+                putArgument(buffer, arguments[argumentIndex++], json);
+            }
+            from = index + 2;
+        }
+        putText(buffer, pattern, from, pattern.length(), json);
+    }
+
+    //写入占位符对应的参数，常用类型直接写入，不创建临时字符串
+    private static void putArgument(ByteBuffer buffer, Object argument, boolean json) {
+        if (argument == null) {
+            putAscii(buffer, "null");
+        } else if (argument instanceof CharSequence) {
+            CharSequence text = (CharSequence) argument;
+            putText(buffer, text, 0, text.length(), json);
+        } else if (argument instanceof Integer || argument instanceof Long
+                || argument instanceof Short || argument instanceof Byte) {
+            putLong(buffer, ((Number) argument).longValue());
+        } else if (argument instanceof Boolean) {
+            putAscii(buffer, (Boolean) argument ? "true" : "false");
+        } else if (argument instanceof Character) {
+            char c = (Character) argument;
+            putText(buffer, String.valueOf(c), 0, 1, json);
+        } else {
+            String text;
+            try {
+                text = argument.getClass().isArray()
+                        ? MessageFormatter.arrayFormat("{}", new Object[]{argument}).getMessage()
+                        : argument.toString();
+            } catch (Exception e) {
+                text = "[FAILED toString()]";
+            }
+            if (text == null) {
+                text = "null";
+            }
+            putText(buffer, text, 0, text.length(), json);
+        }
+    }
+
+    //按照Throwable.printStackTrace的格式写入一行堆栈，不包含开头的at
+    private static void putFrame(ByteBuffer buffer, StackTraceElement frame, boolean json) {
+        String className = frame.getClassName();
+        putText(buffer, className, 0, className.length(), json);
+        buffer.put((byte) '.');
+        String methodName = frame.getMethodName();
+        putText(buffer, methodName, 0, methodName.length(), json);
+        buffer.put((byte) '(');
+        String fileName = frame.getFileName();
+        if (frame.isNativeMethod()) {
+            putAscii(buffer, "Native Method");
+        } else if (fileName == null) {
+            putAscii(buffer, "Unknown Source");
+        } else {
+            putText(buffer, fileName, 0, fileName.length(), json);
+            if (frame.getLineNumber() >= 0) {
+                buffer.put((byte) ':');
+                putLong(buffer, frame.getLineNumber());
+            }
+        }
+        buffer.put((byte) ')');
+    }
+
+    //写入只包含ASCII字符的常量
+    private static void putAscii(ByteBuffer buffer, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            buffer.put((byte) text.charAt(i));
+        }
+    }
+
+    //以十进制写入整数，先计算位数，再从低位到高位填入
+    private static void putLong(ByteBuffer buffer, long value) {
+        if (value == Long.MIN_VALUE) {
+            putAscii(buffer, "-9223372036854775808");
+            return;
+        }
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long remaining = value; remaining >= 10; remaining /= 10) {
+            digits++;
+        }
+        if (buffer.remaining() < digits) {
+            throw new BufferOverflowException();
+        }
+        final int start = buffer.position();
+        for (int i = start + digits - 1; i >= start; i--) {
+            buffer.put(i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        buffer.position(start + digits);
+    }
+
+    //按UTF-8编码写入字符串的[from, to)部分，json为true时转义JSON字符串中的特殊字符
+    private static void putText(ByteBuffer buffer, CharSequence text, int from, int to, boolean json) {
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                if (json && (c < 0x20 || c == '"' || c == '\\')) {
+                    putJsonEscape(buffer, c);
+                } else {
+                    buffer.put((byte) c);
+                }
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < to && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');             //不成对的代理字符
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private static void putJsonEscape(ByteBuffer buffer, char c) {
+        buffer.put((byte) '\\');
+        switch (c) {
+            case '"':
+                buffer.put((byte) '"');
+                break;
+            case '\\':
+                buffer.put((byte) '\\');
+                break;
+            case '\n':
+                buffer.put((byte) 'n');
+                break;
+            case '\r':
+                buffer.put((byte) 'r');
+                break;
+            case '\t':
+                buffer.put((byte) 't');
+                break;
+            default:
+                buffer.put((byte) 'u');
+                buffer.put((byte) '0');
+                buffer.put((byte) '0');
+                buffer.put(HEX_DIGITS[(c >> 4) & 0xF]);
+                buffer.put(HEX_DIGITS[c & 0xF]);
+                break;
+        }
+    }
+}
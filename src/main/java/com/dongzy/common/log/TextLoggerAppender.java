@@ -5,7 +5,11 @@ import ch.qos.logback.classic.Logger;
 import ch.qos.logback.classic.LoggerContext;
 import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
 import ch.qos.logback.classic.filter.LevelFilter;
+import ch.qos.logback.classic.filter.ThresholdFilter;
 import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.encoder.Encoder;
+import ch.qos.logback.core.filter.Filter;
 import ch.qos.logback.core.rolling.RollingFileAppender;
 import ch.qos.logback.core.rolling.TimeBasedRollingPolicy;
 import ch.qos.logback.core.spi.FilterReply;
@@ -42,51 +46,111 @@ final class TextLoggerAppender extends LoggerAppenderAbstract {
 
     @Override
     protected void addPersistenceAppender(Logger log, String contextName, Level level) {
-        LoggerContext context = log.getLoggerContext();
-
-        RollingFileAppender<ILoggingEvent> rollingFileAppender = new RollingFileAppender<>();
-        rollingFileAppender.setContext(context);
-
-        //按时间滚动策略，定义为每天一个文件，并采用zip进行压缩
-        TimeBasedRollingPolicy rollingPolicy = new TimeBasedRollingPolicy();
-        rollingPolicy.setContext(context);
-        rollingPolicy.setParent(rollingFileAppender);
-        //设置最大保存日志的日志日期为60天
-        rollingPolicy.setMaxHistory(loggerFactory.getMaxHistory());
-
+        final String fileNamePattern;
         if (StringUtils.isBlank(contextName)) {
             if (loggerFactory.isSplitFile()) {
-                rollingPolicy.setFileNamePattern(getFullLogPath(String.format("%s.%%d{yyMMdd}.log.zip", level.levelStr.toLowerCase())));
+                fileNamePattern = getFullLogPath(String.format("%s.%%d{yyMMdd}.log.zip", level.levelStr.toLowerCase()));
             } else {
-                rollingPolicy.setFileNamePattern(getFullLogPath("log.%d{yyMMdd}.log.zip"));
+                fileNamePattern = getFullLogPath("log.%d{yyMMdd}.log.zip");
             }
         } else {
             if (loggerFactory.isSplitFile()) {
-                rollingPolicy.setFileNamePattern(getFullLogPath(String.format("%s.%s.%%d{yyMMdd}.log.zip", contextName, level.levelStr.toLowerCase().substring(0, 1))));
+                fileNamePattern = getFullLogPath(String.format("%s.%s.%%d{yyMMdd}.log.zip", contextName, level.levelStr.toLowerCase().substring(0, 1)));
             } else {
-                rollingPolicy.setFileNamePattern(getFullLogPath(String.format("%s.%%d{yyMMdd}.log.zip", contextName)));
+                fileNamePattern = getFullLogPath(String.format("%s.%%d{yyMMdd}.log.zip", contextName));
             }
         }
-        rollingPolicy.start();
 
-        LevelFilter levelFilter = new LevelFilter();
-        levelFilter.setLevel(level);
+        //写入同一个文件的日志记录器共用一个添加器，不拆分文件时所有级别也共用一个添加器
+        attachSharedAppender(log, "file." + fileNamePattern, () -> createFileAppender(log.getLoggerContext(), fileNamePattern, level));
+    }
+
+    //创建写入指定文件的添加器，拆分文件时只接收指定级别的日志，否则接收debug及以上级别的日志
+    private Appender<ILoggingEvent> createFileAppender(LoggerContext context, String fileNamePattern, Level level) {
+        Filter<ILoggingEvent> levelFilter;
+        if (loggerFactory.isSplitFile()) {
+            LevelFilter filter = new LevelFilter();
+            filter.setLevel(level);
+            filter.setOnMatch(FilterReply.ACCEPT);
+            filter.setOnMismatch(FilterReply.DENY);
+            levelFilter = filter;
+        } else {
+            ThresholdFilter filter = new ThresholdFilter();
+            filter.setLevel(Level.DEBUG.levelStr);
+            levelFilter = filter;
+        }
         levelFilter.setContext(context);
-        levelFilter.setOnMatch(FilterReply.ACCEPT);
-        levelFilter.setOnMismatch(FilterReply.DENY);
         levelFilter.start();
 
-        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
-        encoder.setContext(context);
-        encoder.setPattern("%d{MM-dd HH:mm:ss} [%thread] %-5level %message%n");
-        encoder.setCharset(StandardCharsets.UTF_8);
-        encoder.start();
+        Appender<ILoggingEvent> fileAppender = loggerFactory.isMmap()
+                ? createMappedFileAppender(context, fileNamePattern)
+                : createRollingFileAppender(context, fileNamePattern);
 
-        rollingFileAppender.setEncoder(encoder);
+        if (loggerFactory.isAsync()) {
+            //异步模式下由异步添加器过滤日志级别，并在每批日志写完后统一刷新
+            fileAppender.start();
+
+            AsyncBatchAppender asyncAppender = new AsyncBatchAppender();
+            asyncAppender.setContext(context);
+            asyncAppender.setBufferSize(loggerFactory.getAsyncBufferSize());
+            asyncAppender.setDiscardLevel(loggerFactory.getAsyncDiscardLevel());
+            asyncAppender.addFilter(levelFilter);
+            asyncAppender.addAppender(fileAppender);
+            asyncAppender.start();
+            return asyncAppender;
+        }
+        fileAppender.addFilter(levelFilter);
+        fileAppender.start();
+        return fileAppender;
+    }
+
+    //创建按天滚动的文件添加器，返回的添加器尚未启动
+    private Appender<ILoggingEvent> createRollingFileAppender(LoggerContext context, String fileNamePattern) {
+        RollingFileAppender<ILoggingEvent> rollingFileAppender = new RollingFileAppender<>();
+        rollingFileAppender.setContext(context);
+
+        //按时间滚动策略，定义为每天一个文件，并采用zip进行压缩
+        TimeBasedRollingPolicy rollingPolicy = new TimeBasedRollingPolicy();
+        rollingPolicy.setContext(context);
+        rollingPolicy.setParent(rollingFileAppender);
+        //设置最大保存日志的日志日期为60天
+        rollingPolicy.setMaxHistory(loggerFactory.getMaxHistory());
+        rollingPolicy.setFileNamePattern(fileNamePattern);
+        rollingPolicy.start();
+
+        rollingFileAppender.setEncoder(createEncoder(context));
         rollingFileAppender.setRollingPolicy(rollingPolicy);
-        rollingFileAppender.addFilter(levelFilter);
-        rollingFileAppender.start();
+        rollingFileAppender.setImmediateFlush(!loggerFactory.isAsync());
+        return rollingFileAppender;
+    }
 
-        log.addAppender(rollingFileAppender);
+    //创建通过内存映射写入、按大小和日期滚动的文件添加器，活动文件为去掉日期和压缩后缀的文件名，返回的添加器尚未启动
+    private Appender<ILoggingEvent> createMappedFileAppender(LoggerContext context, String fileNamePattern) {
+        MappedFileAppender mappedFileAppender = new MappedFileAppender();
+        mappedFileAppender.setContext(context);
+        mappedFileAppender.setFile(fileNamePattern.replace(".%d{yyMMdd}.log.zip", ".log"));
+        mappedFileAppender.setEncoder(createEncoder(context));
+        mappedFileAppender.setMaxHistory(loggerFactory.getMaxHistory());
+        mappedFileAppender.setMaxFileSize(loggerFactory.getMmapMaxFileSize());
+        mappedFileAppender.setRegionSize(loggerFactory.getMmapRegionSize());
+        return mappedFileAppender;
+    }
+
+    //根据配置的输出格式创建编码器，JSON和二进制格式采用结构化日志编码器
+    private Encoder<ILoggingEvent> createEncoder(LoggerContext context) {
+        if (loggerFactory.getLogFormat() == LogFormatEnum.TEXT) {
+            PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+            encoder.setContext(context);
+            encoder.setPattern("%d{MM-dd HH:mm:ss} [%thread] %-5level %message%n");
+            encoder.setCharset(StandardCharsets.UTF_8);
+            encoder.start();
+            return encoder;
+        }
+        StructuredLogEncoder encoder = new StructuredLogEncoder();
+        encoder.setContext(context);
+        encoder.setFormat(loggerFactory.getLogFormat());
+        encoder.setDeferred(loggerFactory.isAsync());
+        encoder.start();
+        return encoder;
     }
 }
@@ -0,0 +1,74 @@
+package com.dongzy.common.mq;
+
+import com.dongzy.common.common.Validate;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 阻塞等待策略，队列为空时监听线程在条件变量上等待，队列集添加对象后被唤醒
+ * 空闲时几乎不占用CPU，唤醒延迟取决于线程调度（通常为几十微秒）
+ * <p>
+ * 注意：为了避免添加对象的线程在没有等待线程时获取锁，唤醒操作只在有线程等待时执行，
+ * 判断与等待之间存在极小的时间窗口可能错过唤醒，因此每次等待都有超时时间，超时后重新检查队列
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public class BlockingWaitStrategy implements IWaitStrategy {
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition condition = lock.newCondition();
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final long timeoutNanos;
+
+    /**
+     * 默认构造函数，每次最多等待10毫秒
+     */
+    public BlockingWaitStrategy() {
+        this(10, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 根据传入的参数构造函数
+     *
+     * @param timeout  每次等待的最长时间
+     * @param timeUnit 时间单位
+     */
+    public BlockingWaitStrategy(long timeout, TimeUnit timeUnit) {
+        Validate.isTrue(timeout > 0, "等待的超时时间必须大于0！");
+        this.timeoutNanos = timeUnit.toNanos(timeout);
+    }
+
+    @Override
+    public int idle(int idleCount) throws InterruptedException {
+        lock.lock();
+        try {
+            waiters.incrementAndGet();
+            try {
+                condition.awaitNanos(timeoutNanos);
+            } finally {
+                waiters.decrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return idleCount + 1;
+    }
+
+    @Override
+    public void signalAll() {
+        if (waiters.get() == 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            condition.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.dongzy.common.mq;
+
+/**
+ * 自旋等待策略，队列为空时立即重新获取对象，唤醒延迟最低
+ * 空闲时每个监听线程会占满一个CPU核心，只适用于监听线程数小于CPU核心数且对延迟极为敏感的场景
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public class BusySpinWaitStrategy implements IWaitStrategy {
+
+    @Override
+    public int idle(int idleCount) {
+        return idleCount + 1;
+    }
+}
@@ -0,0 +1,779 @@
+package com.dongzy.common.mq;
+
+import com.dongzy.common.common.Validate;
+import com.dongzy.common.common.io.ISerializer;
+import com.dongzy.common.common.io.MappedBufferUtils;
+import com.dongzy.common.common.io.JdkSerializer;
+import com.dongzy.common.log.TextLoggerFactory;
+import org.slf4j.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * 基于文件的持久化队列实现类，进程崩溃或重启后不会丢失已经写入的对象，主要包含以下功能：
+ * 1、数据以追加的方式写入多个固定大小的内存映射分段文件中，文件名为分段的起始偏移量
+ * 2、每条记录由长度、校验码和序列化后的内容组成，校验码包含分段的起始偏移量，重启时通过校验码找到最后一条完整的记录
+ * 3、后台刷盘线程定期将写入的数据刷到磁盘（组提交），开启同步写入后，添加对象的线程会等待包含其数据的那次刷盘完成，
+ * 多个线程的写入共用一次刷盘
+ * 4、消费位置保存在offset文件中，重启后从最后确认的位置开始重新投递：通过{@link #pollUnacknowledged(int)}取出的每批对象
+ * 在调用回执的acknowledge方法后才被确认；通过poll方法取出的对象默认取出即确认，关闭自动确认后需要由取出对象的线程
+ * 调用{@link #acknowledge()}确认。各批次可以按任意顺序确认，保存的消费位置为最早一批尚未确认的对象的位置
+ * 5、所有对象都已确认的分段会被回收，回收的文件在创建新的分段时重复使用，减少文件的创建和删除
+ * <p>
+ * 注意：
+ * 1、对象默认采用{@link JdkSerializer}序列化，必须实现Serializable接口，也可以传入自定义的序列化类
+ * 2、同一个目录只能被一个队列实例使用
+ * 3、需要通过{@link QueueSet#QueueSet(IQueue[])}构造函数作为队列集的子队列使用，使用完毕后应当调用close方法，
+ * 关闭后不能再添加或者取出对象
+ * 4、投递语义为至少一次：作为{@link QueueSetListener}的子队列时，每批对象全部处理完毕（处理成功或者放入死信队列）后才确认，
+ * 进程在处理过程中崩溃时，尚未确认的对象（包括之后已经处理完毕的批次）在重启后会被重新投递，处理程序需要能够容忍重复的对象
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public class FileQueue<T> implements IAcknowledgeableQueue<T>, Closeable {
+
+    private final static Logger LOGGER = TextLoggerFactory.getInstance().getLogger(FileQueue.class);
+    private final static int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;     //默认的分段大小为64M
+    private final static int HEADER_SIZE = 8;                             //记录头的长度：长度(4字节)+校验码(4字节)
+    private final static int END_OF_SEGMENT = -1;                         //分段结束标记，之后的记录在下一个分段中
+    private final static String SEGMENT_SUFFIX = ".seg";
+    private final static String OFFSET_FILE = "consumer.offset";
+    private final static int MAX_RECYCLED_SEGMENTS = 2;                   //最多保留的回收分段数量
+
+    private final File directory;
+    private final int segmentSize;
+    private final ISerializer<T> serializer;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final Deque<File> recycledFiles = new ArrayDeque<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ReentrantLock readLock = new ReentrantLock();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Condition flushRequested = flushLock.newCondition();
+    private final Condition flushCompleted = flushLock.newCondition();
+    private final Set<Segment> dirtySegments = new LinkedHashSet<>();     //有未刷盘数据的分段，由flushLock保护
+    private final Deque<Lease> pendingLeases = new ArrayDeque<>();        //已经取出但尚未确认的批次，按取出的顺序排列，由readLock保护
+    private final AtomicLong count = new AtomicLong();                    //尚未取出的对象数量
+    private final CRC32 writeCrc = new CRC32();
+    private final CRC32 readCrc = new CRC32();
+    private final MappedByteBuffer offsetBuffer;
+    private final RandomAccessFile offsetFile;
+    private final Thread flushThread;
+
+    private Segment writeSegment;                   //当前写入的分段，由writeLock保护
+    private long pendingWriteOffset;                //尚未发布的写入位置，由writeLock保护
+    private volatile long writeOffset;              //已经发布的写入位置，小于该位置的数据都可以读取
+    private long readOffset;                        //下一个读取的位置，由readLock保护
+    private volatile long ackOffset;                //已经确认的位置，重启后从该位置开始读取
+    private long flushedOffset;                     //已经刷盘的写入位置，由flushLock保护
+    private long flushedAckOffset;                  //已经刷盘的确认位置，由flushLock保护
+    private volatile boolean autoAcknowledge = true;
+    private volatile boolean syncWrite = false;
+    private volatile long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(10);
+    private volatile boolean closed = false;
+    private boolean offsetReleased = false;         //offset文件的映射区域是否已经释放，由offsetBuffer的锁保护
+
+    /**
+     * 队列的分段文件
+     */
+    private static final class Segment {
+        private final long base;                    //分段的起始偏移量
+        private final int capacity;
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private final int baseHash;                 //参与校验码计算的起始偏移量哈希值
+        private boolean released = false;           //映射的区域是否已经释放，由分段对象的锁保护
+
+        private Segment(long base, File file, int capacity) throws IOException {
+            this.base = base;
+            this.capacity = capacity;
+            this.file = file;
+            this.baseHash = Long.hashCode(base * 0x9E3779B97F4A7C15L);
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                randomAccessFile.setLength(capacity);
+                this.buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            }
+        }
+
+        private long end() {
+            return base + capacity;
+        }
+
+        //刷盘与释放互斥，已经释放的分段不再刷盘
+        synchronized private void force() {
+            if (!released) {
+                buffer.force();
+            }
+        }
+
+        //释放映射的区域，调用方需要保证读写线程都不会再访问该分段
+        synchronized private void release() {
+            if (!released) {
+                released = true;
+                MappedBufferUtils.unmap(buffer);
+            }
+        }
+    }
+
+    /**
+     * 已经取出但尚未确认的一批对象
+     */
+    private static final class Lease {
+        private final long start;                   //这批对象中第一个对象的位置
+        private final Thread owner;                 //通过poll方法取出时为取出对象的线程，通过回执确认时为null
+
+        private Lease(long start, Thread owner) {
+            this.start = start;
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * 分段的扫描结果
+     */
+    private static final class ScanResult {
+        private int position;                       //最后一条有效记录之后的位置
+        private long records;                       //有效记录的数量
+        private boolean endOfSegment;               //是否遇到了分段结束标记（或者分段已经写满）
+    }
+
+    /**
+     * 根据队列的目录构造函数，分段大小为64M，对象采用JDK序列化
+     *
+     * @param directory 保存队列文件的目录
+     */
+    public FileQueue(File directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE, new JdkSerializer<>());
+    }
+
+    /**
+     * 根据传入的参数构造函数，如果目录中已经存在队列文件，那么从最后确认的位置开始恢复队列
+     *
+     * @param directory   保存队列文件的目录
+     * @param segmentSize 每个分段文件的大小（字节），也是单个对象序列化后的大小上限
+     * @param serializer  对象的序列化类
+     */
+    public FileQueue(File directory, int segmentSize, ISerializer<T> serializer) {
+        Validate.notNull(directory, "队列的目录不能为null。");
+        Validate.isTrue(segmentSize > HEADER_SIZE * 2, "分段大小太小！");
+        Validate.notNull(serializer, "serializer对象不能为null。");
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("无法创建队列的目录：" + directory.getAbsolutePath());
+        }
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.serializer = serializer;
+        try {
+            this.offsetFile = new RandomAccessFile(new File(directory, OFFSET_FILE), "rw");
+            this.offsetFile.setLength(8);
+            this.offsetBuffer = offsetFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 8);
+            recover();
+        } catch (IOException e) {
+            throw new IllegalStateException("打开持久化队列失败：" + directory.getAbsolutePath(), e);
+        }
+
+        this.flushThread = new Thread(this::flushLoop, "FileQueue-Flush-" + directory.getName());
+        flushThread.setDaemon(true);
+        flushThread.start();
+    }
+
+    /**
+     * 设置通过poll方法取出对象时是否自动确认，关闭后需要调用{@link #acknowledge()}确认，未确认的对象在重启后会重新投递，
+     * 不影响通过{@link #pollUnacknowledged(int)}取出的对象
+     *
+     * @param autoAcknowledge 是否自动确认
+     */
+    public void setAutoAcknowledge(boolean autoAcknowledge) {
+        this.autoAcknowledge = autoAcknowledge;
+    }
+
+    /**
+     * 设置是否同步写入，开启后添加对象的方法在数据刷到磁盘后才返回
+     *
+     * @param syncWrite 是否同步写入
+     */
+    public void setSyncWrite(boolean syncWrite) {
+        this.syncWrite = syncWrite;
+    }
+
+    /**
+     * 设置后台刷盘的周期，默认为10毫秒
+     *
+     * @param flushInterval 刷盘的周期
+     * @param timeUnit      时间单位
+     */
+    public void setFlushInterval(long flushInterval, TimeUnit timeUnit) {
+        Validate.isTrue(flushInterval > 0, "刷盘的周期必须大于0！");
+        this.flushIntervalNanos = timeUnit.toNanos(flushInterval);
+    }
+
+    @Override
+    public boolean add(T t) {
+        Validate.notNull(t);
+        byte[] bytes = serialize(t);
+        long end;
+        writeLock.lock();
+        try {
+            checkOpen();
+            end = append(bytes);
+            writeOffset = end;
+        } finally {
+            writeLock.unlock();
+        }
+        count.incrementAndGet();
+        awaitFlush(end);
+        return true;
+    }
+
+    @Override
+    public boolean add(Collection<T> collection) {
+        List<byte[]> list = new ArrayList<>(collection.size());
+        for (T t : collection) {
+            Validate.notNull(t);
+            list.add(serialize(t));
+        }
+        long end;
+        writeLock.lock();
+        try {
+            checkOpen();
+            end = writeOffset;
+            for (byte[] bytes : list) {
+                end = append(bytes);
+            }
+            writeOffset = end;              //一次发布所有的记录
+        } finally {
+            writeLock.unlock();
+        }
+        count.addAndGet(list.size());
+        awaitFlush(end);
+        return true;
+    }
+
+    @Override
+    public T poll() {
+        byte[] bytes;
+        readLock.lock();
+        try {
+            checkOpen();
+            long start = readOffset;
+            bytes = read();
+            if (bytes != null) {
+                taken(start);
+            }
+        } finally {
+            readLock.unlock();
+        }
+        return (bytes == null) ? null : serializer.deserialize(bytes);      //在锁外完成反序列化
+    }
+
+    @Override
+    public Collection<T> poll(final int number) {
+        List<byte[]> list = new ArrayList<>(Math.min(number, 1024));
+        readLock.lock();
+        try {
+            checkOpen();
+            long start = readOffset;
+            readTo(list, number);
+            if (!list.isEmpty()) {
+                taken(start);
+            }
+        } finally {
+            readLock.unlock();
+        }
+        return deserialize(list);
+    }
+
+    @Override
+    public IQueueReceipt<T> pollUnacknowledged(final int number) {
+        List<byte[]> list = new ArrayList<>(Math.min(number, 1024));
+        final Lease lease;
+        readLock.lock();
+        try {
+            checkOpen();
+            long start = readOffset;
+            readTo(list, number);
+            lease = list.isEmpty() ? null : new Lease(start, null);
+            if (lease != null) {
+                pendingLeases.addLast(lease);
+            }
+        } finally {
+            readLock.unlock();
+        }
+
+        final Collection<T> collection = deserialize(list);
+        return new IQueueReceipt<T>() {
+            @Override
+            public Collection<T> getObjects() {
+                return collection;
+            }
+
+            @Override
+            public void acknowledge() {
+                if (lease != null) {
+                    release(lease);
+                }
+            }
+        };
+    }
+
+    /**
+     * 确认当前线程通过poll方法取出的所有对象，确认后的对象在重启后不会被重新投递；
+     * 其他线程取出但尚未确认的对象不受影响，消费位置不会越过这些对象
+     */
+    public void acknowledge() {
+        readLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            Thread current = Thread.currentThread();
+            pendingLeases.removeIf(lease -> lease.owner == current);
+            commit();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return count.get() <= 0;
+    }
+
+    @Override
+    public long size() {
+        return Math.max(0, count.get());
+    }
+
+    @Override
+    public void clear() {
+        writeLock.lock();
+        readLock.lock();
+        try {
+            checkOpen();
+            readOffset = writeOffset;
+            count.set(0);
+            pendingLeases.clear();
+            acknowledge(readOffset);
+        } finally {
+            readLock.unlock();
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 关闭队列，将所有的数据和消费位置刷到磁盘，关闭后不能再使用
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        flushThread.interrupt();
+        try {
+            flushThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+
+        //等待正在执行的读写操作完成后释放所有的映射区域，之后的读写操作会检查closed并抛出异常
+        writeLock.lock();
+        readLock.lock();
+        try {
+            for (Segment segment : segments.values()) {
+                segment.release();
+            }
+            segments.clear();
+            pendingLeases.clear();
+            synchronized (offsetBuffer) {
+                offsetReleased = true;
+                MappedBufferUtils.unmap(offsetBuffer);
+            }
+        } finally {
+            readLock.unlock();
+            writeLock.unlock();
+        }
+        try {
+            offsetFile.close();
+        } catch (IOException e) {
+            LOGGER.warn("关闭持久化队列的offset文件时发生异常：" + directory.getAbsolutePath(), e);
+        }
+    }
+
+    //追加一条记录，返回记录的结束位置，调用方需要持有writeLock
+    private long append(byte[] bytes) {
+        int recordSize = HEADER_SIZE + bytes.length;
+        int position = (int) (pendingWriteOffset - writeSegment.base);
+        if (position + recordSize > writeSegment.capacity) {
+            rollSegment(position);
+            position = 0;
+        }
+
+        ByteBuffer buffer = writeSegment.buffer.duplicate();
+        int end = position + recordSize;
+        if (end + 4 <= writeSegment.capacity) {
+            buffer.putInt(end, 0);                  //结束标记，重启时遇到该标记表示没有更多的记录
+        }
+        buffer.position(position + HEADER_SIZE);
+        buffer.put(bytes);
+        buffer.putInt(position + 4, checksum(writeCrc, bytes, writeSegment));
+        buffer.putInt(position, bytes.length);
+
+        pendingWriteOffset = writeSegment.base + end;
+        markDirty(writeSegment);
+        return pendingWriteOffset;
+    }
+
+    //写入分段结束标记，并切换到下一个分段，调用方需要持有writeLock
+    private void rollSegment(int position) {
+        if (position + 4 <= writeSegment.capacity) {
+            writeSegment.buffer.duplicate().putInt(position, END_OF_SEGMENT);
+        }
+        markDirty(writeSegment);
+        long base = writeSegment.end();
+        writeSegment = openSegment(base);
+        segments.put(base, writeSegment);
+        pendingWriteOffset = base;
+    }
+
+    //读取下一条记录，队列为空时返回null，调用方需要持有readLock
+    private byte[] read() {
+        while (readOffset < writeOffset) {
+            Map.Entry<Long, Segment> entry = segments.floorEntry(readOffset);
+            Segment segment = entry.getValue();
+            int position = (int) (readOffset - segment.base);
+            ByteBuffer buffer = segment.buffer.duplicate();
+            int length = (position + 4 <= segment.capacity) ? buffer.getInt(position) : END_OF_SEGMENT;
+            if (length == END_OF_SEGMENT) {
+                readOffset = segment.end();         //切换到下一个分段
+                continue;
+            }
+
+            byte[] bytes = new byte[length];
+            buffer.position(position + HEADER_SIZE);
+            buffer.get(bytes);
+            readOffset += HEADER_SIZE + length;
+            count.decrementAndGet();
+            return bytes;
+        }
+        return null;
+    }
+
+    //连续读取最多number条记录，调用方需要持有readLock
+    private void readTo(List<byte[]> list, int number) {
+        for (int i = 0; i < number; i++) {
+            byte[] bytes = read();
+            if (bytes == null) {        //如果队列为空了，那么直接跳出循环
+                break;
+            }
+            list.add(bytes);
+        }
+    }
+
+    //在锁外完成反序列化
+    private Collection<T> deserialize(List<byte[]> list) {
+        Collection<T> collection = new ArrayList<>(list.size());
+        for (byte[] bytes : list) {
+            collection.add(serializer.deserialize(bytes));
+        }
+        return collection;
+    }
+
+    //通过poll方法取出了从start开始的对象：自动确认时立即确认，否则记录为当前线程待确认的批次，调用方需要持有readLock
+    private void taken(long start) {
+        if (!autoAcknowledge) {
+            pendingLeases.addLast(new Lease(start, Thread.currentThread()));
+        }
+        commit();
+    }
+
+    //通过回执确认一批对象
+    private void release(Lease lease) {
+        readLock.lock();
+        try {
+            if (!closed && pendingLeases.remove(lease)) {
+                commit();
+            }
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    //将确认位置推进到最早一批尚未确认的对象，没有待确认的批次时推进到读取位置，调用方需要持有readLock
+    private void commit() {
+        Lease first = pendingLeases.peekFirst();
+        long offset = (first == null) ? readOffset : first.start;
+        if (offset > ackOffset) {
+            acknowledge(offset);
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("持久化队列已经关闭：" + directory.getAbsolutePath());
+        }
+    }
+
+    //更新确认位置，并回收所有数据都已确认的分段，调用方需要持有readLock
+    private void acknowledge(long offset) {
+        ackOffset = offset;
+        offsetBuffer.putLong(0, offset);
+        while (true) {
+            Map.Entry<Long, Segment> entry = segments.firstEntry();
+            if (entry == null || entry.getValue().end() > offset || entry.getValue() == writeSegment) {
+                break;
+            }
+            segments.remove(entry.getKey());
+            recycle(entry.getValue());
+        }
+    }
+
+    //等待包含指定位置的数据刷到磁盘
+    private void awaitFlush(long end) {
+        if (!syncWrite) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            flushRequested.signal();
+            while (flushedOffset < end && !closed) {
+                flushCompleted.await(100, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    //后台刷盘线程的执行方法
+    private void flushLoop() {
+        while (!closed) {
+            flushLock.lock();
+            try {
+                flushRequested.awaitNanos(flushIntervalNanos);
+            } catch (InterruptedException e) {
+                break;
+            } finally {
+                flushLock.unlock();
+            }
+            try {
+                flush();
+            } catch (Exception e) {
+                LOGGER.error("持久化队列刷盘时发生异常：" + directory.getAbsolutePath(), e);
+            }
+        }
+    }
+
+    //将所有未刷盘的数据和确认位置刷到磁盘
+    private void flush() {
+        long offset = writeOffset;
+        long acknowledged = ackOffset;
+        List<Segment> segmentList;
+        flushLock.lock();
+        try {
+            if (dirtySegments.isEmpty() && acknowledged == flushedAckOffset) {
+                return;
+            }
+            segmentList = new ArrayList<>(dirtySegments);
+            dirtySegments.clear();
+        } finally {
+            flushLock.unlock();
+        }
+
+        for (Segment segment : segmentList) {
+            segment.force();
+        }
+        if (acknowledged != flushedAckOffset) {
+            synchronized (offsetBuffer) {
+                if (!offsetReleased) {
+                    offsetBuffer.force();
+                }
+            }
+        }
+
+        flushLock.lock();
+        try {
+            flushedOffset = Math.max(flushedOffset, offset);
+            flushedAckOffset = acknowledged;
+            flushCompleted.signalAll();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void markDirty(Segment segment) {
+        flushLock.lock();
+        try {
+            dirtySegments.add(segment);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    //从磁盘中恢复队列：读取确认位置，删除已经确认的分段，并扫描未确认的记录找到写入位置
+    private void recover() throws IOException {
+        long offset = offsetBuffer.getLong(0);
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                long base;
+                try {
+                    base = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                int capacity = (int) Math.min(Integer.MAX_VALUE, file.length());
+                if (base + capacity <= offset || capacity <= HEADER_SIZE) {
+                    recycle(file);
+                } else {
+                    segments.put(base, new Segment(base, file, capacity));
+                }
+            }
+        }
+
+        if (segments.isEmpty()) {
+            segments.put(offset, openSegment(offset));
+        } else if (segments.firstKey() > offset) {
+            offset = segments.firstKey();          //确认位置所在的分段已经不存在，从最早的分段开始读取
+        }
+
+        long position = offset;
+        long records = 0;
+        for (Segment segment : segments.values()) {
+            ScanResult result = scan(segment, Math.max(position, segment.base));
+            records += result.records;
+            position = segment.base + result.position;
+            Long nextBase = segments.higherKey(segment.base);
+            if (nextBase == null) {
+                break;
+            }
+            if (!result.endOfSegment) {
+                LOGGER.warn("持久化队列的分段[" + segment.file.getName() + "]中存在不完整的记录，之后的分段将被丢弃");
+                while (segments.lastKey() > segment.base) {
+                    recycle(segments.pollLastEntry().getValue());
+                }
+                break;
+            }
+            position = nextBase;
+        }
+
+        writeSegment = segments.lastEntry().getValue();
+        pendingWriteOffset = position;
+        writeOffset = position;
+        readOffset = offset;
+        ackOffset = offset;
+        flushedOffset = position;
+        flushedAckOffset = offset;
+        count.set(records);
+    }
+
+    //扫描分段中从指定位置开始的有效记录
+    private ScanResult scan(Segment segment, long offset) {
+        ScanResult result = new ScanResult();
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int position = (int) (offset - segment.base);
+        while (position + 4 <= segment.capacity) {
+            int length = buffer.getInt(position);
+            if (length == END_OF_SEGMENT) {
+                result.endOfSegment = true;
+                break;
+            }
+            if (length <= 0 || position + HEADER_SIZE + length > segment.capacity) {
+                break;
+            }
+            byte[] bytes = new byte[length];
+            buffer.position(position + HEADER_SIZE);
+            buffer.get(bytes);
+            if (buffer.getInt(position + 4) != checksum(readCrc, bytes, segment)) {
+                break;                              //不完整的记录，或者是回收分段中遗留的旧数据
+            }
+            position += HEADER_SIZE + length;
+            result.records++;
+        }
+        if (position + 4 > segment.capacity) {
+            result.endOfSegment = true;             //剩余空间不足以写入结束标记，之后的记录在下一个分段中
+        }
+        result.position = position;
+        return result;
+    }
+
+    //创建新的分段，优先使用回收的分段文件
+    private Segment openSegment(long base) {
+        File file = new File(directory, String.format("%020d", base) + SEGMENT_SUFFIX);
+        File recycledFile;
+        synchronized (recycledFiles) {
+            recycledFile = recycledFiles.poll();
+        }
+        if (recycledFile != null && !recycledFile.renameTo(file)) {
+            recycledFile.delete();
+        }
+        try {
+            return new Segment(base, file, segmentSize);
+        } catch (IOException e) {
+            throw new IllegalStateException("创建持久化队列的分段文件失败：" + file.getAbsolutePath(), e);
+        }
+    }
+
+    //释放分段映射的区域后再回收分段文件，否则删除的文件仍然占用磁盘空间，Windows下也不能重命名和删除
+    private void recycle(Segment segment) {
+        flushLock.lock();
+        try {
+            dirtySegments.remove(segment);
+        } finally {
+            flushLock.unlock();
+        }
+        segment.release();
+        recycle(segment.file);
+    }
+
+    //回收分段文件，超过保留数量的文件直接删除
+    private void recycle(File file) {
+        synchronized (recycledFiles) {
+            if (recycledFiles.size() < MAX_RECYCLED_SEGMENTS && file.length() == segmentSize) {
+                recycledFiles.add(file);
+                return;
+            }
+        }
+        if (!file.delete()) {
+            LOGGER.warn("删除持久化队列的分段文件失败：" + file.getAbsolutePath());
+        }
+    }
+
+    private byte[] serialize(T t) {
+        byte[] bytes = serializer.serialize(t);
+        Validate.isTrue(bytes != null && bytes.length > 0, "对象序列化后的内容不能为空！");
+        Validate.isTrue(HEADER_SIZE + bytes.length + 4 <= segmentSize, "对象序列化后的大小[%s]超过了分段大小[%s]！", bytes.length, segmentSize);
+        return bytes;
+    }
+
+    //计算记录的校验码，校验码中包含分段的起始偏移量，回收分段中遗留的旧记录无法通过校验
+    private static int checksum(CRC32 crc, byte[] bytes, Segment segment) {
+        crc.reset();
+        crc.update(bytes, 0, bytes.length);
+        return (int) crc.getValue() ^ segment.baseHash;
+    }
+}
@@ -0,0 +1,20 @@
+package com.dongzy.common.mq;
+
+/**
+ * 需要在对象处理完毕后确认的队列，如{@link FileQueue}，没有确认的对象在重启后会被重新投递
+ * {@link QueueSetListener}监听的子队列实现了本接口时，通过{@link #pollUnacknowledged(int)}获取对象，
+ * 并在一批对象全部处理完毕（处理成功或者放入死信队列）后确认，从而保证对象至少被处理一次
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public interface IAcknowledgeableQueue<T> extends IQueue<T> {
+
+    /**
+     * 取出一批对象，这批对象在调用回执的acknowledge方法后才被确认，与其他批次的确认顺序无关
+     *
+     * @param number 获取的数量
+     * @return 这批对象的回执，队列为空时回执中的对象个数为0
+     */
+    IQueueReceipt<T> pollUnacknowledged(int number);
+}
@@ -0,0 +1,43 @@
+package com.dongzy.common.mq;
+
+/**
+ * 逐个确认对象处理结果的接口，由监听器传给{@link QueueSetAckReceiver}
+ * 确认失败的对象会按照监听器的重试策略延迟后重新处理，超过最大处理次数后进入死信队列
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public interface IAcknowledgment<T> {
+
+    /**
+     * 确认对象处理成功
+     *
+     * @param object 本批次中的对象
+     */
+    void ack(T object);
+
+    /**
+     * 确认对象处理失败
+     *
+     * @param object 本批次中的对象
+     * @param cause  失败的原因，可以为null
+     */
+    void nack(T object, Throwable cause);
+
+    /**
+     * 确认对象处理失败
+     *
+     * @param object 本批次中的对象
+     */
+    default void nack(T object) {
+        nack(object, null);
+    }
+
+    /**
+     * 获取对象已经被处理的次数（包含本次），第一次处理时为1
+     *
+     * @param object 本批次中的对象
+     * @return 已经被处理的次数
+     */
+    int getAttempts(T object);
+}
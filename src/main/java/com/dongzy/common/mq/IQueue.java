@@ -29,6 +29,21 @@ public interface IQueue<T> {
      */
     boolean add(Collection<T> collection);
 
+    /**
+     * 尝试添加一个对象到队列中，与add方法的区别是超过队列长度限制时返回false，而不是抛出异常
+     *
+     * @param e 需要添加到队列中的对象
+     * @return 是否添加成功
+     * @throws NullPointerException 如果插入的值为null，会抛出异常
+     */
+    default boolean offer(T e) {
+        try {
+            return add(e);
+        } catch (IllegalStateException ex) {
+            return false;
+        }
+    }
+
     /**
      * 从队列中获取对象，如果队列为空，那么将返回NULL
      *
@@ -0,0 +1,24 @@
+package com.dongzy.common.mq;
+
+import java.util.Collection;
+
+/**
+ * 从{@link IAcknowledgeableQueue}中取出的一批对象的回执
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public interface IQueueReceipt<T> {
+
+    /**
+     * 获取这批对象
+     *
+     * @return 取出的对象
+     */
+    Collection<T> getObjects();
+
+    /**
+     * 确认这批对象已经处理完毕，重复调用时不做任何处理
+     */
+    void acknowledge();
+}
@@ -0,0 +1,29 @@
+package com.dongzy.common.mq;
+
+/**
+ * 监听线程在队列为空时的等待策略接口，不同的策略在唤醒延迟和空闲时的CPU占用之间做不同的取舍：
+ * 1、{@link BlockingWaitStrategy}：阻塞等待，空闲时几乎不占用CPU，由队列集在添加对象时唤醒
+ * 2、{@link ParkingWaitStrategy}：先自旋，再让出CPU，最后逐步延长挂起时间，兼顾延迟和CPU占用（默认策略）
+ * 3、{@link YieldingWaitStrategy}：自旋后持续让出CPU，延迟低，但空闲时仍然占用CPU
+ * 4、{@link BusySpinWaitStrategy}：持续自旋，延迟最低，空闲时每个线程占满一个CPU核心
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public interface IWaitStrategy {
+
+    /**
+     * 队列为空时执行一次等待，返回后调用方会重新从队列中获取对象
+     *
+     * @param idleCount 连续等待的次数，获取到对象后由调用方重置为0
+     * @return 新的连续等待次数
+     * @throws InterruptedException 等待过程中线程被中断
+     */
+    int idle(int idleCount) throws InterruptedException;
+
+    /**
+     * 唤醒所有正在等待的线程，队列集添加对象后以及监听器停止时调用，不需要唤醒的策略可以不实现
+     */
+    default void signalAll() {
+    }
+}
@@ -0,0 +1,27 @@
+package com.dongzy.common.mq;
+
+/**
+ * 队列集水位变化的监听接口，生产者可以据此控制添加对象的速度：
+ * 积压的对象数量达到高水位时暂停或放缓生产，回落到低水位时恢复生产
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public interface IWatermarkListener {
+
+    /**
+     * 队列集中的对象数量达到高水位时回调，回落到低水位之前不会重复回调
+     *
+     * @param queueSet 队列集对象
+     * @param size     当前的对象数量
+     */
+    void onHighWatermark(QueueSet<?> queueSet, long size);
+
+    /**
+     * 队列集中的对象数量从高水位回落到低水位时回调
+     *
+     * @param queueSet 队列集对象
+     * @param size     当前的对象数量
+     */
+    void onLowWatermark(QueueSet<?> queueSet, long size);
+}
@@ -0,0 +1,128 @@
+package com.dongzy.common.mq;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 耗时分布的直方图，采用对数线性分桶（与HdrHistogram的思路相同）：
+ * 每个2的幂区间再平均分为16个桶，记录的数值越大桶越宽，相对误差不超过1/16，
+ * 桶的数量固定，记录一次只需要对一个计数加1，不需要获取锁，也不会随着记录次数的增加占用更多内存
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;          //小于该值的数值每个值一个桶
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT >> 1;          //每个2的幂区间的桶数量
+    private static final int BUCKET_COUNT = bucketIndex(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一次耗时
+     *
+     * @param value 耗时，小于0时按0记录
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        buckets.incrementAndGet(bucketIndex(value));
+        count.increment();
+        total.add(value);
+        long current;
+        while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+            //其他线程同时更新了最大值，重新比较
+        }
+    }
+
+    /**
+     * 获取记录的次数
+     *
+     * @return 记录的次数
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * 获取记录的最大值
+     *
+     * @return 最大值，没有记录时返回0
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * 获取记录的平均值
+     *
+     * @return 平均值，没有记录时返回0
+     */
+    public double getMean() {
+        long countValue = count.sum();
+        return (countValue == 0) ? 0.0 : (double) total.sum() / countValue;
+    }
+
+    /**
+     * 获取指定百分位的数值，返回所在桶的上边界（不超过记录的最大值）
+     *
+     * @param percentile 百分位，取值范围0到100，如99.9
+     * @return 指定百分位的数值，没有记录时返回0
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = new long[BUCKET_COUNT];
+        long countValue = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            countValue += counts[i];
+        }
+        if (countValue == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100.0, Math.max(0.0, percentile)) / 100.0 * countValue));
+        long accumulated = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            accumulated += counts[i];
+            if (accumulated >= rank) {
+                return Math.min(bucketUpperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * 清空所有的记录
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        max.set(0);
+    }
+
+    //计算数值所在的桶：小于SUB_BUCKET_COUNT的数值每个值一个桶，其余数值按最高位所在的2的幂区间分组，每组SUB_BUCKET_HALF个桶
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+        return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+    }
+
+    //桶内的最大数值
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF - 1;
+        long subBucket = index % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
@@ -49,6 +49,12 @@ public class MemoryQueue<T> implements IQueue<T> {
         return true;
     }
 
+    @Override
+    public boolean offer(T t) {
+        Validate.notNull(t);
+        return queue.offer(t);
+    }
+
     @Override
     public T poll() {
         return queue.poll();
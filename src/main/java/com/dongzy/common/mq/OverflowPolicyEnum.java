@@ -0,0 +1,28 @@
+package com.dongzy.common.mq;
+
+/**
+ * 子队列已满时，队列集添加对象的溢出处理策略
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public enum OverflowPolicyEnum {
+
+    /**
+     * 阻塞等待子队列有空闲位置，超过等待时间后拒绝添加，计入拒绝数量
+     */
+    BLOCK,
+    /**
+     * 丢弃子队列中最早添加的对象，再添加新对象，丢弃的对象计入丢弃数量
+     */
+    DROP_OLDEST,
+    /**
+     * 丢弃正在添加的新对象，计入丢弃数量（默认策略）
+     */
+    DROP_NEWEST,
+    /**
+     * 由添加对象的线程直接调用处理程序处理该对象，未设置处理程序时拒绝添加，计入拒绝数量
+     */
+    CALLER_RUNS
+
+}
@@ -0,0 +1,60 @@
+package com.dongzy.common.mq;
+
+import com.dongzy.common.common.Validate;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 逐步退避的等待策略，队列为空时先自旋，再让出CPU，最后挂起线程，挂起时间从1微秒开始逐次翻倍，直到设定的上限
+ * 刚变为空闲的线程能够很快地获取到新的对象，长时间空闲的线程每次挂起的时间为上限值，几乎不占用CPU
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public class ParkingWaitStrategy implements IWaitStrategy {
+
+    private final int spinTries;
+    private final int yieldTries;
+    private final long maxParkNanos;
+
+    /**
+     * 默认构造函数，自旋100次，让出CPU100次，最长挂起1毫秒
+     */
+    public ParkingWaitStrategy() {
+        this(100, 100, 1, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 根据传入的参数构造函数
+     *
+     * @param spinTries  自旋的次数
+     * @param yieldTries 让出CPU的次数
+     * @param maxPark    最长的挂起时间
+     * @param timeUnit   时间单位
+     */
+    public ParkingWaitStrategy(int spinTries, int yieldTries, long maxPark, TimeUnit timeUnit) {
+        Validate.isTrue(spinTries >= 0 && yieldTries >= 0, "自旋和让出CPU的次数不能小于0！");
+        Validate.isTrue(maxPark > 0, "最长的挂起时间必须大于0！");
+        this.spinTries = spinTries;
+        this.yieldTries = yieldTries;
+        this.maxParkNanos = timeUnit.toNanos(maxPark);
+    }
+
+    @Override
+    public int idle(int idleCount) throws InterruptedException {
+        if (idleCount < spinTries) {
+            return idleCount + 1;
+        }
+        if (idleCount < spinTries + yieldTries) {
+            Thread.yield();
+            return idleCount + 1;
+        }
+        int parkCount = Math.min(idleCount - spinTries - yieldTries, 40);
+        LockSupport.parkNanos(Math.min(maxParkNanos, 1000L << parkCount));
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        return (idleCount == Integer.MAX_VALUE) ? idleCount : idleCount + 1;
+    }
+}
@@ -1,15 +1,33 @@
 package com.dongzy.common.mq;
 
+import com.dongzy.common.common.Validate;
 import com.dongzy.common.log.TextLoggerFactory;
 import org.slf4j.Logger;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 /**
  * 队列集对象，包含一个多个标准的队列对象，如果往队列集合中插入多个元素，会自动平分到各个子队列中
+ * <p>
+ * 添加对象时不需要获取队列集的锁，多个线程可以同时添加对象。设置了分区函数（setPartitioner）后，
+ * 分区key相同的对象总是被添加到同一个子队列中，配合每个子队列只有一个监听线程的监听器，可以保证同一个key的对象按顺序处理，
+ * 不同key的对象并行处理
+ * <p>
+ * 流量控制：子队列已满时按照溢出策略（setOverflowPolicy）处理新对象，可以阻塞等待、丢弃最早的对象、丢弃新对象或者由添加对象的线程直接处理，
+ * 被拒绝和被丢弃的对象数量分别通过getRejectedNumber和getDroppedNumber获取，需要知道每次添加结果的调用方使用offer方法。
+ * 通过setWatermarks设置高低水位后，积压的对象数量达到高水位和回落到低水位时会通知监听者，生产者可以据此控制添加对象的速度
  *
  * @author zouyong
  * @since JDK1.6
@@ -17,11 +35,31 @@ import java.util.List;
 public class QueueSet<T> {
 
     private final static Logger LOGGER = TextLoggerFactory.getInstance().getLogger(QueueSet.class);
-    private List<IQueue<T>> subQueues;
+    //阻塞策略下，等待空闲位置的最长单次挂起时间，防止子队列不是由监听器消费时无法被唤醒
+    private final static long MAX_BLOCK_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    //逐个添加和取出对象时，每隔多少次操作统计一次队列集的大小并检查水位（必须是2的幂）
+    private final static int WATERMARK_CHECK_INTERVAL = 64;
+
+    private volatile List<IQueue<T>> subQueues;
     private Class<? extends IQueue<T>> queueClass;
-    private int index = 0;
+    private final AtomicInteger index = new AtomicInteger();      //下一个添加对象的子队列
+    private volatile Function<? super T, ?> partitioner;           //分区函数，为null表示轮流添加到各个子队列
     private int queueTotal = 1;
     private int maxCapacity = 20_000;       //队列容量的最大值（本值只是一个大概的范围，不一定等于实际的最大大小）
+    private final List<IWaitStrategy> waitStrategies = new CopyOnWriteArrayList<>();     //监听本队列集的等待策略
+    private volatile OverflowPolicyEnum overflowPolicy = OverflowPolicyEnum.DROP_NEWEST;      //子队列已满时的溢出策略
+    private volatile long blockTimeoutNanos = TimeUnit.SECONDS.toNanos(1);                    //阻塞策略下的最长等待时间
+    private volatile QueueSetReceiver<T> callerRunsReceiver;                                  //由添加对象的线程直接处理时的处理程序
+    private final LongAdder rejectedNumber = new LongAdder();      //被拒绝添加的对象数量
+    private final LongAdder droppedNumber = new LongAdder();       //被丢弃的对象数量
+    private final ReentrantLock notFullLock = new ReentrantLock();
+    private final Condition notFull = notFullLock.newCondition();
+    private final AtomicInteger blockedProducers = new AtomicInteger();      //正在等待空闲位置的生产者数量
+    private volatile IWatermarkListener watermarkListener;         //水位变化的监听者，为null表示不检查水位
+    private volatile long highWatermark;
+    private volatile long lowWatermark;
+    private final AtomicBoolean aboveHighWatermark = new AtomicBoolean();     //是否处于高水位状态
+    private final AtomicInteger watermarkTicks = new AtomicInteger();         //距离上次检查水位的操作计数
 
     /**
      * 根据传入的参数构造函数
@@ -88,21 +126,130 @@ public class QueueSet<T> {
      * @return 子队列集合
      */
     public List<IQueue<T>> getSubQueues() {
-        if (subQueues == null) {
-            int size = maxCapacity / queueTotal;
-            subQueues = new ArrayList<>(queueTotal);
-            for (int i = 0; i < queueTotal; i++) {
-                IQueue<T> queue;
-                try {
-                    Constructor<? extends IQueue<T>> constructor = queueClass.getDeclaredConstructor(new Class[]{int.class});
-                    queue = constructor.newInstance(size);
-                    subQueues.add(queue);
-                } catch (Exception e) {
-                    //TODO 忽略异常内容
+        List<IQueue<T>> queues = subQueues;
+        if (queues == null) {
+            synchronized (this) {
+                queues = subQueues;
+                if (queues == null) {
+                    int size = maxCapacity / queueTotal;
+                    queues = new ArrayList<>(queueTotal);
+                    for (int i = 0; i < queueTotal; i++) {
+                        try {
+                            Constructor<? extends IQueue<T>> constructor = queueClass.getDeclaredConstructor(new Class[]{int.class});
+                            queues.add(constructor.newInstance(size));
+                        } catch (Exception e) {
+                            LOGGER.error("创建子队列失败，子队列类型为：" + queueClass, e);
+                        }
+                    }
+                    subQueues = queues;
                 }
             }
         }
-        return subQueues;
+        return queues;
+    }
+
+    /**
+     * 设置分区函数，分区key相同的对象总是被添加到同一个子队列中，key为null的对象添加到第一个子队列
+     * 分区模式下，监听器不会进行工作窃取，每个子队列最多只有一个监听线程，以保证同一个key的对象按顺序处理
+     *
+     * @param partitioner 根据对象获取分区key的函数，为null时取消分区
+     */
+    public void setPartitioner(Function<? super T, ?> partitioner) {
+        this.partitioner = partitioner;
+    }
+
+    /**
+     * 判断是否设置了分区函数
+     *
+     * @return 是否为分区模式
+     */
+    public boolean isPartitioned() {
+        return partitioner != null;
+    }
+
+    /**
+     * 设置子队列已满时的溢出策略，默认为丢弃新对象
+     *
+     * @param overflowPolicy 溢出策略
+     */
+    public void setOverflowPolicy(OverflowPolicyEnum overflowPolicy) {
+        Validate.notNull(overflowPolicy, "overflowPolicy对象不能为null。");
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * 获取子队列已满时的溢出策略
+     *
+     * @return 溢出策略
+     */
+    public OverflowPolicyEnum getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * 设置阻塞策略下等待空闲位置的最长时间，默认为1秒
+     *
+     * @param timeout  等待的最长时间
+     * @param timeUnit 时间单位
+     */
+    public void setBlockTimeout(long timeout, TimeUnit timeUnit) {
+        Validate.isTrue(timeout >= 0, "等待时间不能小于0！");
+        Validate.notNull(timeUnit, "timeUnit对象不能为null。");
+        this.blockTimeoutNanos = timeUnit.toNanos(timeout);
+    }
+
+    /**
+     * 设置由添加对象的线程直接处理对象时使用的处理程序，溢出策略为CALLER_RUNS时有效，处理程序必须是线程安全的
+     *
+     * @param callerRunsReceiver 处理程序
+     */
+    public void setCallerRunsReceiver(QueueSetReceiver<T> callerRunsReceiver) {
+        this.callerRunsReceiver = callerRunsReceiver;
+    }
+
+    /**
+     * 设置高低水位以及水位变化的监听者
+     *
+     * 为了避免每次添加和取出对象都统计所有子队列的大小，逐个添加和取出对象时每{@value #WATERMARK_CHECK_INTERVAL}次操作才检查一次水位，
+     * 批量添加对象以及监听线程空闲时总是检查，因此通知时的对象数量可能略微越过设置的水位
+     *
+     * @param highWatermark 高水位，队列集中的对象数量达到该值时通知监听者
+     * @param lowWatermark  低水位，达到高水位后对象数量回落到该值时通知监听者
+     * @param listener      水位变化的监听者，为null时不再检查水位
+     */
+    public void setWatermarks(long highWatermark, long lowWatermark, IWatermarkListener listener) {
+        Validate.isTrue(lowWatermark >= 0 && lowWatermark < highWatermark, "低水位必须大于等于0，并且小于高水位！");
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        this.aboveHighWatermark.set(false);
+        this.watermarkListener = listener;
+    }
+
+    /**
+     * 判断队列集当前是否处于高水位状态（达到高水位后尚未回落到低水位）
+     *
+     * @return 是否处于高水位状态
+     */
+    public boolean isAboveHighWatermark() {
+        return aboveHighWatermark.get();
+    }
+
+    /**
+     * 获取被拒绝添加的对象数量（阻塞等待超时、由添加对象的线程处理时未设置处理程序或者处理失败）
+     *
+     * @return 被拒绝添加的对象数量
+     */
+    public long getRejectedNumber() {
+        return rejectedNumber.sum();
+    }
+
+    /**
+     * 获取子队列已满时被丢弃的对象数量
+     *
+     * @return 被丢弃的对象数量
+     */
+    public long getDroppedNumber() {
+        return droppedNumber.sum();
     }
 
     /**
@@ -110,7 +257,7 @@ public class QueueSet<T> {
      *
      * @return 元素个数的总和
      */
-    public synchronized long size() {
+    public long size() {
         long longValue = 0;
         for (IQueue<T> queue : getSubQueues()) {
             longValue += queue.size();
@@ -119,45 +266,276 @@ public class QueueSet<T> {
     }
 
     /**
-     * 添加对象到队列集合中
+     * 添加对象到队列集合中，子队列已满时按照溢出策略处理
      *
      * @param item 需要添加的对象
      */
     public void put(T item) {
+        offer(item);
+    }
+
+    /**
+     * 添加多个对象到队列集合中，子队列已满时按照溢出策略逐个处理，不会影响其余对象的添加
+     *
+     * @param items 需要添加的对象集合
+     */
+    public void put(Collection<T> items) {
+        offer(items);
+    }
+
+    /**
+     * 添加对象到队列集合中，子队列已满时按照溢出策略处理，并返回对象是否被接收
+     *
+     * @param item 需要添加的对象
+     * @return 对象是否被接收（添加到子队列中，或者由当前线程处理完毕）
+     */
+    public boolean offer(T item) {
+        boolean accepted = false;
         if (item != null) {
-            Collection<T> collection = new ArrayList<>(1);
-            collection.add(item);
-            put(collection);
+            try {
+                List<IQueue<T>> queues = getSubQueues();
+                Function<? super T, ?> function = partitioner;
+                int queueIndex = (function == null) ? nextIndex(queues.size()) : partition(function.apply(item), queues.size());
+                accepted = offerTo(queues.get(queueIndex), item);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                LOGGER.error("将对象添加到队列时发生异常！", e);
+            } finally {
+                signalAll();
+                tickWatermark();
+            }
         }
+        return accepted;
     }
 
     /**
-     * 添加多个对象到队列集合中
+     * 添加多个对象到队列集合中，子队列已满时按照溢出策略逐个处理，不会影响其余对象的添加，并返回被接收的对象数量
      *
      * @param items 需要添加的对象集合
+     * @return 被接收的对象数量（添加到子队列中，或者由当前线程处理完毕）
      */
-    public synchronized void put(Collection<T> items) {
+    public int offer(Collection<T> items) {
+        int accepted = 0;
         try {
+            List<IQueue<T>> queues = getSubQueues();
+            Function<? super T, ?> function = partitioner;
+            if (function != null) {
+                accepted = putPartitioned(queues, items, function);
+                return accepted;
+            }
+
             T item;
-            final int size = items.size() / queueTotal + 1;
+            final int queueCount = queues.size();
+            final int size = items.size() / queueCount + 1;
             final Iterator<T> iterator = items.iterator();     //获取迭代器
+            int queueIndex = nextIndex(queueCount);
 
-            for (int i = 0; i < queueTotal; i++) {      //遍历所有的子队列
-                IQueue<T> queue = getSubQueues().get(index);
+            for (int i = 0; i < queueCount; i++) {      //遍历所有的子队列
+                IQueue<T> queue = queues.get(queueIndex);
                 for (int j = 0; j < size; j++) {
                     if (iterator.hasNext()) {
                         item = iterator.next();
-                        if (item != null) {
-                            queue.add(item);
+                        if (item != null && offerTo(queue, item)) {
+                            accepted++;
                         }
                     } else {
-                        return;
+                        return accepted;
                     }
                 }
-                index = (index > queueTotal - 2) ? 0 : index + 1;
+                queueIndex = (queueIndex + 1 == queueCount) ? 0 : queueIndex + 1;
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (Exception e) {
             LOGGER.error("将对象添加到队列时发生异常！", e);
+        } finally {
+            signalAll();
+            checkWatermark();
+        }
+        return accepted;
+    }
+
+    //按照分区key将对象分组后逐个子队列添加，同一个子队列中的对象保持原有的顺序
+    private int putPartitioned(List<IQueue<T>> queues, Collection<T> items, Function<? super T, ?> function)
+            throws InterruptedException {
+        final int queueCount = queues.size();
+        List<List<T>> groups = new ArrayList<>(queueCount);
+        for (int i = 0; i < queueCount; i++) {
+            groups.add(null);
+        }
+        for (T item : items) {
+            if (item != null) {
+                int queueIndex = partition(function.apply(item), queueCount);
+                List<T> group = groups.get(queueIndex);
+                if (group == null) {
+                    group = new ArrayList<>();
+                    groups.set(queueIndex, group);
+                }
+                group.add(item);
+            }
+        }
+        int accepted = 0;
+        for (int i = 0; i < queueCount; i++) {
+            List<T> group = groups.get(i);
+            if (group != null) {
+                IQueue<T> queue = queues.get(i);
+                for (T item : group) {
+                    if (offerTo(queue, item)) {
+                        accepted++;
+                    }
+                }
+            }
+        }
+        return accepted;
+    }
+
+    //添加一个对象到子队列中，子队列已满时按照溢出策略处理，返回对象是否被接收
+    private boolean offerTo(IQueue<T> queue, T item) throws InterruptedException {
+        if (queue.offer(item)) {
+            return true;
+        }
+        switch (overflowPolicy) {
+            case BLOCK:
+                if (awaitOffer(queue, item)) {
+                    return true;
+                }
+                rejectedNumber.increment();
+                return false;
+            case DROP_OLDEST:
+                while (!queue.offer(item)) {
+                    if (queue.poll() != null) {
+                        droppedNumber.increment();
+                    } else {
+                        Thread.yield();             //其他生产者抢占了腾出的位置
+                    }
+                }
+                return true;
+            case CALLER_RUNS:
+                QueueSetReceiver<T> receiver = callerRunsReceiver;
+                if (receiver != null) {
+                    try {
+                        receiver.receive(Collections.singletonList(item));
+                        return true;
+                    } catch (Exception e) {
+                        LOGGER.error("由添加对象的线程处理对象时发生异常！", e);
+                    }
+                }
+                rejectedNumber.increment();
+                return false;
+            default:
+                droppedNumber.increment();
+                return false;
+        }
+    }
+
+    //阻塞等待子队列有空闲位置，超过等待时间返回false
+    private boolean awaitOffer(IQueue<T> queue, T item) throws InterruptedException {
+        long nanos = blockTimeoutNanos;
+        final long deadline = System.nanoTime() + nanos;
+        blockedProducers.incrementAndGet();         //先登记再检查，保证消费者取出对象后能看到等待的生产者
+        try {
+            notFullLock.lockInterruptibly();
+            try {
+                while (!queue.offer(item)) {
+                    nanos = deadline - System.nanoTime();
+                    if (nanos <= 0) {
+                        return false;
+                    }
+                    notFull.awaitNanos(Math.min(nanos, MAX_BLOCK_WAIT_NANOS));
+                }
+                return true;
+            } finally {
+                notFullLock.unlock();
+            }
+        } finally {
+            blockedProducers.decrementAndGet();
+        }
+    }
+
+    //累计一次操作，每WATERMARK_CHECK_INTERVAL次操作检查一次水位
+    private void tickWatermark() {
+        if (watermarkListener != null && (watermarkTicks.incrementAndGet() & (WATERMARK_CHECK_INTERVAL - 1)) == 0) {
+            checkWatermark();
+        }
+    }
+
+    /**
+     * 检查队列集的水位，达到高水位或者回落到低水位时通知监听者；监听线程空闲时调用，保证对象被取完后能及时通知回落到低水位
+     */
+    void checkWatermark() {
+        IWatermarkListener listener = watermarkListener;
+        if (listener == null) {
+            return;
+        }
+        try {
+            if (aboveHighWatermark.get()) {
+                long size = size();
+                if (size <= lowWatermark && aboveHighWatermark.compareAndSet(true, false)) {
+                    listener.onLowWatermark(this, size);
+                }
+            } else {
+                long size = size();
+                if (size >= highWatermark && aboveHighWatermark.compareAndSet(false, true)) {
+                    listener.onHighWatermark(this, size);
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.error("通知队列集水位变化时发生异常！", e);
+        }
+    }
+
+    /**
+     * 从子队列中取出对象后由监听器调用，唤醒等待空闲位置的生产者，并定期检查是否回落到低水位
+     */
+    void signalNotFull() {
+        if (blockedProducers.get() > 0) {
+            notFullLock.lock();
+            try {
+                notFull.signalAll();
+            } finally {
+                notFullLock.unlock();
+            }
+        }
+        tickWatermark();
+    }
+
+    //获取下一个轮流添加对象的子队列
+    private int nextIndex(int queueCount) {
+        return Math.floorMod(index.getAndIncrement(), queueCount);
+    }
+
+    //根据分区key计算子队列的位置
+    private static int partition(Object key, int queueCount) {
+        if (key == null) {
+            return 0;
+        }
+        int hash = key.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), queueCount);
+    }
+
+    /**
+     * 注册监听本队列集的等待策略，添加对象后会唤醒该策略中等待的线程
+     *
+     * @param waitStrategy 等待策略
+     */
+    void addWaitStrategy(IWaitStrategy waitStrategy) {
+        waitStrategies.add(waitStrategy);
+    }
+
+    /**
+     * 注销监听本队列集的等待策略
+     *
+     * @param waitStrategy 等待策略
+     */
+    void removeWaitStrategy(IWaitStrategy waitStrategy) {
+        waitStrategies.remove(waitStrategy);
+    }
+
+    //唤醒所有等待策略中正在等待的线程
+    private void signalAll() {
+        for (IWaitStrategy waitStrategy : waitStrategies) {
+            waitStrategy.signalAll();
         }
     }
 
@@ -166,6 +544,7 @@ public class QueueSet<T> {
      */
     public synchronized void clear() {
         getSubQueues().forEach(IQueue::clear);
+        signalNotFull();
     }
 
 }
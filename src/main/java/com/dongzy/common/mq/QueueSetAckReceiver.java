@@ -0,0 +1,51 @@
+package com.dongzy.common.mq;
+
+import java.util.Collection;
+
+/**
+ * 逐个确认处理结果的消息处理接口，与{@link QueueSetReceiver}的区别：
+ * 1、通过{@link IAcknowledgment}逐个确认对象处理成功或失败，确认失败的对象会被重试或者进入死信队列
+ * 2、处理程序正常返回时，没有确认的对象视为处理成功；抛出异常时，没有确认的对象视为处理失败
+ * <p>
+ * 本接口继承了{@link QueueSetReceiver}，可以直接通过监听器的setQueueReceiver方法设置
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public interface QueueSetAckReceiver<T> extends QueueSetReceiver<T> {
+
+    /**
+     * 消息处理回调接口
+     *
+     * @param objects        回调的数据对象
+     * @param acknowledgment 确认处理结果的对象，只在本次回调期间有效
+     */
+    void receive(Collection<T> objects, IAcknowledgment<T> acknowledgment);
+
+    /**
+     * 不需要确认处理结果时的回调，所有对象视为第一次处理，返回确认成功的数量
+     *
+     * @param objects 回调的数据对象
+     * @return 确认成功的数量
+     */
+    @Override
+    default int receive(Collection<T> objects) {
+        final int[] failures = new int[1];
+        receive(objects, new IAcknowledgment<T>() {
+            @Override
+            public void ack(T object) {
+            }
+
+            @Override
+            public void nack(T object, Throwable cause) {
+                failures[0]++;
+            }
+
+            @Override
+            public int getAttempts(T object) {
+                return 1;
+            }
+        });
+        return objects.size() - failures[0];
+    }
+}
@@ -1,18 +1,40 @@
 package com.dongzy.common.mq;
 
+import com.dongzy.common.common.JmxUtils;
 import com.dongzy.common.common.Validate;
 import com.dongzy.common.common.text.StringBuilderExt;
 import com.dongzy.common.log.TextLoggerFactory;
 import org.slf4j.Logger;
 
+import javax.management.ObjectName;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * 消息监听对象，用于监听一个队列的集合
- * 监听器会根据队列集合中队列的数量，创建与之数量匹配的线程，每个线程处理一个队列
+ * 监听器默认根据队列集合中队列的数量，创建与之数量匹配的线程，每个线程处理一个队列；
+ * 也可以通过setThreadTotal方法指定线程的数量，子队列按顺序平均分配给各个线程
+ * <p>
+ * 开启工作窃取（setWorkStealing）后，线程在自己负责的子队列都为空时，会从积压最多的其他子队列中取出一批对象处理，
+ * 避免某个子队列的处理程序较慢时，其积压的对象无法被空闲的线程处理。注意：开启工作窃取后，同一个子队列中的对象不再保证按顺序处理，
+ * 队列集设置了分区函数时不会进行工作窃取
  * <p>
  * 本类的适用场景：
  * 永不停止的循环往复的数据处理场景
@@ -23,6 +45,30 @@ import java.util.concurrent.locks.ReentrantLock;
  * 在所有对象处理完毕后，有后续任务需要执行的场景，因为很难判断是不是所有的数据是不是都已经处理完毕
  * 如：批量处方审核，并附带审核以后需要执行后续操作时，不适用。
  * 如：批量订单处理，并在订单全部处理完以后要触发其他事件，不适用。
+ * <p>
+ * 队列为空时监听线程的等待方式由等待策略（{@link IWaitStrategy}）决定，默认采用{@link ParkingWaitStrategy}，
+ * 可以通过setWaitStrategy方法在唤醒延迟和空闲时的CPU占用之间做取舍
+ * <p>
+ * 执行器模式：处理程序中有阻塞的IO操作（如JDBC、HTTP调用）时，可以通过setVirtualThreads或setExecutorService方法开启执行器模式，
+ * 监听线程只负责从队列中获取对象，每批对象交给执行器中的一个任务处理（JDK21及以上版本可以使用虚拟线程），
+ * 同时处理中的批次数量不超过setMaxConcurrency设置的上限，达到上限后监听线程暂停获取对象。
+ * 注意：执行器模式下，同一个子队列的多批对象可能被并发处理，不再保证按顺序处理
+ * <p>
+ * 自适应批量模式：通过setAdaptiveBatch方法开启后，每个监听线程根据处理程序的耗时自动调整每批对象的数量，
+ * 队列积压并且单个对象的平均耗时没有明显变长时逐步增大批量，耗时明显变长或者队列变浅时减半；
+ * 一批对象没有装满时最多等待maxLinger时间再交给处理程序，适用于批量写数据库等批量越大单个对象成本越低的处理程序
+ * <p>
+ * 运行指标：处理的对象数量、异常次数、吞吐量、各个子队列的积压数量以及每批对象处理耗时的分布，可以通过getStats方法获取，
+ * 通过setName方法命名后还会以MBean的形式发布到JMX中，名称为com.dongzy.common.mq:type=QueueSetListener,name=监听器名称
+ * <p>
+ * 重试和死信：处理程序抛出异常或者无法创建处理程序时，整批对象视为处理失败；普通处理程序返回的成功数量小于批次中对象的数量时，
+ * 批次中前count个对象视为处理成功，其余的对象视为处理失败；实现{@link QueueSetAckReceiver}的处理程序可以逐个确认对象的处理结果。
+ * 通过setRetryPolicy设置最大处理次数后，处理失败的对象按照指数退避的间隔放入延迟队列，由单独的重试线程重新处理，
+ * 超过最大处理次数的对象放入setDeadLetterQueue设置的死信队列。注意：重试的对象不再保证按顺序处理，
+ * 停止监听时尚未重试的对象保留在延迟队列中，再次启动后继续重试
+ * <p>
+ * 持久化队列：子队列实现了{@link IAcknowledgeableQueue}（如{@link FileQueue}）时，每批对象全部处理完毕（处理成功或者放入死信队列）后
+ * 才向子队列确认，等待重试的对象也不会被确认，进程崩溃后尚未确认的对象会被重新投递（至少一次）
  *
  * @author zouyong
  * @since JDK1.6
@@ -30,16 +76,58 @@ import java.util.concurrent.locks.ReentrantLock;
 public class QueueSetListener<T> {
 
     private final static Logger LOGGER = TextLoggerFactory.getInstance().getLogger(QueueSetListener.class);
+    private final static String JMX_DOMAIN = "com.dongzy.common.mq";
+    private final static long THROUGHPUT_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);     //计算吞吐量的最短统计周期
+    //重试线程从延迟队列中获取对象的最长等待时间，等待超时后检查是否终止了监听
+    private final static long RETRY_POLL_MILLIS = 50;
+    //自适应批量模式下凑批时单次挂起的最长时间
+    private final static long LINGER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    //所有监听器共用的工作日志记录线程
+    private final static ScheduledExecutorService WORK_LOG_EXECUTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "QueueSetListener-WorkLog");
+        thread.setDaemon(true);
+        return thread;
+    });
     private QueueSet<T> queueSet;
     private Class<? extends QueueSetReceiver<T>> queueSetReceiverClass;
     private int groupSize = 1;                                          //每次从队列中取对象的数量，默认为每次取一个
     private volatile boolean abort = false;                           //用户是否触发了取消操作
     private volatile boolean busy = false;                            //是否已经启动监听程序；
-    private AtomicLong processedNumber = new AtomicLong();              //记录监听器已经提交的对象数量
-    private AtomicLong processedSuccessNumber = new AtomicLong();       //记录监听器已经成功处理的对象数量
+    private final LongAdder processedNumber = new LongAdder();         //记录监听器已经提交的对象数量
+    private final LongAdder processedSuccessNumber = new LongAdder();  //记录监听器已经成功处理的对象数量
+    private final LongAdder errorNumber = new LongAdder();             //记录处理程序抛出异常的批次数量
+    private final LongAdder batchNumber = new LongAdder();             //记录提交给处理程序的批次数量
+    private final LatencyHistogram latencyHistogram = new LatencyHistogram();      //每批对象处理耗时的分布
+    private final Object throughputLock = new Object();
+    private long throughputSampleTime = System.nanoTime();             //上一次计算吞吐量的时间
+    private long throughputSampleCount = 0;                            //上一次计算吞吐量时成功处理的对象数量
+    private double throughput = 0;                                     //最近一个统计周期内每秒成功处理的对象数量
+    private String name;                                               //监听器的名称，命名后发布到JMX中
+    private int maxAttempts = 1;                                        //每个对象的最大处理次数，1表示不重试
+    private long initialBackoffNanos;                                   //第一次重试前的等待时间
+    private long maxBackoffNanos;                                       //重试前等待时间的上限
+    private volatile IQueue<T> deadLetterQueue;                         //超过最大处理次数的对象放入的死信队列
+    private final DelayQueue<RetryItem<T>> retryQueue = new DelayQueue<>();    //等待重试的对象
+    private final LongAdder retryNumber = new LongAdder();             //记录放入延迟队列等待重试的次数
+    private final LongAdder deadLetterNumber = new LongAdder();        //记录超过最大处理次数的对象数量
     private Thread[] threads;
     private boolean autoClose = false;                                //是否在监听队列为为空时自动关闭监听器
-    private Lock lock = new ReentrantLock();                            //线程锁
+    private IWaitStrategy waitStrategy = new ParkingWaitStrategy();     //队列为空时的等待策略
+    private int threadTotal = 0;                                        //监听线程的数量，0表示与子队列的数量相同
+    private boolean workStealing = false;                               //是否开启工作窃取
+    private final AtomicInteger runningThreads = new AtomicInteger();   //尚未退出的监听线程数量
+    private Constructor<? extends QueueSetReceiver<T>> receiverConstructor;     //处理程序的构造函数
+    private QueueSetReceiver<T> sharedReceiver;                         //所有线程共用的处理程序
+    private ExecutorService executorService;                            //用户设置的处理程序执行器
+    private boolean virtualThreads = false;                             //是否采用虚拟线程执行处理程序
+    private int maxConcurrency = 256;                                   //执行器模式下同时处理中的批次数量上限
+    private volatile Semaphore concurrencyLimit;                        //执行器模式下控制同时处理中批次数量的信号量
+    private ExecutorService ownedExecutor;                              //监听器自己创建的执行器，停止时关闭
+    private ScheduledFuture<?> workLogFuture;                           //记录工作日志的定时任务
+    private boolean adaptiveBatch = false;                              //是否开启自适应批量模式
+    private int minBatchSize;                                           //自适应批量模式下每批对象数量的下限
+    private int maxBatchSize;                                           //自适应批量模式下每批对象数量的上限
+    private long maxLingerNanos;                                        //自适应批量模式下凑批的最长等待时间
 
     public QueueSetListener() {
     }
@@ -59,7 +147,7 @@ public class QueueSetListener<T> {
      * @return 监听器已经提交的对象数量
      */
     public long getProcessedNumber() {
-        return processedNumber.get();
+        return processedNumber.sum();
     }
 
     /**
@@ -68,7 +156,117 @@ public class QueueSetListener<T> {
      * @return 监听器已经成功处理的对象数量
      */
     public long getProcessedSuccessNumber() {
-        return processedSuccessNumber.get();
+        return processedSuccessNumber.sum();
+    }
+
+    /**
+     * 设置处理失败时的重试策略，第n次重试前的等待时间为initialBackoff * 2^(n-1)，不超过maxBackoff
+     *
+     * @param maxAttempts    每个对象的最大处理次数（包含第一次处理），1表示不重试
+     * @param initialBackoff 第一次重试前的等待时间
+     * @param maxBackoff     重试前等待时间的上限
+     * @param timeUnit       时间单位
+     */
+    public void setRetryPolicy(int maxAttempts, long initialBackoff, long maxBackoff, TimeUnit timeUnit) {
+        if (!busy) {
+            Validate.isTrue(maxAttempts > 0, "最大处理次数必须大于0！");
+            Validate.isTrue(initialBackoff >= 0 && initialBackoff <= maxBackoff, "重试前的等待时间不能小于0，并且不能超过上限！");
+            Validate.notNull(timeUnit, "timeUnit对象不能为null。");
+            this.maxAttempts = maxAttempts;
+            this.initialBackoffNanos = timeUnit.toNanos(initialBackoff);
+            this.maxBackoffNanos = timeUnit.toNanos(maxBackoff);
+        }
+    }
+
+    /**
+     * 设置死信队列，超过最大处理次数的对象会放入该队列，未设置时这些对象只计入数量
+     *
+     * @param deadLetterQueue 死信队列，为null表示不保存
+     */
+    public void setDeadLetterQueue(IQueue<T> deadLetterQueue) {
+        this.deadLetterQueue = deadLetterQueue;
+    }
+
+    /**
+     * 获取处理失败后放入延迟队列等待重试的次数
+     *
+     * @return 等待重试的次数
+     */
+    public long getRetryNumber() {
+        return retryNumber.sum();
+    }
+
+    /**
+     * 获取当前在延迟队列中等待重试的对象数量
+     *
+     * @return 等待重试的对象数量
+     */
+    public int getPendingRetryNumber() {
+        return retryQueue.size();
+    }
+
+    /**
+     * 获取超过最大处理次数的对象数量（包括放入死信队列失败的对象）
+     *
+     * @return 超过最大处理次数的对象数量
+     */
+    public long getDeadLetterNumber() {
+        return deadLetterNumber.sum();
+    }
+
+    /**
+     * 设置监听器的名称，命名后运行指标会以MBean的形式发布到JMX中，为null时从JMX中注销
+     *
+     * @param name 监听器的名称
+     */
+    synchronized public void setName(String name) {
+        if (this.name != null) {
+            JmxUtils.unregister(objectName(this.name));
+        }
+        this.name = name;
+        if (name != null) {
+            JmxUtils.register(objectName(name), new ListenerStatsBean(this));
+        }
+    }
+
+    /**
+     * 获取监听器的名称
+     *
+     * @return 监听器的名称
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获取监听器运行指标的快照
+     *
+     * @return 运行指标的快照
+     */
+    public QueueSetListenerStats getStats() {
+        List<IQueue<T>> subQueues = (queueSet == null) ? Collections.emptyList() : queueSet.getSubQueues();
+        long[] queueDepths = new long[subQueues.size()];
+        for (int i = 0; i < queueDepths.length; i++) {
+            queueDepths[i] = subQueues.get(i).size();
+        }
+        return new QueueSetListenerStats(processedNumber.sum(), processedSuccessNumber.sum(), errorNumber.sum(),
+                batchNumber.sum(), throughput(), queueDepths, latencyHistogram);
+    }
+
+    /**
+     * 重置运行指标，监听器每次启动时也会重置
+     */
+    public void resetStats() {
+        processedNumber.reset();
+        processedSuccessNumber.reset();
+        errorNumber.reset();
+        batchNumber.reset();
+        latencyHistogram.reset();
+        synchronized (throughputLock) {
+            throughputSampleTime = System.nanoTime();
+            throughputSampleCount = 0;
+            throughput = 0;
+        }
     }
 
     /**
@@ -77,9 +275,40 @@ public class QueueSetListener<T> {
     public void setGroupSize(int groupSize) {
         if (!busy) {
             this.groupSize = groupSize;
+            this.adaptiveBatch = false;
         }
     }
 
+    /**
+     * 开启自适应批量模式，每批对象的数量在minSize和maxSize之间根据处理程序的耗时自动调整，
+     * 调用setGroupSize方法会关闭自适应批量模式
+     *
+     * @param minSize   每批对象数量的下限
+     * @param maxSize   每批对象数量的上限
+     * @param maxLinger 一批对象没有装满时的最长等待时间，为0表示不等待
+     * @param timeUnit  时间单位
+     */
+    public void setAdaptiveBatch(int minSize, int maxSize, long maxLinger, TimeUnit timeUnit) {
+        if (!busy) {
+            Validate.isTrue(minSize > 0 && minSize <= maxSize, "每批对象数量的下限必须大于0，并且不能超过上限！");
+            Validate.isTrue(maxLinger >= 0, "最长等待时间不能小于0！");
+            Validate.notNull(timeUnit, "timeUnit对象不能为null。");
+            this.minBatchSize = minSize;
+            this.maxBatchSize = maxSize;
+            this.maxLingerNanos = timeUnit.toNanos(maxLinger);
+            this.adaptiveBatch = true;
+        }
+    }
+
+    /**
+     * 判断是否开启了自适应批量模式
+     *
+     * @return 是否开启了自适应批量模式
+     */
+    public boolean isAdaptiveBatch() {
+        return adaptiveBatch;
+    }
+
     /**
      * 获取指定状态的线程数量
      *
@@ -101,6 +330,42 @@ public class QueueSetListener<T> {
         return count;
     }
 
+    /**
+     * 设置队列为空时监听线程的等待策略
+     *
+     * @param waitStrategy 等待策略
+     */
+    public void setWaitStrategy(IWaitStrategy waitStrategy) {
+        if (!busy) {
+            Validate.notNull(waitStrategy, "waitStrategy对象不能为null。");
+            this.waitStrategy = waitStrategy;
+        }
+    }
+
+    /**
+     * 设置监听线程的数量，不设置或者设置为0时，与子队列的数量相同
+     * 线程数量小于子队列数量时，每个线程负责多个子队列；大于子队列数量时，多个线程共同处理同一个子队列
+     *
+     * @param threadTotal 监听线程的数量
+     */
+    public void setThreadTotal(int threadTotal) {
+        if (!busy) {
+            Validate.isTrue(threadTotal >= 0, "线程数量不能小于0！");
+            this.threadTotal = threadTotal;
+        }
+    }
+
+    /**
+     * 设置是否开启工作窃取，开启后空闲的线程会从积压最多的子队列中取出对象处理
+     *
+     * @param workStealing 是否开启工作窃取
+     */
+    public void setWorkStealing(boolean workStealing) {
+        if (!busy) {
+            this.workStealing = workStealing;
+        }
+    }
+
     /**
      * 设置监听队列
      *
@@ -121,7 +386,67 @@ public class QueueSetListener<T> {
     public void setQueueReceiver(Class<? extends QueueSetReceiver<T>> queueReceiverClass) {
         if (!busy) {
             Validate.notNull(queueReceiverClass, "queueReceiverClass对象不能为null。");
+            try {
+                Constructor<? extends QueueSetReceiver<T>> constructor = queueReceiverClass.getDeclaredConstructor();
+                constructor.setAccessible(true);
+                this.receiverConstructor = constructor;
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException("处理程序必须包含无参数的构造函数：" + queueReceiverClass, e);
+            }
             this.queueSetReceiverClass = queueReceiverClass;
+            this.sharedReceiver = null;
+        }
+    }
+
+    /**
+     * 设置所有线程共用的处理程序实例，处理程序必须是线程安全的
+     * 与{@link #setQueueReceiver(Class)}的区别：后者为每个监听线程（执行器模式下为每批对象）创建一个新的处理程序实例
+     *
+     * @param queueReceiver 处理程序实例
+     */
+    public void setQueueReceiver(QueueSetReceiver<T> queueReceiver) {
+        if (!busy) {
+            Validate.notNull(queueReceiver, "queueReceiver对象不能为null。");
+            this.sharedReceiver = queueReceiver;
+            this.receiverConstructor = null;
+            @SuppressWarnings("unchecked")
+            Class<? extends QueueSetReceiver<T>> receiverClass = (Class<? extends QueueSetReceiver<T>>) queueReceiver.getClass();
+            this.queueSetReceiverClass = receiverClass;
+        }
+    }
+
+    /**
+     * 设置执行处理程序的执行器，设置后开启执行器模式，执行器由调用方负责关闭
+     *
+     * @param executorService 执行器，为null时关闭执行器模式
+     */
+    public void setExecutorService(ExecutorService executorService) {
+        if (!busy) {
+            this.executorService = executorService;
+        }
+    }
+
+    /**
+     * 设置是否采用虚拟线程执行处理程序，开启后每批对象在一个新的虚拟线程中处理
+     * 当前JDK不支持虚拟线程（JDK21以下）时，改用按需创建线程的线程池
+     *
+     * @param virtualThreads 是否采用虚拟线程
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        if (!busy) {
+            this.virtualThreads = virtualThreads;
+        }
+    }
+
+    /**
+     * 设置执行器模式下同时处理中的批次数量上限，默认为256
+     *
+     * @param maxConcurrency 同时处理中的批次数量上限
+     */
+    public void setMaxConcurrency(int maxConcurrency) {
+        if (!busy) {
+            Validate.isTrue(maxConcurrency > 0, "同时处理中的批次数量上限必须大于0！");
+            this.maxConcurrency = maxConcurrency;
         }
     }
 
@@ -135,9 +460,9 @@ public class QueueSetListener<T> {
         }
 
         busy = true;
+        abort = false;
 
-        processedNumber.set(0);
-        processedSuccessNumber.set(0);
+        resetStats();
 
         int queueCount = queueSet.getSubQueues().size();
 
@@ -145,61 +470,706 @@ public class QueueSetListener<T> {
             busy = false;
             throw new IllegalArgumentException("队列集合中无任何队列对象，请先添加队列对象");
         }
+        if (receiverConstructor == null && sharedReceiver == null) {
+            busy = false;
+            throw new IllegalArgumentException("请先设置队列中对象的处理程序");
+        }
 
-        threads = new Thread[queueCount];
+        ExecutorService executor = executorService;
+        if (executor == null && virtualThreads) {
+            executor = ownedExecutor = newVirtualThreadExecutor();
+        }
+        concurrencyLimit = (executor == null) ? null : new Semaphore(maxConcurrency);
 
-        for (int i = 0; i < queueCount; i++) {
-            IQueue<T> queue = queueSet.getSubQueues().get(i);
-            threads[i] = new Thread() {
-                @Override
-                public void run() {
-                    try {
-                        QueueSetReceiver<T> receiver = queueSetReceiverClass.newInstance();
-                        while (true) {
-                            if (abort) {          //如果终止了监听，那么就退出循环
-                                return;
-                            }
-
-                            Collection<T> objectsCollection = queue.poll(groupSize);
-
-                            final int collectionSize = objectsCollection.size();
-                            if (collectionSize > 0) {
-                                processedNumber.getAndAdd(collectionSize);
-                                try {
-                                    int count = receiver.receive(objectsCollection);
-                                    processedSuccessNumber.getAndAdd(count);
-                                } catch (Exception ex) {
-                                    LOGGER.error("从待处理队列获取数据发生异常！", ex);
-                                }
-                            } else {
-                                if (autoClose) {           //如果开启了自动关闭功能，那么当队列没有内容，就自动退出当前线程。
-                                    return;
-                                } else {
-                                    Thread.yield();
-                                }
-                            }
+        List<IQueue<T>> subQueues = queueSet.getSubQueues();
+        int threadCount = (threadTotal > 0) ? threadTotal : queueCount;
+        final boolean partitioned = queueSet.isPartitioned();
+        if (partitioned && threadCount > queueCount) {
+            LOGGER.warn("分区模式下每个子队列最多只有一个监听线程，线程数量调整为：" + queueCount);
+            threadCount = queueCount;
+        }
+        final boolean retrying = maxAttempts > 1 || !retryQueue.isEmpty();
+        threads = new Thread[retrying ? threadCount + 1 : threadCount];
+        runningThreads.set(threads.length);
+        final IWaitStrategy strategy = this.waitStrategy;
+        queueSet.addWaitStrategy(strategy);
+
+        for (int i = 0; i < threadCount; i++) {
+            List<IQueue<T>> homeQueues = new ArrayList<>();
+            if (threadCount >= queueCount) {
+                homeQueues.add(subQueues.get(i % queueCount));
+            } else {
+                for (int j = i; j < queueCount; j += threadCount) {
+                    homeQueues.add(subQueues.get(j));
+                }
+            }
+            threads[i] = new ListenerThread(homeQueues, subQueues, strategy, workStealing && !partitioned, executor);
+        }
+        if (retrying) {
+            threads[threadCount] = new RetryThread(strategy);
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        recordWorkLog();
+    }
+
+    /**
+     * 监听线程，依次从负责的子队列中获取对象，开启工作窃取后，负责的子队列都为空时从其他子队列中获取对象
+     */
+    private final class ListenerThread extends Thread {
+
+        private final List<IQueue<T>> homeQueues;       //当前线程负责的子队列
+        private final List<IQueue<T>> allQueues;
+        private final IWaitStrategy strategy;
+        private final boolean stealing;                 //是否进行工作窃取，分区模式下不窃取
+        private final ExecutorService executor;         //执行器模式下处理对象的执行器，为null表示在当前线程中处理
+        private final BatchSizer sizer;                 //自适应批量模式下的批量调整器，为null表示每批固定为groupSize
+        private int cursor = 0;                         //下一次获取对象的子队列
+        private final List<Delivery> pendingDeliveries = new ArrayList<>();     //本批次中每个对象所属的回执
+
+        private ListenerThread(List<IQueue<T>> homeQueues, List<IQueue<T>> allQueues, IWaitStrategy strategy,
+                               boolean stealing, ExecutorService executor) {
+            this.homeQueues = homeQueues;
+            this.allQueues = allQueues;
+            this.strategy = strategy;
+            this.stealing = stealing;
+            this.executor = executor;
+            this.sizer = adaptiveBatch ? new BatchSizer() : null;
+        }
+
+        @Override
+        public void run() {
+            try {
+                QueueSetReceiver<T> receiver = (executor == null) ? newReceiver() : null;
+                int idleCount = 0;
+                while (true) {
+                    if (abort) {          //如果终止了监听，那么就退出循环
+                        return;
+                    }
+
+                    final int batchSize = (sizer == null) ? groupSize : sizer.size();
+                    Collection<T> objectsCollection = (sizer == null) ? pollNext(batchSize) : pollBatch(batchSize);
+
+                    final int collectionSize = objectsCollection.size();
+                    if (collectionSize > 0) {
+                        idleCount = 0;
+                        queueSet.signalNotFull();
+                        processedNumber.add(collectionSize);
+                        Delivery[] deliveries = takeDeliveries();
+                        if (executor == null) {
+                            process(receiver, objectsCollection, null, deliveries, sizer, batchSize);
+                        } else {
+                            dispatch(objectsCollection, deliveries, batchSize);
+                        }
+                    } else {
+                        if (idleCount == 0) {
+                            queueSet.checkWatermark();     //刚刚取空队列，检查是否回落到低水位
                         }
-                    } catch (Exception e) {
-                        LOGGER.error("处理监听队列时发生异常！", e);
-                    } finally {
-                        lock.lock();
-                        try {
-                            if (getThreadNumber(State.TERMINATED, State.NEW) >= threads.length - 1) {      //如果所有的线程都处于运行完毕的状态，那么监听器处于休息状态，可以启动监听。
-                                busy = false;
-                            }
-                        } finally {
-                            lock.unlock();
+                        if (autoClose) {           //如果开启了自动关闭功能，那么当队列没有内容，就自动退出当前线程。
+                            return;
+                        } else {
+                            idleCount = strategy.idle(idleCount);
                         }
                     }
                 }
+            } catch (InterruptedException e) {
+                if (!abort) {
+                    LOGGER.warn("监听线程被中断，处理程序为：" + queueSetReceiverClass);
+                }
+            } catch (Exception e) {
+                LOGGER.error("处理监听队列时发生异常！", e);
+            } finally {
+                if (runningThreads.decrementAndGet() == 0) {      //所有的线程都运行完毕，那么监听器处于休息状态，可以启动监听。
+                    finish(strategy);
+                }
+            }
+        }
+
+        //将一批对象交给执行器处理，同时处理中的批次达到上限时等待，执行器拒绝时在当前线程中处理
+        private void dispatch(Collection<T> objects, Delivery[] deliveries, int batchSize) throws InterruptedException {
+            Semaphore limit = concurrencyLimit;
+            limit.acquire();
+            Runnable task = () -> {
+                try {
+                    QueueSetReceiver<T> receiver;
+                    try {
+                        receiver = newReceiver();
+                    } catch (Exception ex) {
+                        errorNumber.increment();
+                        LOGGER.error("创建处理程序时发生异常！", ex);
+                        retryRemaining(objects, null, deliveries, 0, ex);
+                        return;
+                    }
+                    process(receiver, objects, null, deliveries, sizer, batchSize);
+                } finally {
+                    limit.release();
+                }
             };
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException ex) {
+                task.run();
+            }
         }
 
-        for (int i = 0; i < queueCount; i++) {
-            threads[i].start();
+        //自适应批量模式下凑满一批对象，达到批量大小或者超过最长等待时间时返回
+        private Collection<T> pollBatch(int batchSize) {
+            Collection<T> collection = pollNext(batchSize);
+            if (collection.isEmpty() || collection.size() >= batchSize || maxLingerNanos == 0) {
+                return collection;
+            }
+            List<T> batch = new ArrayList<>(batchSize);
+            batch.addAll(collection);
+            final long deadline = System.nanoTime() + maxLingerNanos;
+            while (batch.size() < batchSize && !abort) {
+                collection = pollNext(batchSize - batch.size());
+                if (collection.isEmpty()) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    LockSupport.parkNanos(Math.min(remaining, LINGER_PARK_NANOS));
+                } else {
+                    batch.addAll(collection);
+                }
+            }
+            return batch;
         }
 
-        recordWorkLog();
+        //从负责的子队列中依次获取对象，都为空时尝试窃取
+        private Collection<T> pollNext(int number) {
+            for (int i = 0; i < homeQueues.size(); i++) {
+                IQueue<T> queue = homeQueues.get(cursor);
+                cursor = (cursor + 1 == homeQueues.size()) ? 0 : cursor + 1;
+                Collection<T> collection = pollFrom(queue, number);
+                if (!collection.isEmpty()) {
+                    return collection;
+                }
+            }
+            return stealing ? steal(number) : Collections.emptyList();
+        }
+
+        //从积压最多的其他子队列中取出一批对象
+        private Collection<T> steal(int number) {
+            IQueue<T> victim = null;
+            long maxSize = 0;
+            for (IQueue<T> queue : allQueues) {
+                long size = queue.size();
+                if (size > maxSize && !homeQueues.contains(queue)) {
+                    maxSize = size;
+                    victim = queue;
+                }
+            }
+            return (victim == null) ? Collections.emptyList() : pollFrom(victim, number);
+        }
+
+        //从子队列中取出一批对象，需要确认的子队列同时记录每个对象所属的回执
+        @SuppressWarnings("unchecked")
+        private Collection<T> pollFrom(IQueue<T> queue, int number) {
+            if (!(queue instanceof IAcknowledgeableQueue)) {
+                return queue.poll(number);
+            }
+            IQueueReceipt<T> receipt = ((IAcknowledgeableQueue<T>) queue).pollUnacknowledged(number);
+            Collection<T> objects = receipt.getObjects();
+            if (!objects.isEmpty()) {
+                Delivery delivery = new Delivery(receipt, objects.size());
+                for (int i = 0; i < objects.size(); i++) {
+                    pendingDeliveries.add(delivery);
+                }
+            }
+            return objects;
+        }
+
+        //取出本批次中每个对象所属的回执，子队列都不需要确认时返回null
+        private Delivery[] takeDeliveries() {
+            if (pendingDeliveries.isEmpty()) {
+                return null;
+            }
+            Delivery[] deliveries = pendingDeliveries.toArray(new Delivery[0]);
+            pendingDeliveries.clear();
+            return deliveries;
+        }
+    }
+
+    /**
+     * 重试线程，从延迟队列中获取到期的对象重新处理，每批对象的数量不超过监听线程的批量大小
+     */
+    private final class RetryThread extends Thread {
+
+        private final IWaitStrategy strategy;
+
+        private RetryThread(IWaitStrategy strategy) {
+            this.strategy = strategy;
+        }
+
+        @Override
+        public void run() {
+            try {
+                QueueSetReceiver<T> receiver = newReceiver();
+                final int batchSize = adaptiveBatch ? maxBatchSize : Math.max(1, groupSize);
+                List<RetryItem<T>> items = new ArrayList<>();
+                while (!abort) {
+                    RetryItem<T> item = retryQueue.poll(RETRY_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (item == null) {
+                        if (autoClose && runningThreads.get() == 1 && retryQueue.isEmpty()) {
+                            return;         //监听线程都已经退出，并且没有等待重试的对象
+                        }
+                        continue;
+                    }
+                    items.add(item);
+                    retryQueue.drainTo(items, batchSize - 1);       //只会取出已经到期的对象
+
+                    List<T> objects = new ArrayList<>(items.size());
+                    int[] attempts = new int[items.size()];
+                    Delivery[] deliveries = new Delivery[items.size()];
+                    for (int i = 0; i < items.size(); i++) {
+                        objects.add(items.get(i).object);
+                        attempts[i] = items.get(i).attempts;
+                        deliveries[i] = items.get(i).delivery;
+                    }
+                    items.clear();
+                    processedNumber.add(objects.size());
+                    process(receiver, objects, attempts, deliveries, null, objects.size());
+                }
+            } catch (InterruptedException e) {
+                if (!abort) {
+                    LOGGER.warn("重试线程被中断，处理程序为：" + queueSetReceiverClass);
+                }
+            } catch (Exception e) {
+                LOGGER.error("重试处理失败的对象时发生异常！", e);
+            } finally {
+                if (runningThreads.decrementAndGet() == 0) {
+                    finish(strategy);
+                }
+            }
+        }
+    }
+
+    /**
+     * 延迟队列中等待重试的对象
+     */
+    private static final class RetryItem<T> implements Delayed {
+
+        private final T object;
+        private final int attempts;         //重试时是第几次处理
+        private final Delivery delivery;    //对象所属的回执，子队列不需要确认时为null
+        private final long dueTime;         //可以重试的时间，System.nanoTime()的值
+
+        private RetryItem(T object, int attempts, Delivery delivery, long dueTime) {
+            this.object = object;
+            this.attempts = attempts;
+            this.delivery = delivery;
+            this.dueTime = dueTime;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueTime - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return (other instanceof RetryItem) ? Long.compare(dueTime - ((RetryItem<?>) other).dueTime, 0)
+                    : Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+
+    /**
+     * 从{@link IAcknowledgeableQueue}中取出的一批对象的确认状态，批次中的对象全部处理完毕（处理成功或者放入死信队列）后向子队列确认，
+     * 批次中的对象可能被拆分到多个处理批次和重试批次中
+     */
+    private static final class Delivery {
+
+        private final IQueueReceipt<?> receipt;
+        private final AtomicInteger remaining;      //尚未处理完毕的对象数量
+
+        private Delivery(IQueueReceipt<?> receipt, int size) {
+            this.receipt = receipt;
+            this.remaining = new AtomicInteger(size);
+        }
+
+        //批次中的一个对象处理完毕
+        private void complete() {
+            if (remaining.decrementAndGet() == 0) {
+                try {
+                    receipt.acknowledge();
+                } catch (Exception e) {
+                    LOGGER.error("向持久化队列确认对象时发生异常！", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 一批对象的确认结果，按照对象的引用查找对象在批次中的位置，
+     * 处理程序通常按顺序确认，因此从上一次确认的位置开始查找
+     */
+    private final class BatchAcknowledgment implements IAcknowledgment<T> {
+
+        private static final byte PENDING = 0;
+        private static final byte ACKED = 1;
+        private static final byte NACKED = 2;
+
+        private final List<T> objects;
+        private final int[] attempts;           //每个对象是第几次处理，为null表示都是第一次处理
+        private final Delivery[] deliveries;    //每个对象所属的回执，为null表示都不需要确认
+        private final byte[] states;
+        private final Throwable[] causes;
+        private int hint = 0;                   //下一次开始查找的位置
+        private boolean completed = false;
+
+        private BatchAcknowledgment(Collection<T> objects, int[] attempts, Delivery[] deliveries) {
+            this.objects = (objects instanceof List) ? (List<T>) objects : new ArrayList<>(objects);
+            this.attempts = attempts;
+            this.deliveries = deliveries;
+            this.states = new byte[this.objects.size()];
+            this.causes = new Throwable[this.objects.size()];
+        }
+
+        @Override
+        public void ack(T object) {
+            mark(object, ACKED, null);
+        }
+
+        @Override
+        public void nack(T object, Throwable cause) {
+            mark(object, NACKED, cause);
+        }
+
+        @Override
+        synchronized public int getAttempts(T object) {
+            int index = indexOf(object, false);
+            if (index < 0) {
+                throw new IllegalArgumentException("对象不属于本批次：" + object);
+            }
+            return (attempts == null) ? 1 : attempts[index];
+        }
+
+        synchronized private void mark(T object, byte state, Throwable cause) {
+            if (completed) {
+                throw new IllegalStateException("本批次已经处理完毕，不能再确认处理结果");
+            }
+            int index = indexOf(object, true);
+            if (index < 0) {
+                throw new IllegalArgumentException("对象不属于本批次或者已经确认过处理结果：" + object);
+            }
+            states[index] = state;
+            causes[index] = cause;
+            hint = (index + 1 == states.length) ? 0 : index + 1;
+        }
+
+        //从上一次确认的位置开始查找对象，pending为true时只查找尚未确认的对象
+        private int indexOf(T object, boolean pending) {
+            for (int i = 0, index = hint; i < states.length; i++, index = (index + 1 == states.length) ? 0 : index + 1) {
+                if (objects.get(index) == object && (!pending || states[index] == PENDING)) {
+                    return index;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * 结束本批次的确认，没有确认的对象按照error判断成功或失败，处理失败的对象进行重试，返回处理成功的数量
+         */
+        synchronized private int complete(Throwable error) {
+            completed = true;
+            int count = 0;
+            for (int i = 0; i < states.length; i++) {
+                if (states[i] == PENDING) {
+                    states[i] = (error == null) ? ACKED : NACKED;
+                    causes[i] = error;
+                }
+                if (states[i] == ACKED) {
+                    count++;
+                    completeDelivery(deliveries, i);
+                } else {
+                    retryOrDeadLetter(objects.get(i), (attempts == null) ? 1 : attempts[i], deliveryOf(deliveries, i), causes[i]);
+                }
+            }
+            return count;
+        }
+    }
+
+    //自适应批量模式下根据处理程序的耗时调整每批对象的数量（加性增大、乘性减小）：
+    //批次装满并且单个对象的平均耗时没有明显变长时线性增大，耗时明显变长（处理程序已经饱和）或者批次没有装满（队列变浅）时减半
+    private final class BatchSizer {
+        private final int step = Math.max(1, (maxBatchSize - minBatchSize) / 16);     //每次增大的数量
+        private int size = minBatchSize;        //当前的批量大小
+        private long averageNanos = 0;          //单个对象耗时的指数移动平均值，0表示尚无数据
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized void record(int batchSize, int count, long elapsedNanos) {
+            long itemNanos = elapsedNanos / count;
+            if (count < batchSize) {
+                size = Math.max(minBatchSize, Math.max(count, size / 2));
+            } else if (averageNanos == 0 || itemNanos <= averageNanos + (averageNanos >> 2)) {
+                size = Math.min(maxBatchSize, size + step);
+            } else {
+                size = Math.max(minBatchSize, size / 2);
+            }
+            averageNanos = (averageNanos == 0) ? itemNanos : averageNanos + ((itemNanos - averageNanos) >> 3);
+        }
+    }
+
+    //调用处理程序处理一批对象，并记录处理程序的耗时，处理失败的对象进行重试；attempts为每个对象是第几次处理，为null表示都是第一次处理
+    @SuppressWarnings("unchecked")
+    private void process(QueueSetReceiver<T> receiver, Collection<T> objects, int[] attempts, Delivery[] deliveries,
+                         BatchSizer sizer, int batchSize) {
+        final int size = objects.size();
+        final long startTime = System.nanoTime();
+        batchNumber.increment();
+        BatchAcknowledgment acknowledgment = (receiver instanceof QueueSetAckReceiver) ? new BatchAcknowledgment(objects, attempts, deliveries) : null;
+        try {
+            int count;
+            if (acknowledgment != null) {
+                ((QueueSetAckReceiver<T>) receiver).receive(objects, acknowledgment);
+                count = acknowledgment.complete(null);
+            } else {
+                count = receiver.receive(objects);
+                for (int i = 0, success = Math.min(count, size); i < success; i++) {
+                    completeDelivery(deliveries, i);
+                }
+                if (count < size) {
+                    retryRemaining(objects, attempts, deliveries, Math.max(count, 0),
+                            new IllegalStateException("处理程序只成功处理了" + count + "个对象，批次中对象的数量为" + size));
+                }
+            }
+            long elapsedNanos = System.nanoTime() - startTime;
+            latencyHistogram.record(elapsedNanos);
+            if (sizer != null) {
+                sizer.record(batchSize, size, elapsedNanos);
+            }
+            processedSuccessNumber.add(count);
+        } catch (Exception ex) {
+            latencyHistogram.record(System.nanoTime() - startTime);
+            errorNumber.increment();
+            LOGGER.error("从待处理队列获取数据发生异常！", ex);
+            if (acknowledgment != null) {
+                processedSuccessNumber.add(acknowledgment.complete(ex));
+            } else {
+                retryRemaining(objects, attempts, deliveries, 0, ex);
+            }
+        }
+    }
+
+    //批次中从from开始的对象视为处理失败，逐个进行重试或者放入死信队列
+    private void retryRemaining(Collection<T> objects, int[] attempts, Delivery[] deliveries, int from, Throwable cause) {
+        int i = 0;
+        for (T object : objects) {
+            if (i >= from) {
+                retryOrDeadLetter(object, (attempts == null) ? 1 : attempts[i], deliveryOf(deliveries, i), cause);
+            }
+            i++;
+        }
+    }
+
+    //处理失败的对象：没有超过最大处理次数时放入延迟队列等待重试，否则放入死信队列，放入死信队列的对象视为处理完毕
+    private void retryOrDeadLetter(T object, int attempts, Delivery delivery, Throwable cause) {
+        if (attempts < maxAttempts) {
+            retryNumber.increment();
+            retryQueue.offer(new RetryItem<>(object, attempts + 1, delivery, System.nanoTime() + backoffNanos(attempts)));
+            return;
+        }
+        deadLetterNumber.increment();
+        IQueue<T> queue = deadLetterQueue;
+        if (queue != null) {
+            try {
+                if (!queue.offer(object)) {
+                    LOGGER.error("死信队列已满，对象被丢弃：" + object, cause);
+                }
+            } catch (Exception e) {
+                LOGGER.error("将对象放入死信队列时发生异常：" + object, e);
+            }
+        }
+        if (delivery != null) {
+            delivery.complete();
+        }
+    }
+
+    private static Delivery deliveryOf(Delivery[] deliveries, int index) {
+        return (deliveries == null) ? null : deliveries[index];
+    }
+
+    //批次中指定位置的对象处理成功
+    private static void completeDelivery(Delivery[] deliveries, int index) {
+        Delivery delivery = deliveryOf(deliveries, index);
+        if (delivery != null) {
+            delivery.complete();
+        }
+    }
+
+    //第attempts次处理失败后，重试前的等待时间
+    private long backoffNanos(int attempts) {
+        long backoff = initialBackoffNanos;
+        for (int i = 1; i < attempts && backoff < maxBackoffNanos; i++) {
+            backoff = (backoff > maxBackoffNanos >> 1) ? maxBackoffNanos : backoff << 1;
+        }
+        return Math.min(backoff, maxBackoffNanos);
+    }
+
+    //计算最近一个统计周期（至少1秒）内每秒成功处理的对象数量，不足一个周期时返回上一个周期的结果
+    private double throughput() {
+        synchronized (throughputLock) {
+            long now = System.nanoTime();
+            long elapsedNanos = now - throughputSampleTime;
+            if (elapsedNanos >= THROUGHPUT_PERIOD_NANOS) {
+                long successCount = processedSuccessNumber.sum();
+                throughput = (successCount - throughputSampleCount) * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+                throughputSampleTime = now;
+                throughputSampleCount = successCount;
+            }
+            return throughput;
+        }
+    }
+
+    private static ObjectName objectName(String name) {
+        return JmxUtils.objectName(JMX_DOMAIN, "QueueSetListener", name);
+    }
+
+    /**
+     * 发布到JMX中的监听器运行指标，只持有监听器的弱引用
+     */
+    private static final class ListenerStatsBean implements QueueSetListenerMXBean {
+
+        private final WeakReference<QueueSetListener<?>> listenerReference;
+        private final String receiverClass;
+
+        private ListenerStatsBean(QueueSetListener<?> listener) {
+            this.listenerReference = new WeakReference<>(listener);
+            this.receiverClass = String.valueOf(listener.queueSetReceiverClass);
+        }
+
+        private QueueSetListenerStats stats() {
+            QueueSetListener<?> listener = listenerReference.get();
+            return (listener == null) ? new QueueSetListenerStats(0, 0, 0, 0, 0, new long[0], new LatencyHistogram())
+                    : listener.getStats();
+        }
+
+        private static double millis(double nanos) {
+            return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        @Override
+        public String getReceiverClass() {
+            QueueSetListener<?> listener = listenerReference.get();
+            return (listener == null) ? receiverClass : String.valueOf(listener.queueSetReceiverClass);
+        }
+
+        @Override
+        public boolean isRunning() {
+            QueueSetListener<?> listener = listenerReference.get();
+            return listener != null && listener.busy;
+        }
+
+        @Override
+        public long getSubmittedCount() {
+            return stats().getSubmittedCount();
+        }
+
+        @Override
+        public long getSuccessCount() {
+            return stats().getSuccessCount();
+        }
+
+        @Override
+        public long getErrorCount() {
+            return stats().getErrorCount();
+        }
+
+        @Override
+        public double getErrorRate() {
+            return stats().getErrorRate();
+        }
+
+        @Override
+        public double getThroughput() {
+            return stats().getThroughput();
+        }
+
+        @Override
+        public long getQueueDepth() {
+            return stats().getQueueDepth();
+        }
+
+        @Override
+        public long[] getQueueDepths() {
+            return stats().getQueueDepths();
+        }
+
+        @Override
+        public double getLatencyMeanMillis() {
+            return millis(stats().getLatencyMean());
+        }
+
+        @Override
+        public double getLatencyP50Millis() {
+            return millis(stats().getLatencyP50());
+        }
+
+        @Override
+        public double getLatencyP99Millis() {
+            return millis(stats().getLatencyP99());
+        }
+
+        @Override
+        public double getLatencyP999Millis() {
+            return millis(stats().getLatencyP999());
+        }
+
+        @Override
+        public double getLatencyMaxMillis() {
+            return millis(stats().getLatencyMax());
+        }
+
+        @Override
+        public void resetStats() {
+            QueueSetListener<?> listener = listenerReference.get();
+            if (listener != null) {
+                listener.resetStats();
+            }
+        }
+    }
+
+    //获取处理程序，设置了共用的处理程序时直接返回，否则创建一个新的实例
+    private QueueSetReceiver<T> newReceiver() throws ReflectiveOperationException {
+        QueueSetReceiver<T> receiver = sharedReceiver;
+        return (receiver != null) ? receiver : receiverConstructor.newInstance();
+    }
+
+    //创建虚拟线程的执行器，当前JDK不支持虚拟线程时改用按需创建线程的线程池
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            LOGGER.warn("当前JDK不支持虚拟线程，改用线程池执行处理程序");
+            final AtomicInteger threadNumber = new AtomicInteger();
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "QueueSetListener-Worker-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    //所有的监听线程退出后的清理工作
+    synchronized private void finish(IWaitStrategy strategy) {
+        queueSet.removeWaitStrategy(strategy);
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();               //已经提交的处理任务会继续执行完毕
+            ownedExecutor = null;
+        }
+        if (workLogFuture != null) {
+            workLogFuture.cancel(false);
+            workLogFuture = null;
+        }
+        busy = false;
     }
 
     /**
@@ -212,49 +1182,66 @@ public class QueueSetListener<T> {
     }
 
     /**
-     * 设置取消标识为true
+     * 设置取消标识为true，并唤醒正在等待的监听线程，监听线程处理完当前的对象后退出
+     * 所有的监听线程退出后，监听器处于休息状态，可以重新启动
      */
     public void stop() {
         abort = true;
-        new Thread() {
-            @Override
-            public void run() {
-                while (true) {
-                    //如果所有的线程都处于运行完毕的状态，那么监听器处于休息状态，可以启动监听。
-                    if (getThreadNumber(Thread.State.TERMINATED, Thread.State.NEW) >= threads.length) {
-                        busy = false;
-                        return;
-                    }
-                    Thread.yield();
-                }
+        waitStrategy.signalAll();
+    }
+
+    /**
+     * 停止监听，并等待所有的监听线程退出，执行器模式下还会等待所有处理中的批次处理完毕
+     *
+     * @param timeout  等待的最长时间
+     * @param timeUnit 时间单位
+     * @return 所有的监听线程是否都已经退出
+     * @throws InterruptedException 等待过程中线程被中断
+     */
+    public boolean stop(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        stop();
+        Thread[] currentThreads = threads;
+        if (currentThreads == null) {
+            return true;
+        }
+        long deadline = System.nanoTime() + timeUnit.toNanos(timeout);
+        for (Thread thread : currentThreads) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0 && thread.isAlive()) {
+                return false;
             }
-        }.start();
-    }
-
-    /**
-     * 记录监听器的工作日志
-     */
-    private void recordWorkLog() {
-        new Thread() {
-            @Override
-            public void run() {
-                long lastChangedTime = System.currentTimeMillis();
-                while (busy) {
-                    long newTime = System.currentTimeMillis();
-                    if (newTime - lastChangedTime >= 60000) {      //如果达到了60秒了，那么记录一次日志。
-                        lastChangedTime = newTime;
-                        StringBuilderExt stringBuilder = new StringBuilderExt(200);
-                        stringBuilder.appendFormat("Receiver Class:[{0}],", queueSetReceiverClass);
-                        stringBuilder.appendFormat("completed:[{0}],", processedNumber.get());
-                        stringBuilder.appendFormat("successed:[{0}],", processedSuccessNumber.get());
-                        stringBuilder.appendFormat("active threads:[{0}],", getThreadNumber(State.RUNNABLE));
-                        stringBuilder.appendFormat("wait(block) threads:[{0}],", getThreadNumber(State.WAITING, State.TIMED_WAITING, State.BLOCKED));
-                        stringBuilder.appendFormat("other threads:[{0}].", getThreadNumber(State.NEW, State.TERMINATED));
-                        LOGGER.info(stringBuilder.toString());
-                    }
-                    Thread.yield();
-                }
+            thread.join(Math.max(1, remaining));
+            if (thread.isAlive()) {
+                return false;
+            }
+        }
+
+        Semaphore limit = concurrencyLimit;
+        if (limit != null) {
+            int permits = maxConcurrency;
+            if (!limit.tryAcquire(permits, Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+            limit.release(permits);
+        }
+        return true;
+    }
+
+    /**
+     * 记录监听器的工作日志，每60秒记录一次
+     */
+    synchronized private void recordWorkLog() {
+        if (!busy) {
+            return;         //所有的监听线程已经退出
+        }
+        workLogFuture = WORK_LOG_EXECUTOR.scheduleWithFixedDelay(() -> {
+            StringBuilderExt stringBuilder = new StringBuilderExt(200);
+            if (name != null) {
+                stringBuilder.appendFormat("Listener:[{0}],", name);
             }
-        }.start();
+            stringBuilder.appendFormat("Receiver Class:[{0}],", queueSetReceiverClass);
+            stringBuilder.append(getStats().toString());
+            LOGGER.info(stringBuilder.toString());
+        }, 60, 60, TimeUnit.SECONDS);
     }
 }
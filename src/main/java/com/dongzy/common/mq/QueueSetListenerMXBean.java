@@ -0,0 +1,48 @@
+package com.dongzy.common.mq;
+
+/**
+ * 通过JMX查看队列集监听器运行指标的接口，耗时的单位均为毫秒
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public interface QueueSetListenerMXBean {
+
+    String getReceiverClass();
+
+    boolean isRunning();
+
+    long getSubmittedCount();
+
+    long getSuccessCount();
+
+    long getErrorCount();
+
+    double getErrorRate();
+
+    /**
+     * 获取最近一个统计周期内每秒成功处理的对象数量
+     *
+     * @return 每秒成功处理的对象数量
+     */
+    double getThroughput();
+
+    long getQueueDepth();
+
+    long[] getQueueDepths();
+
+    double getLatencyMeanMillis();
+
+    double getLatencyP50Millis();
+
+    double getLatencyP99Millis();
+
+    double getLatencyP999Millis();
+
+    double getLatencyMaxMillis();
+
+    /**
+     * 重置统计信息
+     */
+    void resetStats();
+}
@@ -0,0 +1,147 @@
+package com.dongzy.common.mq;
+
+import java.util.Arrays;
+
+/**
+ * 队列集监听器运行指标的快照，对象创建后不会再发生变化
+ * 处理耗时指每批对象调用处理程序的耗时，单位纳秒
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public final class QueueSetListenerStats {
+
+    private final long submittedCount;
+    private final long successCount;
+    private final long errorCount;
+    private final long batchCount;
+    private final double throughput;        //每秒成功处理的对象数量
+    private final long[] queueDepths;
+    private final double latencyMean;
+    private final long latencyP50;
+    private final long latencyP90;
+    private final long latencyP99;
+    private final long latencyP999;
+    private final long latencyMax;
+
+    /**
+     * 根据传入的参数构造函数
+     *
+     * @param submittedCount 提交给处理程序的对象数量
+     * @param successCount   成功处理的对象数量
+     * @param errorCount     处理程序抛出异常的批次数量
+     * @param batchCount     提交给处理程序的批次数量
+     * @param throughput     每秒成功处理的对象数量
+     * @param queueDepths    各个子队列中积压的对象数量
+     * @param histogram      每批对象处理耗时的直方图
+     */
+    public QueueSetListenerStats(long submittedCount, long successCount, long errorCount, long batchCount,
+                                 double throughput, long[] queueDepths, LatencyHistogram histogram) {
+        this.submittedCount = submittedCount;
+        this.successCount = successCount;
+        this.errorCount = errorCount;
+        this.batchCount = batchCount;
+        this.throughput = throughput;
+        this.queueDepths = queueDepths.clone();
+        this.latencyMean = histogram.getMean();
+        this.latencyP50 = histogram.getPercentile(50);
+        this.latencyP90 = histogram.getPercentile(90);
+        this.latencyP99 = histogram.getPercentile(99);
+        this.latencyP999 = histogram.getPercentile(99.9);
+        this.latencyMax = histogram.getMax();
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount;
+    }
+
+    public long getSuccessCount() {
+        return successCount;
+    }
+
+    /**
+     * 获取没有成功处理的对象数量（提交的数量 - 成功处理的数量）
+     *
+     * @return 没有成功处理的对象数量
+     */
+    public long getFailureCount() {
+        return submittedCount - successCount;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    public long getBatchCount() {
+        return batchCount;
+    }
+
+    /**
+     * 获取处理程序抛出异常的批次比例，没有任何批次时返回0
+     *
+     * @return 异常的批次比例
+     */
+    public double getErrorRate() {
+        return (batchCount == 0) ? 0.0 : (double) errorCount / batchCount;
+    }
+
+    public double getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * 获取各个子队列中积压的对象数量，顺序与队列集的子队列一致
+     *
+     * @return 各个子队列中积压的对象数量
+     */
+    public long[] getQueueDepths() {
+        return queueDepths.clone();
+    }
+
+    /**
+     * 获取所有子队列中积压的对象数量
+     *
+     * @return 积压的对象数量
+     */
+    public long getQueueDepth() {
+        long depth = 0;
+        for (long value : queueDepths) {
+            depth += value;
+        }
+        return depth;
+    }
+
+    public double getLatencyMean() {
+        return latencyMean;
+    }
+
+    public long getLatencyP50() {
+        return latencyP50;
+    }
+
+    public long getLatencyP90() {
+        return latencyP90;
+    }
+
+    public long getLatencyP99() {
+        return latencyP99;
+    }
+
+    public long getLatencyP999() {
+        return latencyP999;
+    }
+
+    public long getLatencyMax() {
+        return latencyMax;
+    }
+
+    @Override
+    public String toString() {
+        return "submitted:[" + submittedCount + "],success:[" + successCount + "],errors:[" + errorCount
+                + "],batches:[" + batchCount + "],throughput:[" + String.format("%.1f", throughput)
+                + "],depths:" + Arrays.toString(queueDepths)
+                + ",latencyMillis(mean/p50/p99/p999/max):[" + String.format("%.3f/%.3f/%.3f/%.3f/%.3f",
+                latencyMean / 1_000_000, latencyP50 / 1_000_000.0, latencyP99 / 1_000_000.0,
+                latencyP999 / 1_000_000.0, latencyMax / 1_000_000.0) + "]";
+    }
+}
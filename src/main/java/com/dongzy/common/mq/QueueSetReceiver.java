@@ -12,6 +12,8 @@ public interface QueueSetReceiver<T> {
 
     /**
      * 消息处理回调接口
+     * 返回值小于传入对象的数量时，集合中前面的对象视为处理成功，其余的对象视为处理失败并进行重试，
+     * 需要逐个确认处理结果时请实现{@link QueueSetAckReceiver}
      *
      * @param objects 回调的数据对象
      * @return 成功处理的数量，比如传入集合对象为10个，成功处理的对象数据为8个，那么返回值为8
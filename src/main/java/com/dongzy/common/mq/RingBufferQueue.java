@@ -0,0 +1,255 @@
+package com.dongzy.common.mq;
+
+import com.dongzy.common.common.Validate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 基于环形缓冲区的内存队列实现类，支持多生产者多消费者并发访问，主要包含以下功能：
+ * 1、队列的存储空间在创建时一次性分配，入队和出队不会创建链表节点，也不需要获取锁
+ * 2、每个槽位都有一个序号，生产者和消费者通过CAS争抢位置，通过槽位序号判断槽位是否可写或可读
+ * 3、批量添加和批量获取一次CAS占用多个连续的槽位，而不是逐个元素争抢
+ * <p>
+ * 注意：
+ * 1、队列的容量会向上取整为2的幂
+ * 2、超过队列容量时抛出IllegalStateException异常，批量添加时已经添加的元素不会回滚（与{@link MemoryQueue}一致）
+ * 3、可以通过{@link QueueSet#QueueSet(Class, int, int)}构造函数作为队列集的子队列使用
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public class RingBufferQueue<T> implements IQueue<T> {
+
+    //默认的队列元素最大值
+    private static final int DEFAULT_CAPACITY = 2048;
+
+    private final int mask;
+    private final AtomicReferenceArray<T> buffer;
+    private final AtomicLongArray sequences;        //槽位序号，等于写入位置表示可写，等于写入位置+1表示可读
+    private final AtomicLong tail = new AtomicLong();       //下一个写入的位置
+    private final AtomicLong head = new AtomicLong();       //下一个读取的位置
+
+    /**
+     * 默认构造器
+     */
+    public RingBufferQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * 指定容器的大小进行构造
+     *
+     * @param capacity 队列的最大容量，会向上取整为2的幂
+     */
+    public RingBufferQueue(int capacity) {
+        Validate.isTrue(capacity > 0 && capacity <= (1 << 30), "队列的容量必须在1到2^30之间！");
+        int size = (capacity == 1) ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.buffer = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * 获取队列的容量
+     *
+     * @return 队列的容量
+     */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    @Override
+    public boolean add(T t) {
+        Validate.notNull(t);
+        if (!offer(t)) {
+            throw new IllegalStateException("队列已满，容量：" + capacity());
+        }
+        return true;
+    }
+
+    @Override
+    public boolean add(Collection<T> collection) {
+        Object[] items = collection.toArray();
+        for (Object item : items) {
+            Validate.notNull(item);
+        }
+        int offset = 0;
+        while (offset < items.length) {
+            int count = offer(items, offset, items.length - offset);
+            if (count == 0) {
+                throw new IllegalStateException("队列已满，容量：" + capacity());
+            }
+            offset += count;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean offer(T t) {
+        Validate.notNull(t);
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    buffer.lazySet(index, t);
+                    sequences.set(index, position + 1);       //发布槽位，消费者可以读取
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                if (position - head.get() >= capacity()) {
+                    return false;                             //槽位还没有被消费者读取，队列已满
+                }
+                Thread.yield();                               //消费者已经读取但还没有释放该槽位
+                position = tail.get();
+            } else {
+                position = tail.get();                        //其他生产者已经占用了该位置
+            }
+        }
+    }
+
+    @Override
+    public T poll() {
+        long position = head.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    T t = buffer.get(index);
+                    buffer.lazySet(index, null);
+                    sequences.set(index, position + mask + 1);      //释放槽位，生产者可以在下一圈写入
+                    return t;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                if (tail.get() <= position) {
+                    return null;                                    //槽位还没有被生产者占用，队列为空
+                }
+                Thread.yield();                                     //生产者已经占用但还没有发布该槽位
+                position = head.get();
+            } else {
+                position = head.get();                              //其他消费者已经读取了该位置
+            }
+        }
+    }
+
+    @Override
+    public Collection<T> poll(final int number) {
+        Collection<T> collection = new ArrayList<>(Math.min(number, capacity()));
+        drainTo(collection, number);
+        return collection;
+    }
+
+    /**
+     * 从队列中批量获取对象并添加到指定的集合中，一次占用多个连续的可读槽位
+     *
+     * @param collection 接收对象的集合
+     * @param maxNumber  获取的最大数量
+     * @return 实际获取的数量
+     */
+    public int drainTo(Collection<? super T> collection, int maxNumber) {
+        Validate.notNull(collection, "collection对象不能为null。");
+        int total = 0;
+        while (total < maxNumber) {
+            int count = drain(collection, maxNumber - total);
+            if (count == 0) {
+                break;
+            }
+            total += count;
+        }
+        return total;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public long size() {
+        while (true) {
+            long before = head.get();
+            long currentTail = tail.get();
+            if (head.get() == before) {
+                return Math.max(0, Math.min(currentTail - before, capacity()));
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        while (poll() != null) {
+            //逐个丢弃队列中的元素，保证槽位序号的正确性
+        }
+    }
+
+    //批量写入连续的空闲槽位，返回实际写入的数量，队列已满时返回0
+    @SuppressWarnings("unchecked")
+    private int offer(Object[] items, int offset, int maxNumber) {
+        while (true) {
+            long position = tail.get();
+            int count = 0;
+            while (count < maxNumber && count <= mask && sequences.get((int) (position + count) & mask) == position + count) {
+                count++;
+            }
+            if (count == 0) {
+                if (sequences.get((int) position & mask) < position) {
+                    if (position - head.get() >= capacity()) {
+                        return 0;
+                    }
+                    Thread.yield();                                //消费者已经读取但还没有释放该槽位
+                }
+                continue;
+            }
+            if (tail.compareAndSet(position, position + count)) {
+                for (int i = 0; i < count; i++) {
+                    buffer.lazySet((int) (position + i) & mask, (T) items[offset + i]);
+                }
+                for (int i = 0; i < count; i++) {
+                    sequences.set((int) (position + i) & mask, position + i + 1);
+                }
+                return count;
+            }
+        }
+    }
+
+    //批量读取连续的可读槽位，返回实际读取的数量，队列为空时返回0
+    private int drain(Collection<? super T> collection, int maxNumber) {
+        while (true) {
+            long position = head.get();
+            int count = 0;
+            while (count < maxNumber && count <= mask && sequences.get((int) (position + count) & mask) == position + count + 1) {
+                count++;
+            }
+            if (count == 0) {
+                if (sequences.get((int) position & mask) < position + 1) {
+                    if (tail.get() <= position) {
+                        return 0;
+                    }
+                    Thread.yield();                                //生产者已经占用但还没有发布该槽位
+                }
+                continue;
+            }
+            if (head.compareAndSet(position, position + count)) {
+                for (int i = 0; i < count; i++) {
+                    int index = (int) (position + i) & mask;
+                    T t = buffer.get(index);
+                    buffer.lazySet(index, null);
+                    sequences.set(index, position + i + mask + 1);
+                    collection.add(t);
+                }
+                return count;
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.dongzy.common.mq;
+
+/**
+ * 让出CPU的等待策略，队列为空时先自旋100次，之后每次等待都让出CPU
+ * 唤醒延迟低，但空闲时线程仍然处于运行状态，适用于CPU核心数充足且对延迟敏感的场景
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public class YieldingWaitStrategy implements IWaitStrategy {
+
+    private static final int SPIN_TRIES = 100;
+
+    @Override
+    public int idle(int idleCount) {
+        if (idleCount >= SPIN_TRIES) {
+            Thread.yield();
+            return idleCount;
+        }
+        return idleCount + 1;
+    }
+}
@@ -0,0 +1,115 @@
+package com.dongzy.common.common.caching;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link LongCache}的测试
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public class LongCacheTest {
+
+    @Test
+    public void testSetGetRemove() {
+        LongCache<String> cache = new LongCache<>();
+        for (long key = 0; key < 1000; key++) {
+            cache.set(key, "v" + key);
+        }
+        assertEquals(1000, cache.size());
+        for (long key = 0; key < 1000; key++) {
+            assertEquals("v" + key, cache.get(key));
+        }
+        for (long key = 0; key < 1000; key += 2) {
+            cache.remove(key);
+        }
+        assertEquals(500, cache.size());
+        for (long key = 0; key < 1000; key++) {
+            assertEquals((key % 2 == 0) ? null : "v" + key, cache.get(key));
+        }
+        cache.set(1, null);
+        assertFalse(cache.containsKey(1));
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.get(3));
+    }
+
+    @Test
+    public void testExpiry() {
+        LongCache<String> cache = new LongCache<>();
+        cache.set(1, "expired", new Date(System.currentTimeMillis() - 1));
+        cache.set(2, "alive", new Date(System.currentTimeMillis() + 60000));
+        assertNull(cache.get(1));
+        assertEquals("alive", cache.get(2));
+        assertFalse(cache.containsKey(1));
+        assertTrue(cache.containsKey(2));
+        cache.cleanUp();
+        assertEquals(1, cache.size());
+    }
+
+    //读线程与不断扩容和清空的写线程并发执行，读取不能抛出异常，读到的值必须与key对应
+    @Test
+    public void testConcurrentResize() throws Exception {
+        final LongCache<Long> cache = new LongCache<>();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch started = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+
+        threads.add(new Thread(() -> {
+            started.countDown();
+            try {
+                final long deadline = System.currentTimeMillis() + 2000;
+                while (System.currentTimeMillis() < deadline) {
+                    for (long key = 0; key < 5000; key++) {
+                        cache.set(key, key);
+                    }
+                    cache.clear();          //清空后哈希表缩小，下一轮会重新逐步扩容
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                running.set(false);
+            }
+        }));
+        for (int i = 0; i < 3; i++) {
+            threads.add(new Thread(() -> {
+                try {
+                    started.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (running.get()) {
+                        long key = random.nextInt(5000);
+                        Long value = cache.get(key);
+                        if (value != null && value != key) {
+                            throw new AssertionError("key " + key + " 读到了错误的值 " + value);
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("并发读写时发生异常", failure.get());
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.dongzy.common.common.caching;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link TimerWheel}的测试
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public class TimerWheelTest {
+
+    private static final long START = 1_700_000_000_000L;
+    private static final long TICK = 1024;          //最下层的刻度
+
+    /**
+     * 记录到期时间的定时器
+     */
+    private static final class TestTimer extends TimerWheel.Timer {
+        long expiredAt = -1;
+        int expireCount;
+        long deferredDeadline;                      //大于0时第一次到期延后到该时间
+    }
+
+    @Test
+    public void testExpiryAcrossLevels() {
+        Random random = new Random(42);
+        List<TestTimer> timers = new ArrayList<>();
+        TimerWheel wheel = new TimerWheel(START, TimerWheelTest::expire);
+        long horizon = TimeUnit.DAYS.toMillis(8);           //覆盖所有层级和溢出桶
+        for (int i = 0; i < 10000; i++) {
+            TestTimer timer = new TestTimer();
+            timer.deadline = START + (long) (Math.pow(random.nextDouble(), 4) * horizon);
+            wheel.schedule(timer);
+            timers.add(timer);
+        }
+
+        final long step = 1000;
+        for (long now = START; now <= START + horizon + 2 * TICK; now += step) {
+            wheel.advance(now);
+        }
+        for (TestTimer timer : timers) {
+            assertEquals(1, timer.expireCount);
+            assertTrue("提前到期：" + timer.deadline, timer.expiredAt >= timer.deadline);
+            assertTrue("到期处理延后过多：" + timer.deadline, timer.expiredAt - timer.deadline <= step + 2 * TICK);
+        }
+    }
+
+    @Test
+    public void testLargeJump() {
+        TimerWheel wheel = new TimerWheel(START, TimerWheelTest::expire);
+        TestTimer soon = newTimer(wheel, START + 5_000);
+        TestTimer later = newTimer(wheel, START + TimeUnit.DAYS.toMillis(30));
+
+        wheel.advance(START + TimeUnit.DAYS.toMillis(1));
+        assertEquals(1, soon.expireCount);
+        assertEquals(0, later.expireCount);
+        assertTrue(later.isScheduled());
+
+        wheel.advance(START + TimeUnit.DAYS.toMillis(31));
+        assertEquals(1, later.expireCount);
+        assertFalse(later.isScheduled());
+    }
+
+    @Test
+    public void testDeschedule() {
+        TimerWheel wheel = new TimerWheel(START, TimerWheelTest::expire);
+        TestTimer kept = newTimer(wheel, START + 10_000);
+        TestTimer cancelled = newTimer(wheel, START + 10_000);
+        wheel.deschedule(cancelled);
+        assertFalse(cancelled.isScheduled());
+
+        wheel.advance(START + 20_000);
+        assertEquals(1, kept.expireCount);
+        assertEquals(0, cancelled.expireCount);
+    }
+
+    @Test
+    public void testDeferredExpiry() {
+        TimerWheel wheel = new TimerWheel(START, TimerWheelTest::expire);
+        TestTimer timer = new TestTimer();
+        timer.deadline = START + 10_000;
+        timer.deferredDeadline = START + 120_000;
+        wheel.schedule(timer);
+
+        for (long now = START; now < START + 100_000; now += 500) {
+            wheel.advance(now);
+        }
+        assertEquals(0, timer.expireCount);
+        assertTrue(timer.isScheduled());
+
+        for (long now = START + 100_000; now <= START + 125_000; now += 500) {
+            wheel.advance(now);
+        }
+        assertEquals(1, timer.expireCount);
+        assertTrue(timer.expiredAt >= START + 120_000);
+    }
+
+    @Test
+    public void testClear() {
+        TimerWheel wheel = new TimerWheel(START, TimerWheelTest::expire);
+        TestTimer timer = newTimer(wheel, START + 10_000);
+        wheel.clear();
+        assertFalse(timer.isScheduled());
+        wheel.advance(START + 20_000);
+        assertEquals(0, timer.expireCount);
+    }
+
+    private static TestTimer newTimer(TimerWheel wheel, long deadline) {
+        TestTimer timer = new TestTimer();
+        timer.deadline = deadline;
+        wheel.schedule(timer);
+        return timer;
+    }
+
+    //第一次到期时如果设置了延后的到期时间，那么更新到期时间并要求重新调度
+    private static boolean expire(TimerWheel.Timer timer, long now) {
+        TestTimer testTimer = (TestTimer) timer;
+        if (testTimer.deferredDeadline > 0) {
+            testTimer.deadline = testTimer.deferredDeadline;
+            testTimer.deferredDeadline = 0;
+            return false;
+        }
+        testTimer.expireCount++;
+        testTimer.expiredAt = now;
+        return true;
+    }
+}
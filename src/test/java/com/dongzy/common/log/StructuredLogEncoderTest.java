@@ -0,0 +1,98 @@
+package com.dongzy.common.log;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import org.junit.Test;
+import org.slf4j.helpers.MessageFormatter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link StructuredLogEncoder}的测试
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public class StructuredLogEncoderTest {
+
+    private final Logger logger = new LoggerContext().getLogger("test");
+
+    @Test
+    public void testJsonEscaping() {
+        String message = "引号\"反斜杠\\换行\n回车\r制表\t控制\u0001\u001f表情😀孤立\uD83D结束";
+        String json = encodeJson(newEvent(message), false);
+
+        assertTrue(json.endsWith("}\n"));
+        assertTrue(json, json.contains("\"message\":\"引号\\\"反斜杠\\\\换行\\n回车\\r制表\\t控制\\u0001\\u001f表情😀孤立?结束\""));
+        assertTrue(json.contains("\"logger\":\"test\""));
+        assertTrue(json.contains("\"level\":\"INFO\""));
+    }
+
+    @Test
+    public void testPlaceholders() {
+        assertMessage("a {} b {} c", "x", 42);
+        assertMessage("{}{}{}", -7L, true, 'c');
+        assertMessage("多余的占位符{}和{}", "只有一个参数");
+        assertMessage("多余的参数{}", 1, 2, 3);
+        assertMessage("转义\\{}和\\\\{}", "参数");
+        assertMessage("空参数{}和数组{}", null, new int[]{1, 2});
+        assertMessage("没有占位符");
+        assertMessage("{} 最小值", Long.MIN_VALUE);
+    }
+
+    @Test
+    public void testDeferredUsesFormattedMessage() {
+        StringBuilder argument = new StringBuilder("调用时的值");
+        LoggingEvent event = newEvent("参数：{}", argument);
+        event.prepareForDeferredProcessing();
+        argument.setLength(0);
+        argument.append("修改后的值");
+
+        assertTrue(encodeJson(event, true).contains("\"message\":\"参数：调用时的值\""));
+        assertTrue(encodeJson(event, false).contains("\"message\":\"参数：修改后的值\""));
+    }
+
+    @Test
+    public void testBinaryMessage() {
+        StructuredLogEncoder encoder = new StructuredLogEncoder();
+        encoder.setFormat(LogFormatEnum.BINARY);
+        ByteBuffer buffer = ByteBuffer.wrap(encoder.encode(newEvent("订单{}", 12345)));
+
+        assertEquals(buffer.limit() - 4, buffer.getInt());
+        assertEquals(StructuredLogEncoder.BINARY_VERSION, buffer.get());
+        buffer.getLong();
+        assertEquals(Level.INFO_INT, buffer.getInt());
+        readString(buffer);
+        assertEquals("test", readString(buffer));
+        assertEquals("订单12345", readString(buffer));
+    }
+
+    //编码结果与slf4j格式化后的消息一致
+    private void assertMessage(String pattern, Object... arguments) {
+        String expected = MessageFormatter.arrayFormat(pattern, arguments).getMessage();
+        String json = encodeJson(newEvent(pattern, arguments), false);
+        assertTrue(json, json.contains("\"message\":\"" + expected.replace("\\", "\\\\") + "\""));
+    }
+
+    private LoggingEvent newEvent(String pattern, Object... arguments) {
+        return new LoggingEvent(Logger.FQCN, logger, Level.INFO, pattern, null, arguments);
+    }
+
+    private static String encodeJson(LoggingEvent event, boolean deferred) {
+        StructuredLogEncoder encoder = new StructuredLogEncoder();
+        encoder.setDeferred(deferred);
+        return new String(encoder.encode(event), StandardCharsets.UTF_8);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
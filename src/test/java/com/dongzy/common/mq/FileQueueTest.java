@@ -0,0 +1,255 @@
+package com.dongzy.common.mq;
+
+import com.dongzy.common.common.io.ISerializer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link FileQueue}的测试
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public class FileQueueTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    private static final ISerializer<String> SERIALIZER = new ISerializer<String>() {
+        @Override
+        public byte[] serialize(String object) {
+            return object.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String deserialize(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReplayUnacknowledged() throws IOException {
+        File directory = folder.newFolder();
+        FileQueue<String> queue = new FileQueue<>(directory, SEGMENT_SIZE, SERIALIZER);
+        queue.setAutoAcknowledge(false);
+        for (int i = 0; i < 1000; i++) {
+            queue.add("msg-" + i);
+        }
+        assertEquals(400, queue.poll(400).size());
+        queue.acknowledge();
+        assertEquals(300, queue.poll(300).size());          //取出但没有确认
+        queue.close();
+
+        queue = new FileQueue<>(directory, SEGMENT_SIZE, SERIALIZER);
+        assertEquals(600, queue.size());
+        assertRange(queue, 400, 1000);
+        assertNull(queue.poll());
+        queue.close();
+
+        queue = new FileQueue<>(directory, SEGMENT_SIZE, SERIALIZER);
+        assertTrue(queue.isEmpty());
+        queue.close();
+    }
+
+    @Test
+    public void testRecoverWithoutClose() throws IOException {
+        File directory = folder.newFolder();
+        FileQueue<String> crashed = new FileQueue<>(directory, SEGMENT_SIZE, SERIALIZER);
+        List<String> batch = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            batch.add("msg-" + i);
+        }
+        crashed.add(batch);
+        assertEquals(100, crashed.poll(100).size());
+
+        //进程异常退出时映射区域的数据仍然在操作系统的页缓存中，不调用close直接重新打开
+        FileQueue<String> queue = new FileQueue<>(directory, SEGMENT_SIZE, SERIALIZER);
+        assertEquals(400, queue.size());
+        assertRange(queue, 100, 500);
+        queue.close();
+        crashed.close();
+    }
+
+    @Test
+    public void testRecoverTornRecord() throws IOException {
+        File directory = folder.newFolder();
+        FileQueue<String> queue = new FileQueue<>(directory, SEGMENT_SIZE, SERIALIZER);
+        int position = 0;
+        for (int i = 0; i < 10; i++) {
+            String message = "msg-" + i;
+            queue.add(message);
+            position += 8 + message.length();
+        }
+        queue.close();
+
+        //模拟写入一半时崩溃：长度已经写入，校验码和内容不完整
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".seg"));
+        assertEquals(1, files.length);
+        try (RandomAccessFile file = new RandomAccessFile(files[0], "rw")) {
+            file.seek(position);
+            file.writeInt(100);
+            file.writeInt(12345);
+            file.write("torn".getBytes(StandardCharsets.UTF_8));
+        }
+
+        queue = new FileQueue<>(directory, SEGMENT_SIZE, SERIALIZER);
+        assertEquals(10, queue.size());
+        queue.add("after-crash");
+        List<String> messages = new ArrayList<>(queue.poll(100));
+        assertEquals(11, messages.size());
+        assertEquals("msg-9", messages.get(9));
+        assertEquals("after-crash", messages.get(10));
+        assertNull(queue.poll());
+        queue.close();
+    }
+
+    @Test
+    public void testRecycleSegments() throws IOException {
+        File directory = folder.newFolder();
+        FileQueue<String> queue = new FileQueue<>(directory, SEGMENT_SIZE, SERIALIZER);
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 2000; i++) {
+                queue.add("msg-" + i);
+            }
+            assertRange(queue, 0, 2000);
+        }
+        //已经消费的分段被回收，最多保留写入分段和两个回收分段
+        assertTrue(directory.listFiles((dir, name) -> name.endsWith(".seg")).length <= 3);
+        queue.close();
+    }
+
+    @Test
+    public void testReceiptsAcknowledgedOutOfOrder() throws IOException {
+        File directory = folder.newFolder();
+        FileQueue<String> queue = new FileQueue<>(directory, SEGMENT_SIZE, SERIALIZER);
+        for (int i = 0; i < 300; i++) {
+            queue.add("msg-" + i);
+        }
+        IQueueReceipt<String> first = queue.pollUnacknowledged(100);
+        IQueueReceipt<String> second = queue.pollUnacknowledged(100);
+        assertEquals("msg-100", second.getObjects().iterator().next());
+        second.acknowledge();           //较早的批次尚未确认，消费位置不能越过它
+        queue.close();
+
+        queue = new FileQueue<>(directory, SEGMENT_SIZE, SERIALIZER);
+        assertEquals(300, queue.size());
+        first = queue.pollUnacknowledged(100);
+        second = queue.pollUnacknowledged(100);
+        first.acknowledge();
+        second.acknowledge();
+        second.acknowledge();           //重复确认不做任何处理
+        queue.close();
+
+        queue = new FileQueue<>(directory, SEGMENT_SIZE, SERIALIZER);
+        assertEquals(100, queue.size());
+        assertRange(queue, 200, 300);
+        queue.close();
+    }
+
+    @Test
+    public void testAcknowledgeOnlyCurrentThread() throws Exception {
+        File directory = folder.newFolder();
+        FileQueue<String> queue = new FileQueue<>(directory, SEGMENT_SIZE, SERIALIZER);
+        queue.setAutoAcknowledge(false);
+        for (int i = 0; i < 300; i++) {
+            queue.add("msg-" + i);
+        }
+        Thread other = new Thread(() -> queue.poll(100));
+        other.start();
+        other.join();
+        assertEquals(100, queue.poll(100).size());
+        queue.acknowledge();            //其他线程取出的对象没有确认
+        queue.close();
+
+        FileQueue<String> reopened = new FileQueue<>(directory, SEGMENT_SIZE, SERIALIZER);
+        assertEquals(300, reopened.size());
+        reopened.close();
+    }
+
+    @Test
+    public void testClosedQueueRejectsOperations() throws IOException {
+        FileQueue<String> queue = new FileQueue<>(folder.newFolder(), SEGMENT_SIZE, SERIALIZER);
+        queue.add("msg-0");
+        IQueueReceipt<String> receipt = queue.pollUnacknowledged(1);
+        queue.close();
+        receipt.acknowledge();          //关闭后确认不做任何处理
+        try {
+            queue.add("msg-1");
+            fail("关闭后添加对象应当抛出异常");
+        } catch (IllegalStateException e) {
+            //队列已经关闭
+        }
+        try {
+            queue.poll();
+            fail("关闭后取出对象应当抛出异常");
+        } catch (IllegalStateException e) {
+            //队列已经关闭
+        }
+        queue.close();
+    }
+
+    //通过监听器处理时，只有处理成功的批次被确认，等待重试的批次在重启后重新投递
+    @Test
+    public void testListenerAcknowledgesAfterProcessing() throws Exception {
+        File directory = folder.newFolder();
+        FileQueue<String> queue = new FileQueue<>(directory, SEGMENT_SIZE, SERIALIZER);
+        for (int i = 0; i < 100; i++) {
+            queue.add("msg-" + i);
+        }
+        QueueSetListener<String> listener = new QueueSetListener<>();
+        listener.setQueueSet(new QueueSet<>(queue));
+        listener.setGroupSize(10);
+        listener.setRetryPolicy(3, 1, 1, TimeUnit.MINUTES);
+        listener.setQueueReceiver((Collection<String> objects) -> {
+            for (String object : objects) {
+                if (Integer.parseInt(object.substring(4)) >= 50) {
+                    throw new IllegalStateException("模拟处理失败：" + object);
+                }
+            }
+            return objects.size();
+        });
+        listener.start();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (listener.getPendingRetryNumber() < 50 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(50, listener.getProcessedSuccessNumber());
+        assertEquals(50, listener.getPendingRetryNumber());
+        assertTrue(listener.stop(5, TimeUnit.SECONDS));
+        queue.close();
+
+        queue = new FileQueue<>(directory, SEGMENT_SIZE, SERIALIZER);
+        assertEquals(50, queue.size());
+        assertRange(queue, 50, 100);
+        queue.close();
+    }
+
+    //按顺序取出[from, to)范围内的对象
+    private static void assertRange(FileQueue<String> queue, int from, int to) {
+        int next = from;
+        while (next < to) {
+            Collection<String> collection = queue.poll(64);
+            assertTrue("队列中的对象少于预期：" + next, !collection.isEmpty());
+            for (String message : collection) {
+                assertEquals("msg-" + next++, message);
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.dongzy.common.mq;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link RingBufferQueue}的测试
+ *
+ * @author zouyong
+ * @since JDK1.8
+ */
+public class RingBufferQueueTest {
+
+    private static final int PRODUCERS = 4;
+    private static final int CONSUMERS = 4;
+
+    @Test
+    public void testFullAndEmpty() {
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(5);
+        assertEquals(8, queue.capacity());
+        assertNull(queue.poll());
+        assertTrue(queue.poll(10).isEmpty());
+
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 0; i < 8; i++) {
+                assertTrue(queue.offer(i));
+            }
+            assertFalse(queue.offer(8));
+            assertEquals(8, queue.size());
+            try {
+                queue.add(8);
+                fail("队列已满时应当抛出异常");
+            } catch (IllegalStateException e) {
+                //队列已满
+            }
+            assertEquals(Integer.valueOf(0), queue.poll());
+            assertEquals(Arrays.asList(1, 2, 3), new ArrayList<>(queue.poll(3)));
+            List<Integer> rest = new ArrayList<>();
+            assertEquals(4, queue.drainTo(rest, 100));
+            assertEquals(Arrays.asList(4, 5, 6, 7), rest);
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    //容量很小的队列，生产者逐个添加，消费者逐个或批量获取，槽位会被反复复用
+    @Test
+    public void testMpmcSingleOffers() throws InterruptedException {
+        RingBufferQueue<Long> queue = new RingBufferQueue<>(64);
+        runMpmc(queue, 50_000, false);
+    }
+
+    //生产者批量添加，消费者批量获取
+    @Test
+    public void testMpmcBatches() throws InterruptedException {
+        RingBufferQueue<Long> queue = new RingBufferQueue<>(1 << 18);
+        runMpmc(queue, 50_000, true);
+    }
+
+    //每个对象恰好被取出一次，并且每个消费者看到的同一个生产者的对象是按顺序的
+    private static void runMpmc(RingBufferQueue<Long> queue, int perProducer, boolean batch) throws InterruptedException {
+        final int total = PRODUCERS * perProducer;
+        AtomicReferenceArray<String> received = new AtomicReferenceArray<>(total);
+        AtomicInteger receivedCount = new AtomicInteger();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int p = 0; p < PRODUCERS; p++) {
+            final long producer = p;
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int next = 0;
+                while (next < perProducer) {
+                    if (batch) {
+                        int size = Math.min(perProducer - next, 1 + random.nextInt(100));
+                        List<Long> items = new ArrayList<>(size);
+                        for (int i = 0; i < size; i++) {
+                            items.add(producer * perProducer + next + i);
+                        }
+                        queue.add(items);
+                        next += size;
+                    } else if (queue.offer(producer * perProducer + next)) {
+                        next++;
+                    } else {
+                        Thread.yield();
+                    }
+                }
+            }, "producer-" + p));
+        }
+        for (int c = 0; c < CONSUMERS; c++) {
+            final String consumer = "consumer-" + c;
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long[] lastSeen = new long[PRODUCERS];
+                Arrays.fill(lastSeen, -1);
+                List<Long> items = new ArrayList<>();
+                while (receivedCount.get() < total && error.get() == null) {
+                    items.clear();
+                    if (random.nextBoolean()) {
+                        Long item = queue.poll();
+                        if (item != null) {
+                            items.add(item);
+                        }
+                    } else {
+                        queue.drainTo(items, 1 + random.nextInt(32));
+                    }
+                    if (items.isEmpty()) {
+                        Thread.yield();
+                        continue;
+                    }
+                    for (Long item : items) {
+                        int producer = (int) (item / perProducer);
+                        if (item <= lastSeen[producer]) {
+                            error.compareAndSet(null, new AssertionError(consumer + "收到的对象乱序：" + item));
+                        }
+                        lastSeen[producer] = item;
+                        if (!received.compareAndSet(item.intValue(), null, consumer)) {
+                            error.compareAndSet(null, new AssertionError("对象被取出了多次：" + item));
+                        }
+                    }
+                    receivedCount.addAndGet(items.size());
+                }
+            }, consumer));
+        }
+
+        for (Thread thread : threads) {
+            thread.setUncaughtExceptionHandler((t, e) -> error.compareAndSet(null, e));
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join(60_000);
+            assertFalse("线程没有在规定时间内结束：" + thread.getName(), thread.isAlive());
+        }
+        if (error.get() != null) {
+            throw new AssertionError(error.get());
+        }
+        assertEquals(total, receivedCount.get());
+        for (int i = 0; i < total; i++) {
+            assertTrue("对象没有被取出：" + i, received.get(i) != null);
+        }
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+    }
+}